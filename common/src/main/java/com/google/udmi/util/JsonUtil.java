@@ -8,6 +8,7 @@ import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonParser.Feature;
 import com.fasterxml.jackson.core.json.JsonReadFeature;
 import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import java.io.File;
@@ -89,7 +90,8 @@ public abstract class JsonUtil {
   }
 
   /**
-   * Convert a generic object to a specific class with strict field mappings.
+   * Convert a generic object to a specific class with strict field mappings. An already parsed
+   * json tree is converted directly, without going through a string.
    *
    * @param targetClass result class
    * @param message object to convert
@@ -99,6 +101,9 @@ public abstract class JsonUtil {
   public static <T> T convertToStrict(Class<T> targetClass, Object message) {
     requireNonNull(targetClass, "target class is null");
     try {
+      if (message instanceof JsonNode) {
+        return STRICT_MAPPER.treeToValue((JsonNode) message, targetClass);
+      }
       return message == null ? null : fromStringStrict(targetClass, stringify(message));
     } catch (Exception e) {
       throw new RuntimeException("While converting to " + targetClass.getName(), e);
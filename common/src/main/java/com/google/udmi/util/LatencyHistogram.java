@@ -0,0 +1,93 @@
+package com.google.udmi.util;
+
+import static java.lang.String.format;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of latency values (in microseconds), cheap enough to record for every
+ * message. Values are kept in log-linear buckets (8 per power of two), so percentiles are accurate
+ * to within about 12%.
+ */
+public class LatencyHistogram {
+
+  private static final int SUB_BITS = 3;
+  private static final int SUB_COUNT = 1 << SUB_BITS;
+  private static final int BUCKETS = (Long.SIZE - SUB_BITS + 1) * SUB_COUNT;
+
+  private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+  private final LongAdder count = new LongAdder();
+  private final LongAdder total = new LongAdder();
+  private final LongAccumulator max = new LongAccumulator(Long::max, 0);
+
+  static int bucketFor(long value) {
+    if (value < SUB_COUNT) {
+      return (int) Math.max(value, 0);
+    }
+    int shift = Long.SIZE - 1 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+    int sub = (int) (value >>> shift) & (SUB_COUNT - 1);
+    return (shift + 1) * SUB_COUNT + sub;
+  }
+
+  static long bucketLimit(int bucket) {
+    if (bucket < SUB_COUNT) {
+      return bucket;
+    }
+    int shift = bucket / SUB_COUNT - 1;
+    long sub = bucket % SUB_COUNT;
+    return ((SUB_COUNT + sub + 1) << shift) - 1;
+  }
+
+  /**
+   * Record a latency value, in microseconds.
+   */
+  public void record(long micros) {
+    buckets.incrementAndGet(bucketFor(micros));
+    count.increment();
+    total.add(micros);
+    max.accumulate(micros);
+  }
+
+  /**
+   * Record the latency since the given start time, as from System.nanoTime().
+   */
+  public void recordSince(long startNanos) {
+    record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos));
+  }
+
+  public long getCount() {
+    return count.sum();
+  }
+
+  public long getTotal() {
+    return total.sum();
+  }
+
+  public long getMax() {
+    return max.get();
+  }
+
+  /**
+   * Get the (approximate) value at the given quantile, e.g. 0.99 for the p99 latency.
+   */
+  public long getQuantile(double quantile) {
+    long target = (long) Math.ceil(quantile * getCount());
+    long seen = 0;
+    for (int bucket = 0; bucket < BUCKETS; bucket++) {
+      seen += buckets.get(bucket);
+      if (seen >= target && seen > 0) {
+        return Math.min(bucketLimit(bucket), getMax());
+      }
+    }
+    return getMax();
+  }
+
+  @Override
+  public String toString() {
+    return format("count=%d p50=%dus p99=%dus max=%dus", getCount(), getQuantile(0.5),
+        getQuantile(0.99), getMax());
+  }
+}
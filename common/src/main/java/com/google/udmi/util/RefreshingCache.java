@@ -0,0 +1,154 @@
+package com.google.udmi.util;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+/**
+ * Cache for values that are expensive to load (e.g. remote lookups) but needed on hot paths.
+ * Loading is asynchronous and single-flight: there's at most one load in progress for a key, and
+ * all callers waiting on that key share its result. Once a key has been loaded its value is always
+ * returned straight from the cache. When it's older than the ttl, it's still returned (stale while
+ * revalidate) and a reload is started in the background. Null results and load failures are
+ * negatively cached for the negative ttl, so a missing key doesn't trigger a storm of reloads.
+ */
+public class RefreshingCache<K, V> {
+
+  private static final Executor DEFAULT_EXECUTOR = Executors.newCachedThreadPool(runnable -> {
+    Thread thread = new Thread(runnable, "cache-refresh");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  private final Function<K, V> loader;
+  private final Duration ttl;
+  private final Duration negativeTtl;
+  private final Executor executor;
+  private final Map<K, Slot<V>> slots = new ConcurrentHashMap<>();
+
+  public RefreshingCache(Function<K, V> loader, Duration ttl, Duration negativeTtl) {
+    this(loader, ttl, negativeTtl, DEFAULT_EXECUTOR);
+  }
+
+  /**
+   * Create a cache with the given loader function, which is run on the given executor.
+   */
+  public RefreshingCache(Function<K, V> loader, Duration ttl, Duration negativeTtl,
+      Executor executor) {
+    this.loader = loader;
+    this.ttl = ttl;
+    this.negativeTtl = negativeTtl;
+    this.executor = executor;
+  }
+
+  /**
+   * Get the value for a key. Only waits if the key has never been loaded, in which case any load
+   * failure is thrown to the caller.
+   */
+  public V get(K key) {
+    Slot<V> slot = slots.computeIfAbsent(key, k -> new Slot<>());
+    Loaded<V> loaded = slot.loaded.get();
+    if (loaded == null) {
+      return await(key, startLoad(key, slot));
+    }
+    if (loaded.expiresAt != null && Instant.now().isAfter(loaded.expiresAt)) {
+      startLoad(key, slot);
+    }
+    return loaded.value;
+  }
+
+  /**
+   * Get the current value for a key, without any loading.
+   */
+  public V getIfPresent(K key) {
+    Slot<V> slot = slots.get(key);
+    Loaded<V> loaded = slot == null ? null : slot.loaded.get();
+    return loaded == null ? null : loaded.value;
+  }
+
+  /**
+   * Reload the value for a key, unless the current value was loaded less than minAge ago. Returns
+   * the (shared) in-progress load, or null if the current value is too recent to reload.
+   */
+  public CompletableFuture<V> refresh(K key, Duration minAge) {
+    Slot<V> slot = slots.computeIfAbsent(key, k -> new Slot<>());
+    Loaded<V> loaded = slot.loaded.get();
+    if (loaded != null && Instant.now().isBefore(loaded.loadedAt.plus(minAge))) {
+      return slot.inFlight.get();
+    }
+    return startLoad(key, slot);
+  }
+
+  /**
+   * Wait for a (possibly null) in-progress load, returning its value.
+   */
+  public V await(K key, CompletableFuture<V> load) {
+    try {
+      return load == null ? getIfPresent(key) : load.join();
+    } catch (CompletionException e) {
+      throw new RuntimeException("While loading cache value for " + key, e.getCause());
+    }
+  }
+
+  /**
+   * Explicitly set the value for a key. Explicit values don't expire, and aren't replaced by any
+   * load that was already in progress.
+   */
+  public void put(K key, V value) {
+    slots.computeIfAbsent(key, k -> new Slot<>()).loaded.set(
+        new Loaded<>(value, Instant.now(), null));
+  }
+
+  public void invalidate(K key) {
+    slots.remove(key);
+  }
+
+  private CompletableFuture<V> startLoad(K key, Slot<V> slot) {
+    CompletableFuture<V> future = new CompletableFuture<>();
+    CompletableFuture<V> existing = slot.inFlight.compareAndExchange(null, future);
+    if (existing != null) {
+      return existing;
+    }
+    try {
+      executor.execute(() -> load(key, slot, future));
+    } catch (Exception e) {
+      slot.inFlight.set(null);
+      future.completeExceptionally(e);
+    }
+    return future;
+  }
+
+  private void load(K key, Slot<V> slot, CompletableFuture<V> future) {
+    Loaded<V> previous = slot.loaded.get();
+    Instant now = Instant.now();
+    try {
+      V value = loader.apply(key);
+      slot.loaded.compareAndSet(previous,
+          new Loaded<>(value, now, now.plus(value == null ? negativeTtl : ttl)));
+      slot.inFlight.set(null);
+      future.complete(value);
+    } catch (Exception e) {
+      // Keep serving any previous value, but hold off on trying again for a while.
+      V previousValue = previous == null ? null : previous.value;
+      slot.loaded.compareAndSet(previous, new Loaded<>(previousValue, now, now.plus(negativeTtl)));
+      slot.inFlight.set(null);
+      future.completeExceptionally(e);
+    }
+  }
+
+  private record Loaded<V>(V value, Instant loadedAt, Instant expiresAt) {
+  }
+
+  private static class Slot<V> {
+
+    final AtomicReference<Loaded<V>> loaded = new AtomicReference<>();
+    final AtomicReference<CompletableFuture<V>> inFlight = new AtomicReference<>();
+  }
+}
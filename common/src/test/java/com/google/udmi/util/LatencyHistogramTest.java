@@ -0,0 +1,39 @@
+package com.google.udmi.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tests for the latency histogram.
+ */
+public class LatencyHistogramTest {
+
+  private static final int SAMPLES = 1000;
+  private static final double PRECISION = 0.125;
+
+  @Test
+  public void bucketLimits() {
+    for (long value = 0; value < 1_000_000; value = value * 3 / 2 + 1) {
+      int bucket = LatencyHistogram.bucketFor(value);
+      assertTrue("value within bucket " + value, value <= LatencyHistogram.bucketLimit(bucket));
+      assertTrue("value above previous " + value,
+          bucket == 0 || value > LatencyHistogram.bucketLimit(bucket - 1));
+    }
+  }
+
+  @Test
+  public void quantiles() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (int i = 1; i <= SAMPLES; i++) {
+      histogram.record(i);
+    }
+    assertEquals("sample count", SAMPLES, histogram.getCount());
+    assertEquals("max value", SAMPLES, histogram.getMax());
+    long median = histogram.getQuantile(0.5);
+    assertTrue("median " + median, Math.abs(median - SAMPLES / 2) <= SAMPLES / 2 * PRECISION);
+    long p99 = histogram.getQuantile(0.99);
+    assertTrue("p99 " + p99, Math.abs(p99 - SAMPLES * 99 / 100) <= SAMPLES * PRECISION);
+  }
+}
@@ -0,0 +1,105 @@
+package com.google.udmi.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+/**
+ * Tests for the refreshing cache.
+ */
+public class RefreshingCacheTest {
+
+  private static final Duration LONG_TTL = Duration.ofHours(1);
+  private static final Duration NO_TTL = Duration.ZERO;
+  private static final int CALLER_COUNT = 10;
+  private static final String KEY = "key";
+  private static final long SETTLE_TIME_MS = 100;
+
+  private final AtomicInteger loads = new AtomicInteger();
+
+  private String countingLoader(String key) {
+    return key + loads.incrementAndGet();
+  }
+
+  @Test
+  public void singleFlight() throws Exception {
+    CountDownLatch release = new CountDownLatch(1);
+    RefreshingCache<String, String> cache = new RefreshingCache<>(key -> {
+      awaitLatch(release);
+      return countingLoader(key);
+    }, LONG_TTL, LONG_TTL);
+
+    ExecutorService callers = Executors.newFixedThreadPool(CALLER_COUNT);
+    List<CompletableFuture<String>> results = new ArrayList<>();
+    CountDownLatch started = new CountDownLatch(CALLER_COUNT);
+    for (int i = 0; i < CALLER_COUNT; i++) {
+      results.add(CompletableFuture.supplyAsync(() -> {
+        started.countDown();
+        return cache.get(KEY);
+      }, callers));
+    }
+    started.await();
+    Thread.sleep(SETTLE_TIME_MS);
+    release.countDown();
+    for (CompletableFuture<String> result : results) {
+      assertEquals("caller result", "key1", result.get(1, TimeUnit.SECONDS));
+    }
+    callers.shutdown();
+    assertEquals("load count", 1, loads.get());
+  }
+
+  @Test
+  public void staleWhileRevalidate() {
+    RefreshingCache<String, String> cache =
+        new RefreshingCache<>(this::countingLoader, NO_TTL, NO_TTL, Runnable::run);
+    assertEquals("initial value", "key1", cache.get(KEY));
+    // The expired value is returned, and the (here synchronous) reload updates it for next time.
+    assertEquals("stale value", "key1", cache.get(KEY));
+    assertEquals("refreshed value", "key2", cache.getIfPresent(KEY));
+  }
+
+  @Test
+  public void negativeCaching() {
+    RefreshingCache<String, String> cache = new RefreshingCache<>(key -> {
+      loads.incrementAndGet();
+      return null;
+    }, LONG_TTL, LONG_TTL, Runnable::run);
+    assertNull("missing value", cache.get(KEY));
+    assertNull("still missing", cache.get(KEY));
+    assertNull("recent refresh", cache.refresh(KEY, LONG_TTL));
+    assertEquals("load count", 1, loads.get());
+    assertNotNull("forced refresh", cache.refresh(KEY, NO_TTL));
+    assertEquals("forced load count", 2, loads.get());
+  }
+
+  @Test
+  public void explicitValue() {
+    RefreshingCache<String, String> cache =
+        new RefreshingCache<>(this::countingLoader, NO_TTL, NO_TTL, Runnable::run);
+    cache.put(KEY, "pinned");
+    assertEquals("pinned value", "pinned", cache.get(KEY));
+    assertEquals("pinned again", "pinned", cache.get(KEY));
+    assertEquals("load count", 0, loads.get());
+    cache.invalidate(KEY);
+    assertEquals("reloaded value", "key1", cache.get(KEY));
+  }
+
+  private static void awaitLatch(CountDownLatch latch) {
+    try {
+      latch.await();
+    } catch (InterruptedException e) {
+      throw new RuntimeException("Interrupted", e);
+    }
+  }
+}
@@ -16,7 +16,11 @@ import com.fasterxml.jackson.annotation.JsonPropertyOrder;
  */
 @JsonInclude(JsonInclude.Include.NON_NULL)
 @JsonPropertyOrder({
-    "udmi_prefix"
+    "udmi_prefix",
+    "log_level",
+    "log_format",
+    "log_buffer",
+    "metrics_port"
 })
 @Generated("jsonschema2pojo")
 public class BasePodConfiguration {
@@ -28,11 +32,43 @@ public class BasePodConfiguration {
     @JsonProperty("udmi_prefix")
     @JsonPropertyDescription("prefix for udmi namespacing")
     public String udmi_prefix;
+    /**
+     * minimum level of log messages to output (e.g. INFO or DEBUG)
+     * 
+     */
+    @JsonProperty("log_level")
+    @JsonPropertyDescription("minimum level of log messages to output (e.g. INFO or DEBUG)")
+    public String log_level;
+    /**
+     * format of log output, either text (default) or json
+     * 
+     */
+    @JsonProperty("log_format")
+    @JsonPropertyDescription("format of log output, either text (default) or json")
+    public String log_format;
+    /**
+     * size of the asynchronous log buffer, or 0 for synchronous logging
+     * 
+     */
+    @JsonProperty("log_buffer")
+    @JsonPropertyDescription("size of the asynchronous log buffer, or 0 for synchronous logging")
+    public Integer log_buffer;
+    /**
+     * local port for serving metrics in Prometheus text format, or 0 to disable
+     * 
+     */
+    @JsonProperty("metrics_port")
+    @JsonPropertyDescription("local port for serving metrics in Prometheus text format, or 0 to disable")
+    public Integer metrics_port;
 
     @Override
     public int hashCode() {
         int result = 1;
         result = ((result* 31)+((this.udmi_prefix == null)? 0 :this.udmi_prefix.hashCode()));
+        result = ((result* 31)+((this.log_level == null)? 0 :this.log_level.hashCode()));
+        result = ((result* 31)+((this.log_format == null)? 0 :this.log_format.hashCode()));
+        result = ((result* 31)+((this.log_buffer == null)? 0 :this.log_buffer.hashCode()));
+        result = ((result* 31)+((this.metrics_port == null)? 0 :this.metrics_port.hashCode()));
         return result;
     }
 
@@ -45,7 +81,7 @@ public class BasePodConfiguration {
             return false;
         }
         BasePodConfiguration rhs = ((BasePodConfiguration) other);
-        return ((this.udmi_prefix == rhs.udmi_prefix)||((this.udmi_prefix!= null)&&this.udmi_prefix.equals(rhs.udmi_prefix)));
+        return ((((((this.udmi_prefix == rhs.udmi_prefix)||((this.udmi_prefix!= null)&&this.udmi_prefix.equals(rhs.udmi_prefix)))&&((this.log_level == rhs.log_level)||((this.log_level!= null)&&this.log_level.equals(rhs.log_level))))&&((this.log_format == rhs.log_format)||((this.log_format!= null)&&this.log_format.equals(rhs.log_format))))&&((this.log_buffer == rhs.log_buffer)||((this.log_buffer!= null)&&this.log_buffer.equals(rhs.log_buffer))))&&((this.metrics_port == rhs.metrics_port)||((this.metrics_port!= null)&&this.metrics_port.equals(rhs.metrics_port))));
     }
 
 }
@@ -27,11 +27,22 @@ import com.fasterxml.jackson.annotation.JsonValue;
     "error",
     "port",
     "config_sync_sec",
+    "threads",
+    "threads_max",
+    "capacity",
+    "overflow",
+    "control_reserve",
+    "coalesce_ms",
+    "batch_size",
+    "batch_bytes",
+    "batch_delay_ms",
+    "replay_speed",
     "client_id",
     "msg_prefix",
     "recv_id",
     "send_id",
     "distributor",
+    "shard_heartbeat_sec",
     "auth_provider",
     "generation"
 })
@@ -70,6 +81,76 @@ public class EndpointConfiguration {
     @JsonProperty("config_sync_sec")
     @JsonPropertyDescription("Delay waiting for config message on start, 0 for default, <0 to disable")
     public Integer config_sync_sec;
+    /**
+     * Number of message processing threads, 0 for default
+     * 
+     */
+    @JsonProperty("threads")
+    @JsonPropertyDescription("Number of message processing threads, 0 for default")
+    public Integer threads;
+    /**
+     * Maximum number of processing threads when scaling for a message backlog
+     * 
+     */
+    @JsonProperty("threads_max")
+    @JsonPropertyDescription("Maximum number of processing threads when scaling for a message backlog")
+    public Integer threads_max;
+    /**
+     * Maximum number of queued messages, 0 for unbounded
+     * 
+     */
+    @JsonProperty("capacity")
+    @JsonPropertyDescription("Maximum number of queued messages, 0 for unbounded")
+    public Integer capacity;
+    /**
+     * Policy for new messages when the queue is at capacity
+     * 
+     */
+    @JsonProperty("overflow")
+    @JsonPropertyDescription("Policy for new messages when the queue is at capacity")
+    public EndpointConfiguration.Overflow overflow;
+    /**
+     * Queue capacity reserved for control messages, which are also taken ahead of telemetry, 0 to disable priority lanes
+     * 
+     */
+    @JsonProperty("control_reserve")
+    @JsonPropertyDescription("Queue capacity reserved for control messages, which are also taken ahead of telemetry, 0 to disable priority lanes")
+    public Integer control_reserve;
+    /**
+     * Window for combining config updates to the same device, 0 to disable
+     * 
+     */
+    @JsonProperty("coalesce_ms")
+    @JsonPropertyDescription("Window for combining config updates to the same device, 0 to disable")
+    public Integer coalesce_ms;
+    /**
+     * Maximum number of messages in a publish batch, enables asynchronous publishing
+     * 
+     */
+    @JsonProperty("batch_size")
+    @JsonPropertyDescription("Maximum number of messages in a publish batch, enables asynchronous publishing")
+    public Integer batch_size;
+    /**
+     * Maximum number of bytes in a publish batch, enables asynchronous publishing
+     * 
+     */
+    @JsonProperty("batch_bytes")
+    @JsonPropertyDescription("Maximum number of bytes in a publish batch, enables asynchronous publishing")
+    public Integer batch_bytes;
+    /**
+     * Maximum delay before sending a publish batch, enables asynchronous publishing
+     * 
+     */
+    @JsonProperty("batch_delay_ms")
+    @JsonPropertyDescription("Maximum delay before sending a publish batch, enables asynchronous publishing")
+    public Integer batch_delay_ms;
+    /**
+     * Trace replay speed relative to message publish times (1 for real-time), unset or 0 to replay as fast as possible
+     * 
+     */
+    @JsonProperty("replay_speed")
+    @JsonPropertyDescription("Trace replay speed relative to message publish times (1 for real-time), unset or 0 to replay as fast as possible")
+    public Double replay_speed;
     /**
      * 
      * (Required)
@@ -105,6 +186,13 @@ public class EndpointConfiguration {
     @JsonProperty("distributor")
     @JsonPropertyDescription("processor designation for a distributor channel")
     public String distributor;
+    /**
+     * Interval for announcing shard membership on a distributor, enables sharded processing by device, 0 to disable
+     * 
+     */
+    @JsonProperty("shard_heartbeat_sec")
+    @JsonPropertyDescription("Interval for announcing shard membership on a distributor, enables sharded processing by device, 0 to disable")
+    public Integer shard_heartbeat_sec;
     @JsonProperty("auth_provider")
     public Auth_provider auth_provider;
     /**
@@ -131,6 +219,17 @@ public class EndpointConfiguration {
         result = ((result* 31)+((this.port == null)? 0 :this.port.hashCode()));
         result = ((result* 31)+((this.recv_id == null)? 0 :this.recv_id.hashCode()));
         result = ((result* 31)+((this.auth_provider == null)? 0 :this.auth_provider.hashCode()));
+        result = ((result* 31)+((this.threads == null)? 0 :this.threads.hashCode()));
+        result = ((result* 31)+((this.threads_max == null)? 0 :this.threads_max.hashCode()));
+        result = ((result* 31)+((this.capacity == null)? 0 :this.capacity.hashCode()));
+        result = ((result* 31)+((this.overflow == null)? 0 :this.overflow.hashCode()));
+        result = ((result* 31)+((this.coalesce_ms == null)? 0 :this.coalesce_ms.hashCode()));
+        result = ((result* 31)+((this.batch_size == null)? 0 :this.batch_size.hashCode()));
+        result = ((result* 31)+((this.batch_bytes == null)? 0 :this.batch_bytes.hashCode()));
+        result = ((result* 31)+((this.batch_delay_ms == null)? 0 :this.batch_delay_ms.hashCode()));
+        result = ((result* 31)+((this.replay_speed == null)? 0 :this.replay_speed.hashCode()));
+        result = ((result* 31)+((this.control_reserve == null)? 0 :this.control_reserve.hashCode()));
+        result = ((result* 31)+((this.shard_heartbeat_sec == null)? 0 :this.shard_heartbeat_sec.hashCode()));
         return result;
     }
 
@@ -143,7 +242,7 @@ public class EndpointConfiguration {
             return false;
         }
         EndpointConfiguration rhs = ((EndpointConfiguration) other);
-        return ((((((((((((((this.generation == rhs.generation)||((this.generation!= null)&&this.generation.equals(rhs.generation)))&&((this.transport == rhs.transport)||((this.transport!= null)&&this.transport.equals(rhs.transport))))&&((this.error == rhs.error)||((this.error!= null)&&this.error.equals(rhs.error))))&&((this.config_sync_sec == rhs.config_sync_sec)||((this.config_sync_sec!= null)&&this.config_sync_sec.equals(rhs.config_sync_sec))))&&((this.distributor == rhs.distributor)||((this.distributor!= null)&&this.distributor.equals(rhs.distributor))))&&((this.client_id == rhs.client_id)||((this.client_id!= null)&&this.client_id.equals(rhs.client_id))))&&((this.msg_prefix == rhs.msg_prefix)||((this.msg_prefix!= null)&&this.msg_prefix.equals(rhs.msg_prefix))))&&((this.send_id == rhs.send_id)||((this.send_id!= null)&&this.send_id.equals(rhs.send_id))))&&((this.protocol == rhs.protocol)||((this.protocol!= null)&&this.protocol.equals(rhs.protocol))))&&((this.hostname == rhs.hostname)||((this.hostname!= null)&&this.hostname.equals(rhs.hostname))))&&((this.port == rhs.port)||((this.port!= null)&&this.port.equals(rhs.port))))&&((this.recv_id == rhs.recv_id)||((this.recv_id!= null)&&this.recv_id.equals(rhs.recv_id))))&&((this.auth_provider == rhs.auth_provider)||((this.auth_provider!= null)&&this.auth_provider.equals(rhs.auth_provider))));
+        return (((((((((((((((((((((((((this.generation == rhs.generation)||((this.generation!= null)&&this.generation.equals(rhs.generation)))&&((this.transport == rhs.transport)||((this.transport!= null)&&this.transport.equals(rhs.transport))))&&((this.error == rhs.error)||((this.error!= null)&&this.error.equals(rhs.error))))&&((this.config_sync_sec == rhs.config_sync_sec)||((this.config_sync_sec!= null)&&this.config_sync_sec.equals(rhs.config_sync_sec))))&&((this.distributor == rhs.distributor)||((this.distributor!= null)&&this.distributor.equals(rhs.distributor))))&&((this.client_id == rhs.client_id)||((this.client_id!= null)&&this.client_id.equals(rhs.client_id))))&&((this.msg_prefix == rhs.msg_prefix)||((this.msg_prefix!= null)&&this.msg_prefix.equals(rhs.msg_prefix))))&&((this.send_id == rhs.send_id)||((this.send_id!= null)&&this.send_id.equals(rhs.send_id))))&&((this.protocol == rhs.protocol)||((this.protocol!= null)&&this.protocol.equals(rhs.protocol))))&&((this.hostname == rhs.hostname)||((this.hostname!= null)&&this.hostname.equals(rhs.hostname))))&&((this.port == rhs.port)||((this.port!= null)&&this.port.equals(rhs.port))))&&((this.recv_id == rhs.recv_id)||((this.recv_id!= null)&&this.recv_id.equals(rhs.recv_id))))&&((this.auth_provider == rhs.auth_provider)||((this.auth_provider!= null)&&this.auth_provider.equals(rhs.auth_provider))))&&((this.threads == rhs.threads)||((this.threads!= null)&&this.threads.equals(rhs.threads))))&&((this.threads_max == rhs.threads_max)||((this.threads_max!= null)&&this.threads_max.equals(rhs.threads_max))))&&((this.capacity == rhs.capacity)||((this.capacity!= null)&&this.capacity.equals(rhs.capacity))))&&((this.overflow == rhs.overflow)||((this.overflow!= null)&&this.overflow.equals(rhs.overflow))))&&((this.coalesce_ms == rhs.coalesce_ms)||((this.coalesce_ms!= null)&&this.coalesce_ms.equals(rhs.coalesce_ms))))&&((this.batch_size == rhs.batch_size)||((this.batch_size!= null)&&this.batch_size.equals(rhs.batch_size))))&&((this.batch_bytes == rhs.batch_bytes)||((this.batch_bytes!= null)&&this.batch_bytes.equals(rhs.batch_bytes))))&&((this.batch_delay_ms == rhs.batch_delay_ms)||((this.batch_delay_ms!= null)&&this.batch_delay_ms.equals(rhs.batch_delay_ms))))&&((this.replay_speed == rhs.replay_speed)||((this.replay_speed!= null)&&this.replay_speed.equals(rhs.replay_speed))))&&((this.control_reserve == rhs.control_reserve)||((this.control_reserve!= null)&&this.control_reserve.equals(rhs.control_reserve))))&&((this.shard_heartbeat_sec == rhs.shard_heartbeat_sec)||((this.shard_heartbeat_sec!= null)&&this.shard_heartbeat_sec.equals(rhs.shard_heartbeat_sec))));
     }
 
     @Generated("jsonschema2pojo")
@@ -229,4 +328,45 @@ public class EndpointConfiguration {
 
     }
 
+    @Generated("jsonschema2pojo")
+    public enum Overflow {
+
+        BLOCK("block"),
+        DROP_OLDEST("drop_oldest"),
+        NACK("nack");
+        private final String value;
+        private final static Map<String, EndpointConfiguration.Overflow> CONSTANTS = new HashMap<String, EndpointConfiguration.Overflow>();
+
+        static {
+            for (EndpointConfiguration.Overflow c: values()) {
+                CONSTANTS.put(c.value, c);
+            }
+        }
+
+        Overflow(String value) {
+            this.value = value;
+        }
+
+        @Override
+        public String toString() {
+            return this.value;
+        }
+
+        @JsonValue
+        public String value() {
+            return this.value;
+        }
+
+        @JsonCreator
+        public static EndpointConfiguration.Overflow fromValue(String value) {
+            EndpointConfiguration.Overflow constant = CONSTANTS.get(value);
+            if (constant == null) {
+                throw new IllegalArgumentException(value);
+            } else {
+                return constant;
+            }
+        }
+
+    }
+
 }
@@ -52,11 +52,22 @@ class EndpointConfiguration:
     self.error = None
     self.port = None
     self.config_sync_sec = None
+    self.threads = None
+    self.threads_max = None
+    self.capacity = None
+    self.overflow = None
+    self.control_reserve = None
+    self.coalesce_ms = None
+    self.batch_size = None
+    self.batch_bytes = None
+    self.batch_delay_ms = None
+    self.replay_speed = None
     self.client_id = None
     self.msg_prefix = None
     self.recv_id = None
     self.send_id = None
     self.distributor = None
+    self.shard_heartbeat_sec = None
     self.auth_provider = None
     self.generation = None
 
@@ -71,11 +82,22 @@ class EndpointConfiguration:
     result.error = source.get('error')
     result.port = source.get('port')
     result.config_sync_sec = source.get('config_sync_sec')
+    result.threads = source.get('threads')
+    result.threads_max = source.get('threads_max')
+    result.capacity = source.get('capacity')
+    result.overflow = source.get('overflow')
+    result.control_reserve = source.get('control_reserve')
+    result.coalesce_ms = source.get('coalesce_ms')
+    result.batch_size = source.get('batch_size')
+    result.batch_bytes = source.get('batch_bytes')
+    result.batch_delay_ms = source.get('batch_delay_ms')
+    result.replay_speed = source.get('replay_speed')
     result.client_id = source.get('client_id')
     result.msg_prefix = source.get('msg_prefix')
     result.recv_id = source.get('recv_id')
     result.send_id = source.get('send_id')
     result.distributor = source.get('distributor')
+    result.shard_heartbeat_sec = source.get('shard_heartbeat_sec')
     result.auth_provider = ObjectA90DCC28.from_dict(source.get('auth_provider'))
     result.generation = source.get('generation')
     return result
@@ -110,6 +132,26 @@ class EndpointConfiguration:
       result['port'] = self.port # 5
     if self.config_sync_sec:
       result['config_sync_sec'] = self.config_sync_sec # 5
+    if self.threads:
+      result['threads'] = self.threads # 5
+    if self.threads_max:
+      result['threads_max'] = self.threads_max # 5
+    if self.capacity:
+      result['capacity'] = self.capacity # 5
+    if self.overflow:
+      result['overflow'] = self.overflow # 5
+    if self.control_reserve:
+      result['control_reserve'] = self.control_reserve # 5
+    if self.coalesce_ms:
+      result['coalesce_ms'] = self.coalesce_ms # 5
+    if self.batch_size:
+      result['batch_size'] = self.batch_size # 5
+    if self.batch_bytes:
+      result['batch_bytes'] = self.batch_bytes # 5
+    if self.batch_delay_ms:
+      result['batch_delay_ms'] = self.batch_delay_ms # 5
+    if self.replay_speed:
+      result['replay_speed'] = self.replay_speed # 5
     if self.client_id:
       result['client_id'] = self.client_id # 5
     if self.msg_prefix:
@@ -120,6 +162,8 @@ class EndpointConfiguration:
       result['send_id'] = self.send_id # 5
     if self.distributor:
       result['distributor'] = self.distributor # 5
+    if self.shard_heartbeat_sec:
+      result['shard_heartbeat_sec'] = self.shard_heartbeat_sec # 5
     if self.auth_provider:
       result['auth_provider'] = self.auth_provider.to_dict() # 4
     if self.generation:
@@ -6,6 +6,10 @@ class BasePodConfiguration:
 
   def __init__(self):
     self.udmi_prefix = None
+    self.log_level = None
+    self.log_format = None
+    self.log_buffer = None
+    self.metrics_port = None
 
   @staticmethod
   def from_dict(source):
@@ -13,6 +17,10 @@ class BasePodConfiguration:
       return None
     result = BasePodConfiguration()
     result.udmi_prefix = source.get('udmi_prefix')
+    result.log_level = source.get('log_level')
+    result.log_format = source.get('log_format')
+    result.log_buffer = source.get('log_buffer')
+    result.metrics_port = source.get('metrics_port')
     return result
 
   @staticmethod
@@ -35,4 +43,12 @@ class BasePodConfiguration:
     result = {}
     if self.udmi_prefix:
       result['udmi_prefix'] = self.udmi_prefix # 5
+    if self.log_level:
+      result['log_level'] = self.log_level # 5
+    if self.log_format:
+      result['log_format'] = self.log_format # 5
+    if self.log_buffer:
+      result['log_buffer'] = self.log_buffer # 5
+    if self.metrics_port:
+      result['metrics_port'] = self.metrics_port # 5
     return result
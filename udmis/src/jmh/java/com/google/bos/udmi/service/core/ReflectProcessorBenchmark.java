@@ -0,0 +1,164 @@
+package com.google.bos.udmi.service.core;
+
+import static com.google.bos.udmi.service.core.ReflectProcessor.PAYLOAD_KEY;
+import static com.google.bos.udmi.service.core.StateProcessor.IOT_ACCESS_COMPONENT;
+import static com.google.udmi.util.GeneralUtils.encodeBase64;
+import static com.google.udmi.util.JsonUtil.getTimestamp;
+import static com.google.udmi.util.JsonUtil.loadFileRequired;
+import static com.google.udmi.util.JsonUtil.stringify;
+import static com.google.udmi.util.JsonUtil.toMap;
+
+import com.google.bos.udmi.service.access.LocalIotAccessProvider;
+import com.google.bos.udmi.service.messaging.impl.MessageDispatcherImpl;
+import com.google.bos.udmi.service.pod.ContainerBase;
+import com.google.bos.udmi.service.pod.UdmiServicePod;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import udmi.schema.CloudModel;
+import udmi.schema.CloudModel.Operation;
+import udmi.schema.EndpointConfiguration;
+import udmi.schema.EndpointConfiguration.Overflow;
+import udmi.schema.EndpointConfiguration.Protocol;
+import udmi.schema.Envelope;
+import udmi.schema.Envelope.SubFolder;
+import udmi.schema.Envelope.SubType;
+import udmi.schema.IotAccess;
+import udmi.schema.SetupUdmiState;
+import udmi.schema.UdmiState;
+
+/**
+ * Reflector message handling: decoding the wrapped message, acting on it, and encoding the reply
+ * command. The "model" payload is a device model request answered by the iot access provider,
+ * "propagate" is a pointset event that is republished, and "state" is the reflector state
+ * handshake that results in a config update. Commands are sent synchronously (to a discarding
+ * provider), so the reply encoding is included in the measurement.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReflectProcessorBenchmark {
+
+  private static final String EVENT_EXAMPLE = "../tests/schemas/event_pointset/example.json";
+  private static final String REFLECT_REGISTRY = "UDMI-REFLECT";
+  private static final String BENCHMARK_REGISTRY = "benchmark-registry";
+  private static final String BENCHMARK_DEVICE = "benchmark-device";
+  private static final int QUEUE_CAPACITY = 1000;
+
+  @Param({"model", "propagate", "state"})
+  public String payload;
+
+  private ReflectProcessor processor;
+  private MessageDispatcherImpl dispatcher;
+  private Envelope reflection;
+  private Object reflectMessage;
+
+  private static Object makeWrappedMessage(SubType subType, SubFolder subFolder, Object message) {
+    Envelope envelope = new Envelope();
+    envelope.subType = subType;
+    envelope.subFolder = subFolder;
+    envelope.deviceRegistryId = BENCHMARK_REGISTRY;
+    envelope.deviceId = BENCHMARK_DEVICE;
+    envelope.transactionId = "benchmark";
+    Map<String, Object> wrapped = toMap(envelope);
+    wrapped.put(PAYLOAD_KEY, encodeBase64(stringify(message)));
+    return wrapped;
+  }
+
+  private static Object makeStateMessage() {
+    UdmiState udmiState = new UdmiState();
+    udmiState.setup = new SetupUdmiState();
+    udmiState.setup.user = "benchmark";
+    Map<String, Object> stateMessage = new HashMap<>();
+    stateMessage.put(SubFolder.UDMI.value(), udmiState);
+    stateMessage.put("timestamp", getTimestamp());
+    return toMap(stateMessage);
+  }
+
+  /**
+   * Set up a reflect processor with a local message pipe and an iot access provider that models
+   * devices trivially and discards commands.
+   */
+  @Setup(Level.Trial)
+  public void setup() {
+    ContainerBase.setLogLevel(udmi.schema.Level.WARNING);
+    StateProcessorBenchmark.ensureDeployFile();
+    UdmiServicePod.resetForTest();
+    IotAccess iotAccess = new IotAccess();
+    iotAccess.options = "command_parallelism=0";
+    UdmiServicePod.putComponent(IOT_ACCESS_COMPONENT,
+        () -> new LocalIotAccessProvider(iotAccess) {
+          @Override
+          public CloudModel modelResource(String deviceRegistryId, String deviceId,
+              CloudModel cloudModel) {
+            CloudModel reply = new CloudModel();
+            reply.operation = cloudModel.operation;
+            return reply;
+          }
+
+          @Override
+          public void sendCommandBase(String registryId, String deviceId, SubFolder folder,
+              String message) {
+          }
+        });
+
+    EndpointConfiguration config = new EndpointConfiguration();
+    config.protocol = Protocol.LOCAL;
+    config.hostname = "benchmark";
+    config.recv_id = "reflect_in";
+    config.send_id = "reflect_out";
+    config.capacity = QUEUE_CAPACITY;
+    config.overflow = Overflow.DROP_OLDEST;
+    processor = ProcessorBase.create(ReflectProcessor.class, config);
+    processor.activate();
+    dispatcher = (MessageDispatcherImpl) processor.getDispatcher();
+
+    reflection = new Envelope();
+    reflection.deviceRegistryId = REFLECT_REGISTRY;
+    reflection.deviceId = BENCHMARK_REGISTRY;
+    switch (payload) {
+      case "model" -> {
+        CloudModel model = new CloudModel();
+        model.operation = Operation.UPDATE;
+        reflection.subType = SubType.MODEL;
+        reflection.subFolder = SubFolder.UDMI;
+        reflectMessage = makeWrappedMessage(SubType.MODEL, SubFolder.CLOUD, model);
+      }
+      case "propagate" -> {
+        reflection.subType = SubType.EVENT;
+        reflection.subFolder = SubFolder.UDMI;
+        reflectMessage = makeWrappedMessage(SubType.EVENT, SubFolder.POINTSET,
+            loadFileRequired(Object.class, EVENT_EXAMPLE));
+      }
+      case "state" -> reflectMessage = makeStateMessage();
+      default -> throw new IllegalArgumentException("Unknown payload " + payload);
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    processor.shutdown();
+  }
+
+  @Benchmark
+  public void processReflection() {
+    dispatcher.withEnvelopeFor(reflection, reflectMessage,
+        () -> processor.defaultHandler(reflectMessage));
+  }
+}
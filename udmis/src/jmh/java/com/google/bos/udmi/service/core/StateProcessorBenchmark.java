@@ -0,0 +1,118 @@
+package com.google.bos.udmi.service.core;
+
+import static com.google.bos.udmi.service.core.StateProcessor.IOT_ACCESS_COMPONENT;
+import static com.google.udmi.util.JsonUtil.loadFileRequired;
+import static com.google.udmi.util.JsonUtil.writeFile;
+import static java.lang.String.format;
+
+import com.google.bos.udmi.service.access.LocalIotAccessProvider;
+import com.google.bos.udmi.service.messaging.impl.MessageDispatcherImpl;
+import com.google.bos.udmi.service.pod.ContainerBase;
+import com.google.bos.udmi.service.pod.UdmiServicePod;
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import udmi.schema.EndpointConfiguration;
+import udmi.schema.EndpointConfiguration.Overflow;
+import udmi.schema.EndpointConfiguration.Protocol;
+import udmi.schema.Envelope;
+import udmi.schema.Envelope.SubFolder;
+import udmi.schema.IotAccess;
+import udmi.schema.SetupUdmiConfig;
+
+/**
+ * State message processing (upgrade, sharding, reflection and publishing) over the example state
+ * messages from the schema tests. Published messages go to a bounded local queue that drops the
+ * oldest entries, and reflected messages are discarded, so only the processing itself is measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StateProcessorBenchmark {
+
+  private static final String STATE_EXAMPLES = "../tests/schemas/state/%s.json";
+  private static final String BENCHMARK_REGISTRY = "benchmark-registry";
+  private static final String BENCHMARK_DEVICE = "benchmark-device";
+  private static final int QUEUE_CAPACITY = 1000;
+
+  @Param({"example", "gateway", "discovery", "writeback"})
+  public String payload;
+
+  private StateProcessor processor;
+  private MessageDispatcherImpl dispatcher;
+  private Object stateMessage;
+  private Envelope envelope;
+
+  /**
+   * Make sure there's a deployment file, which the pod needs for its version info.
+   */
+  static void ensureDeployFile() {
+    File deployFile = new File(UdmiServicePod.DEPLOY_FILE);
+    if (!deployFile.exists()) {
+      deployFile.getParentFile().mkdirs();
+      SetupUdmiConfig deployedVersion = new SetupUdmiConfig();
+      deployedVersion.udmi_version = "benchmark";
+      writeFile(deployedVersion, deployFile);
+    }
+  }
+
+  /**
+   * Set up a state processor with a local message pipe and a discarding iot access provider.
+   */
+  @Setup(Level.Trial)
+  public void setup() {
+    ContainerBase.setLogLevel(udmi.schema.Level.WARNING);
+    ensureDeployFile();
+    UdmiServicePod.resetForTest();
+    UdmiServicePod.putComponent(IOT_ACCESS_COMPONENT,
+        () -> new LocalIotAccessProvider(new IotAccess()) {
+          @Override
+          public void sendCommandBase(String registryId, String deviceId, SubFolder folder,
+              String message) {
+          }
+        });
+
+    EndpointConfiguration config = new EndpointConfiguration();
+    config.protocol = Protocol.LOCAL;
+    config.hostname = "benchmark";
+    config.recv_id = "state_in";
+    config.send_id = "state_out";
+    config.capacity = QUEUE_CAPACITY;
+    config.overflow = Overflow.DROP_OLDEST;
+    processor = ProcessorBase.create(StateProcessor.class, config);
+    processor.activate();
+    dispatcher = (MessageDispatcherImpl) processor.getDispatcher();
+
+    stateMessage = loadFileRequired(Object.class, format(STATE_EXAMPLES, payload));
+    envelope = new Envelope();
+    envelope.deviceRegistryId = BENCHMARK_REGISTRY;
+    envelope.deviceId = BENCHMARK_DEVICE;
+    envelope.transactionId = "benchmark";
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    processor.shutdown();
+  }
+
+  @Benchmark
+  public void processState() {
+    dispatcher.withEnvelopeFor(envelope, stateMessage,
+        () -> processor.defaultHandler(stateMessage));
+  }
+}
@@ -0,0 +1,104 @@
+package com.google.bos.udmi.service.messaging.impl;
+
+import static com.google.udmi.util.JsonUtil.loadFileRequired;
+
+import com.google.bos.udmi.service.messaging.impl.MessageBase.Bundle;
+import com.google.bos.udmi.service.pod.ContainerBase;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import udmi.schema.EndpointConfiguration;
+import udmi.schema.EndpointConfiguration.Protocol;
+import udmi.schema.Envelope;
+import udmi.schema.Envelope.SubFolder;
+import udmi.schema.Envelope.SubType;
+
+/**
+ * Round trips through a pair of local message pipes: a batch of pointset events is published on
+ * one pipe, echoed back by a second pipe, and the batch completes when all the echoes have been
+ * received. Entries are either passed as objects or (as for a remote transport) serialized to
+ * strings and parsed again on receipt.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LocalMessagePipeBenchmark {
+
+  private static final String EVENT_EXAMPLE = "../tests/schemas/event_pointset/example.json";
+  private static final String BENCHMARK_NAMESPACE = "benchmark";
+  private static final String REQUEST_QUEUE = "bench_request";
+  private static final String REPLY_QUEUE = "bench_reply";
+  private static final int BATCH_SIZE = 100;
+
+  @Param({"false", "true"})
+  public boolean serialize;
+
+  private final Semaphore replies = new Semaphore(0);
+  private LocalMessagePipe client;
+  private LocalMessagePipe server;
+  private Envelope envelope;
+  private Object message;
+
+  private static LocalMessagePipe makePipe(String recvId, String sendId) {
+    EndpointConfiguration config = new EndpointConfiguration();
+    config.protocol = Protocol.LOCAL;
+    config.hostname = BENCHMARK_NAMESPACE;
+    config.recv_id = recvId;
+    config.send_id = sendId;
+    return new LocalMessagePipe(config);
+  }
+
+  /**
+   * Set up a client pipe that counts replies, and a server pipe that echoes everything back.
+   */
+  @Setup(Level.Trial)
+  public void setup() {
+    ContainerBase.setLogLevel(udmi.schema.Level.WARNING);
+    LocalMessagePipe.resetForTestStatic();
+    client = makePipe(REPLY_QUEUE, REQUEST_QUEUE);
+    server = makePipe(REQUEST_QUEUE, REPLY_QUEUE);
+    client.setSerializeEntries(serialize);
+    server.setSerializeEntries(serialize);
+    server.activate(server::publish);
+    client.activate(bundle -> replies.release());
+
+    message = loadFileRequired(Object.class, EVENT_EXAMPLE);
+    envelope = new Envelope();
+    envelope.subType = SubType.EVENT;
+    envelope.subFolder = SubFolder.POINTSET;
+    envelope.deviceRegistryId = "benchmark-registry";
+    envelope.deviceId = "benchmark-device";
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    client.shutdown();
+    server.shutdown();
+    LocalMessagePipe.resetForTestStatic();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(BATCH_SIZE)
+  public void roundTrip() throws InterruptedException {
+    for (int i = 0; i < BATCH_SIZE; i++) {
+      client.publish(new Bundle(envelope, message));
+    }
+    replies.acquire(BATCH_SIZE);
+  }
+}
@@ -0,0 +1,82 @@
+package com.google.bos.udmi.service.messaging.impl;
+
+import static com.google.udmi.util.JsonUtil.loadFileRequired;
+import static java.lang.String.format;
+
+import com.google.bos.udmi.service.messaging.impl.MessageBase.Bundle;
+import com.google.bos.udmi.service.pod.ContainerBase;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import udmi.schema.EndpointConfiguration;
+import udmi.schema.EndpointConfiguration.Protocol;
+import udmi.schema.Envelope;
+import udmi.schema.Envelope.SubFolder;
+import udmi.schema.Envelope.SubType;
+
+/**
+ * Dispatch of received messages, which converts the generic (map) form of a message into the
+ * schema class registered for its type and folder before calling the handler. The payloads are the
+ * example messages from the schema tests, named by type_folder.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageDispatcherBenchmark {
+
+  private static final String SCHEMA_EXAMPLES = "../tests/schemas/%s/example.json";
+
+  @Param({"event_pointset", "event_system", "state_pointset", "config_pointset"})
+  public String payload;
+
+  private MessageDispatcherImpl dispatcher;
+  private Bundle bundle;
+  private Object handled;
+
+  /**
+   * Set up an (inactive) dispatcher with a handler for the message class of the payload.
+   */
+  @Setup(Level.Trial)
+  public void setup() {
+    ContainerBase.setLogLevel(udmi.schema.Level.WARNING);
+    EndpointConfiguration config = new EndpointConfiguration();
+    config.protocol = Protocol.LOCAL;
+    config.hostname = "benchmark";
+    config.recv_id = "dispatch_in";
+    config.send_id = "dispatch_out";
+    dispatcher = new MessageDispatcherImpl(config);
+
+    String[] parts = payload.split("_", 2);
+    Envelope envelope = new Envelope();
+    envelope.subType = SubType.fromValue(parts[0]);
+    envelope.subFolder = SubFolder.fromValue(parts[1]);
+    envelope.deviceRegistryId = "benchmark-registry";
+    envelope.deviceId = "benchmark-device";
+    Class<?> messageClass = MessageDispatcherImpl.getMessageClassFor(envelope);
+    dispatcher.registerHandler(messageClass, message -> handled = message);
+    if (messageClass != Object.class) {
+      // Messages that fail strict conversion are dispatched as maps to the default handler.
+      dispatcher.registerHandler(Object.class, message -> handled = message);
+    }
+    bundle = new Bundle(envelope, loadFileRequired(Object.class, format(SCHEMA_EXAMPLES, payload)));
+  }
+
+  @Benchmark
+  public Object processMessage() {
+    dispatcher.processMessage(bundle);
+    return handled;
+  }
+}
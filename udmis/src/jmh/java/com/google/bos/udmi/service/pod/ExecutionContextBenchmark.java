@@ -0,0 +1,58 @@
+package com.google.bos.udmi.service.pod;
+
+import static java.lang.String.format;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import udmi.schema.Level;
+
+/**
+ * Execution context handling, as done for every message by every pipe thread of a component. The
+ * synchronized benchmark reproduces the previous (locked, eagerly formatted) implementation for
+ * comparison, run with the same thread count against one shared component.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(8)
+public class ExecutionContextBenchmark {
+
+  private final BenchmarkContainer container = new BenchmarkContainer();
+
+  static {
+    ContainerBase.setLogLevel(Level.INFO);
+  }
+
+  @Benchmark
+  public long grabExecutionContext() {
+    return container.grabExecutionContext();
+  }
+
+  @Benchmark
+  public String synchronizedFormatted() {
+    return container.grabSynchronized();
+  }
+
+  private static class BenchmarkContainer extends ContainerBase {
+
+    private final ThreadLocal<String> previousContext = new ThreadLocal<>();
+
+    synchronized String grabSynchronized() {
+      String previous = previousContext.get();
+      previousContext.set(format("%08x", (long) (Math.random() * 0x100000000L)));
+      return previous;
+    }
+  }
+}
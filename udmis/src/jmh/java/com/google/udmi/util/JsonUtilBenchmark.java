@@ -0,0 +1,71 @@
+package com.google.udmi.util;
+
+import static com.google.udmi.util.JsonUtil.fromString;
+import static com.google.udmi.util.JsonUtil.loadFileRequired;
+import static com.google.udmi.util.JsonUtil.stringify;
+import static java.lang.String.format;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import udmi.schema.Config;
+import udmi.schema.Metadata;
+import udmi.schema.PointsetEvent;
+
+/**
+ * JSON serialization and parsing of the schema classes, over the example messages from the schema
+ * tests. These are on the path of every message that crosses a non-local transport.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonUtilBenchmark {
+
+  private static final String SCHEMA_EXAMPLES = "../tests/schemas/%s/example.json";
+  private static final Map<String, Class<?>> SCHEMA_CLASSES = Map.of(
+      "state", udmi.schema.State.class,
+      "config", Config.class,
+      "metadata", Metadata.class,
+      "event_pointset", PointsetEvent.class);
+
+  @Param({"state", "config", "metadata", "event_pointset"})
+  public String schema;
+
+  private Class<?> schemaClass;
+  private Object message;
+  private String messageString;
+
+  /**
+   * Load the example message for the schema, both as an object and as a string.
+   */
+  @Setup(Level.Trial)
+  public void setup() {
+    schemaClass = SCHEMA_CLASSES.get(schema);
+    message = loadFileRequired(schemaClass, format(SCHEMA_EXAMPLES, schema));
+    messageString = stringify(message);
+  }
+
+  @Benchmark
+  public String stringifyMessage() {
+    return stringify(message);
+  }
+
+  @Benchmark
+  public Object parseMessage() {
+    return fromString(schemaClass, messageString);
+  }
+}
@@ -66,7 +66,9 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.udmi.util.GeneralUtils;
 import java.util.AbstractMap.SimpleEntry;
+import java.util.ArrayList;
 import java.util.Base64;
+import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
@@ -75,6 +77,12 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -113,14 +121,23 @@ public class ClearBladeIotAccessProvider extends IotAccessBase {
   private static final String UDMI_STATE_TOPIC = "udmi_state"; // TODO: Make this not hardcoded.
   private static final String TOPIC_NAME_FORMAT = "projects/%s/topics/%s";
 
+  private static final String RPC_PARALLELISM_OPTION = "rpc_parallelism";
+  private static final int RPC_PARALLELISM_DEFAULT = 8;
+
   private final String projectId;
+  private final ExecutorService rpcExecutor;
+  private final ExecutorService pagePrefetcher = Executors.newCachedThreadPool();
 
   /**
-   * Create a new instance for interfacing with GCP IoT Core.
+   * Create a new instance for interfacing with GCP IoT Core. The number of concurrent bulk
+   * (bind/unbind) RPCs can be set with the rpc_parallelism option.
    */
   public ClearBladeIotAccessProvider(IotAccess iotAccess) {
     super(iotAccess);
     projectId = getProjectId(iotAccess);
+    int rpcParallelism = ofNullable(options.get(RPC_PARALLELISM_OPTION)).map(Object::toString)
+        .map(Integer::parseInt).orElse(RPC_PARALLELISM_DEFAULT);
+    rpcExecutor = Executors.newFixedThreadPool(rpcParallelism);
     info("Fetching registry regions...");
     ifTrueThen(isEnabled(), this::fetchRegistryRegions);
     ifNotTrueThen(isEnabled(),
@@ -210,7 +227,8 @@ public class ClearBladeIotAccessProvider extends IotAccessBase {
     return !isNullOrEmpty(projectId);
   }
 
-  protected String updateConfig(String registryId, String deviceId, String config, Long version) {
+  protected Entry<Long, String> updateConfig(String registryId, String deviceId, String config,
+      Long version) {
     try {
       DeviceManagerClient deviceManagerClient = getDeviceManagerClient();
       ByteString binaryData = new ByteString(encodeBase64(config));
@@ -222,7 +240,7 @@ public class ClearBladeIotAccessProvider extends IotAccessBase {
               .setBinaryData(binaryData).setVersionToUpdate(updateVersion).build();
       DeviceConfig response = deviceManagerClient.modifyCloudToDeviceConfig(request);
       debug("Modified %s/%s config version %s", registryId, deviceId, response.getVersion());
-      return config;
+      return new SimpleEntry<>(ifNotNullGet(response.getVersion(), Long::parseLong), config);
     } catch (Exception e) {
       throw new RuntimeException(
           format("While modifying device config %s/%s", registryId, deviceId), e);
@@ -236,10 +254,10 @@ public class ClearBladeIotAccessProvider extends IotAccessBase {
     Set<String> deviceIds = cloudModel.device_ids.keySet();
     reply.num_id = deviceIds.size() > 0 ? EMPTY_RETURN_RECEIPT : null;
     reply.operation = cloudModel.operation;
-    deviceIds.forEach(id -> {
+    String location = getRegistryLocation(registryId);
+    RegistryName parent = RegistryName.of(projectId, location, registryId);
+    joinAll(forEachParallel(deviceIds, id -> {
       try {
-        String location = getRegistryLocation(registryId);
-        RegistryName parent = RegistryName.of(projectId, location, registryId);
         BindDeviceToGatewayRequest request =
             BindDeviceToGatewayRequest.Builder.newBuilder()
                 .setParent(parent.getRegistryFullName())
@@ -252,7 +270,7 @@ public class ClearBladeIotAccessProvider extends IotAccessBase {
       } catch (Exception e) {
         throw new RuntimeException(format("While binding %s to gateway %s", id, gatewayId), e);
       }
-    });
+    }));
     return reply;
   }
 
@@ -328,28 +346,75 @@ public class ClearBladeIotAccessProvider extends IotAccessBase {
 
   @NotNull
   private HashMap<String, CloudModel> fetchDevices(String deviceRegistryId, String gatewayId) {
+    HashMap<String, CloudModel> collect = new HashMap<>();
+    streamDevices(deviceRegistryId, gatewayId, collect::putAll);
+    return collect;
+  }
+
+  /**
+   * List the devices in a registry (or bound to a gateway), passing each converted page to the
+   * consumer as it arrives. The next page is fetched in the background while the current one is
+   * being converted and consumed, so a large listing is bound by the RPC latency alone.
+   */
+  private void streamDevices(String deviceRegistryId, String gatewayId,
+      Consumer<Map<String, CloudModel>> pageConsumer) {
     String location = getRegistryLocation(deviceRegistryId);
     DeviceManagerClient deviceManagerClient = getDeviceManagerClient();
     GatewayListOptions gatewayListOptions = ifNotNullGet(gatewayId, this::getGatewayListOptions);
     String registryFullName =
         RegistryName.of(projectId, location, deviceRegistryId).getRegistryFullName();
-    String pageToken = null;
-    HashMap<String, CloudModel> collect = new HashMap<>();
-    do {
-      DevicesListRequest request = DevicesListRequest.Builder.newBuilder().setParent(
-              registryFullName)
-          .setGatewayListOptions(gatewayListOptions)
-          .setPageToken(pageToken)
-          .build();
-      DevicesListResponse response = deviceManagerClient.listDevices(request);
-      requireNonNull(response, "DeviceRegistriesList fetch failed");
-      Map<String, CloudModel> responseMap =
+    Function<String, CompletableFuture<DevicesListResponse>> pageFetcher =
+        pageToken -> CompletableFuture.supplyAsync(() -> {
+          DevicesListRequest request = DevicesListRequest.Builder.newBuilder()
+              .setParent(registryFullName)
+              .setGatewayListOptions(gatewayListOptions)
+              .setPageToken(pageToken)
+              .build();
+          return requireNonNull(deviceManagerClient.listDevices(request),
+              "DeviceRegistriesList fetch failed");
+        }, pagePrefetcher);
+    CompletableFuture<DevicesListResponse> pending = pageFetcher.apply(null);
+    int pages = 0;
+    while (pending != null) {
+      DevicesListResponse response = joinPage(pending);
+      String nextPageToken = response.getNextPageToken();
+      pending = isNullOrEmpty(nextPageToken) ? null : pageFetcher.apply(nextPageToken);
+      pageConsumer.accept(
           response.getDevicesList().stream().map(ClearBladeIotAccessProvider::convertToEntry)
-              .collect(Collectors.toMap(Entry::getKey, Entry::getValue));
-      collect.putAll(responseMap);
-      pageToken = response.getNextPageToken();
-    } while (pageToken != null);
-    return collect;
+              .collect(Collectors.toMap(Entry::getKey, Entry::getValue, GeneralUtils::mapReplace,
+                  HashMap::new)));
+      pages++;
+    }
+    debug("Listed %s devices in %d pages", registryFullName, pages);
+  }
+
+  private DevicesListResponse joinPage(CompletableFuture<DevicesListResponse> pending) {
+    try {
+      return pending.join();
+    } catch (CompletionException e) {
+      throw new RuntimeException("While fetching device list page", e.getCause());
+    }
+  }
+
+  /**
+   * Start an action for each id, running at most rpc_parallelism of them at a time (across all
+   * callers). The returned futures should be passed to joinAll to wait for completion.
+   */
+  private List<CompletableFuture<Void>> forEachParallel(Collection<String> ids,
+      Consumer<String> action) {
+    return ids.stream().map(id -> CompletableFuture.runAsync(() -> action.accept(id), rpcExecutor))
+        .collect(Collectors.toList());
+  }
+
+  /**
+   * Wait for all the given actions to complete, then throw the first failure (if any).
+   */
+  private void joinAll(List<CompletableFuture<Void>> futures) {
+    try {
+      CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+    } catch (CompletionException e) {
+      throw e.getCause() instanceof RuntimeException cause ? cause : e;
+    }
   }
 
   private String getDeviceName(String registryId, String deviceId) {
@@ -372,29 +437,6 @@ public class ClearBladeIotAccessProvider extends IotAccessBase {
     return RegistryName.of(projectId, getRegistryLocation(registryId), registryId).toString();
   }
 
-  @NotNull
-  private Entry<String, HashMap<String, CloudModel>> listDevicesPage(String deviceRegistryId,
-      String gatewayId, String pageToken) {
-    String location = getRegistryLocation(deviceRegistryId);
-    DeviceManagerClient deviceManagerClient = getDeviceManagerClient();
-    GatewayListOptions gatewayListOptions =
-        ifNotNullGet(gatewayId, this::getGatewayListOptions);
-    String registryFullName =
-        RegistryName.of(projectId, location, deviceRegistryId).getRegistryFullName();
-    DevicesListRequest request = DevicesListRequest.Builder.newBuilder().setParent(
-            registryFullName)
-        .setGatewayListOptions(gatewayListOptions)
-        .setPageToken(pageToken)
-        .build();
-    DevicesListResponse response = deviceManagerClient.listDevices(request);
-    requireNonNull(response, "DeviceRegistriesList fetch failed");
-    HashMap<String, CloudModel> devices =
-        response.getDevicesList().stream().map(ClearBladeIotAccessProvider::convertToEntry)
-            .collect(Collectors.toMap(Entry::getKey, Entry::getValue, GeneralUtils::mapReplace,
-                HashMap::new));
-    return new SimpleEntry<>(response.getNextPageToken(), devices);
-  }
-
   private CloudModel listRegistryDevices(String deviceRegistryId, String gatewayId) {
     try {
       CloudModel cloudModel = new CloudModel();
@@ -521,15 +563,20 @@ public class ClearBladeIotAccessProvider extends IotAccessBase {
     }
   }
 
+  /**
+   * Unbind all the devices from a gateway. Unbinding for each page of bound devices starts as soon
+   * as the page is listed, rather than waiting for the whole listing.
+   */
   private void unbindGatewayDevices(String registryId, Device device) {
     String gatewayId = device.toBuilder().getId();
-    CloudModel cloudModel = listRegistryDevices(registryId, gatewayId);
-    if (!cloudModel.device_ids.isEmpty()) {
-      debug(format("Unbinding from %s/%s: %s", registryId, gatewayId,
-          CSV_JOINER.join(cloudModel.device_ids.keySet())));
-      ifNotNullThen(cloudModel.device_ids, ids -> ids.keySet()
-          .forEach(id -> unbindDevice(registryId, gatewayId, id)));
-    }
+    List<CompletableFuture<Void>> unbinds = new ArrayList<>();
+    streamDevices(registryId, gatewayId, page -> {
+      ifTrueThen(!page.isEmpty(), () -> debug(format("Unbinding from %s/%s: %s", registryId,
+          gatewayId, CSV_JOINER.join(page.keySet()))));
+      unbinds.addAll(forEachParallel(page.keySet(),
+          id -> unbindDevice(registryId, gatewayId, id)));
+    });
+    joinAll(unbinds);
   }
 
   private CloudModel updateDevice(String registryId, Device device) {
@@ -551,6 +598,13 @@ public class ClearBladeIotAccessProvider extends IotAccessBase {
     }
   }
 
+  @Override
+  public void shutdown() {
+    rpcExecutor.shutdown();
+    pagePrefetcher.shutdown();
+    super.shutdown();
+  }
+
   @Override
   public void activate() {
     super.activate();
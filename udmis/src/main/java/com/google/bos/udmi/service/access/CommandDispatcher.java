@@ -0,0 +1,210 @@
+package com.google.bos.udmi.service.access;
+
+import static java.lang.String.format;
+
+import com.google.udmi.util.LatencyHistogram;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+import udmi.schema.Envelope;
+import udmi.schema.Envelope.SubFolder;
+
+/**
+ * Asynchronous dispatcher for device commands. Commands are queued per target (registry/device),
+ * so the commands for one target are always sent in order, while different targets are sent in
+ * parallel by a bounded pool of workers. A worker sends a batch of queued commands for a target
+ * back-to-back, and then yields to other targets. When a target's queue is full, new commands for
+ * it are dropped (and counted) rather than blocking the caller. With a parallelism of zero, or
+ * after shutdown, commands are sent synchronously by the caller.
+ */
+public class CommandDispatcher {
+
+  static final int BATCH_SIZE = 32;
+  private static final long SHUTDOWN_TIMEOUT_SEC = 10;
+
+  private final Predicate<Command> sender;
+  private final ExecutorService executor;
+  private final int capacity;
+  private final Map<String, Target> targets = new ConcurrentHashMap<>();
+  private final Map<String, CommandStats> stats = new ConcurrentHashMap<>();
+
+  /**
+   * Create a dispatcher that sends commands with the given sender, which should return false if a
+   * command was deliberately dropped, or throw an exception if it could not be sent.
+   */
+  CommandDispatcher(Predicate<Command> sender, int parallelism, int capacity) {
+    this.sender = sender;
+    this.capacity = capacity;
+    executor = parallelism > 0 ? Executors.newFixedThreadPool(parallelism) : null;
+  }
+
+  /**
+   * Queue a command for sending.
+   */
+  void submit(Command command) {
+    Target target = targets.computeIfAbsent(command.getKey(), this::newTarget);
+    if (executor == null || executor.isShutdown()) {
+      deliver(target, command);
+      return;
+    }
+    if (target.stats.queued.incrementAndGet() > capacity) {
+      target.stats.queued.decrementAndGet();
+      target.stats.dropped.increment();
+      return;
+    }
+    target.commands.add(command);
+    schedule(target);
+  }
+
+  /**
+   * Stop accepting commands for asynchronous sending, and wait for those already queued to be sent.
+   */
+  void shutdown() {
+    if (executor == null) {
+      return;
+    }
+    executor.shutdown();
+    try {
+      executor.awaitTermination(SHUTDOWN_TIMEOUT_SEC, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      throw new RuntimeException("While waiting for command dispatch shutdown", e);
+    }
+    // Anything that was queued after the workers were done (racing with shutdown) is sent inline.
+    targets.values().forEach(this::drainAll);
+  }
+
+  Map<String, CommandStats> getStats() {
+    return Collections.unmodifiableMap(stats);
+  }
+
+  private Target newTarget(String key) {
+    return new Target(stats.computeIfAbsent(key, k -> new CommandStats()));
+  }
+
+  private void schedule(Target target) {
+    if (target.scheduled.compareAndSet(false, true)) {
+      try {
+        executor.execute(() -> drain(target));
+      } catch (RejectedExecutionException e) {
+        target.scheduled.set(false);
+        drainAll(target);
+      }
+    }
+  }
+
+  private void drain(Target target) {
+    try {
+      for (int i = 0; i < BATCH_SIZE; i++) {
+        Command command = target.commands.poll();
+        if (command == null) {
+          break;
+        }
+        target.stats.queued.decrementAndGet();
+        deliver(target, command);
+      }
+    } finally {
+      target.scheduled.set(false);
+      if (!target.commands.isEmpty()) {
+        schedule(target);
+      }
+    }
+  }
+
+  private void drainAll(Target target) {
+    Command command;
+    while ((command = target.commands.poll()) != null) {
+      target.stats.queued.decrementAndGet();
+      deliver(target, command);
+    }
+  }
+
+  private void deliver(Target target, Command command) {
+    try {
+      if (sender.test(command)) {
+        target.stats.record(command.queuedNanos, true);
+      } else {
+        target.stats.dropped.increment();
+      }
+    } catch (Exception e) {
+      // The sender is responsible for reporting the failure, so just count it here.
+      target.stats.record(command.queuedNanos, false);
+    }
+  }
+
+  /**
+   * A command to send to a device, along with the envelope of the wrapped message (if any), so
+   * that it doesn't have to be parsed out of the message for logging.
+   */
+  record Command(String registryId, String deviceId, SubFolder folder, String message,
+      Envelope metadata, long queuedNanos) {
+
+    String getKey() {
+      return registryId + "/" + deviceId;
+    }
+  }
+
+  private static class Target {
+
+    final Queue<Command> commands = new ConcurrentLinkedQueue<>();
+    final AtomicBoolean scheduled = new AtomicBoolean();
+    final CommandStats stats;
+
+    Target(CommandStats stats) {
+      this.stats = stats;
+    }
+  }
+
+  /**
+   * Running statistics for the commands sent to one target. Latency is measured from when the
+   * command was submitted to when it was sent, so includes any time spent queued.
+   */
+  public static class CommandStats {
+
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    void record(long queuedNanos, boolean success) {
+      latency.recordSince(queuedNanos);
+      (success ? sent : errors).increment();
+    }
+
+    public long getSent() {
+      return sent.sum();
+    }
+
+    public long getErrors() {
+      return errors.sum();
+    }
+
+    public long getDropped() {
+      return dropped.sum();
+    }
+
+    public int getQueued() {
+      return queued.get();
+    }
+
+    public LatencyHistogram getLatency() {
+      return latency;
+    }
+
+    @Override
+    public String toString() {
+      return format("sent=%d errors=%d dropped=%d queued=%d %s", getSent(), getErrors(),
+          getDropped(), getQueued(), latency);
+    }
+  }
+}
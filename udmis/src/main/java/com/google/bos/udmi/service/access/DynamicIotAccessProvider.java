@@ -1,6 +1,7 @@
 package com.google.bos.udmi.service.access;
 
 import static com.google.bos.udmi.service.pod.UdmiServicePod.getComponent;
+import static com.google.udmi.util.GeneralUtils.ifNotNullGet;
 import static com.google.udmi.util.GeneralUtils.ifTrueThen;
 import static com.google.udmi.util.GeneralUtils.sortedMapCollector;
 import static com.google.udmi.util.JsonUtil.getTimestamp;
@@ -9,6 +10,8 @@ import static java.util.Objects.requireNonNull;
 import static java.util.Optional.ofNullable;
 
 import com.google.common.collect.ImmutableMap;
+import com.google.udmi.util.RefreshingCache;
+import java.time.Duration;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
@@ -17,7 +20,6 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.TreeMap;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 import udmi.schema.CloudModel;
@@ -30,7 +32,11 @@ import udmi.schema.IotAccess;
 public class DynamicIotAccessProvider extends IotAccessBase {
 
   private static final long INDEX_ORDERING_MULTIPLIER_MS = 10000L;
-  private final Map<String, String> registryProviders = new ConcurrentHashMap<>();
+  private static final Duration AFFINITY_REFRESH_INTERVAL = Duration.ofHours(1);
+  private static final Duration AFFINITY_RETRY_BACKOFF = Duration.ofSeconds(30);
+  private final RefreshingCache<String, String> registryProviders =
+      new RefreshingCache<>(this::determineProvider, AFFINITY_REFRESH_INTERVAL,
+          AFFINITY_RETRY_BACKOFF);
   private final List<String> providerList;
   private final Map<String, IotAccessBase> providers = new HashMap<>();
 
@@ -59,7 +65,8 @@ public class DynamicIotAccessProvider extends IotAccessBase {
   }
 
   @Override
-  protected String updateConfig(String registryId, String deviceId, String config, Long version) {
+  protected Entry<Long, String> updateConfig(String registryId, String deviceId, String config,
+      Long version) {
     throw new RuntimeException("Shouldn't be called for dynamic provider");
   }
 
@@ -73,7 +80,7 @@ public class DynamicIotAccessProvider extends IotAccessBase {
 
   private IotAccessBase getProviderFor(String registryId) {
     IotAccessBase provider =
-        providers.get(registryProviders.computeIfAbsent(registryId, this::determineProvider));
+        ifNotNullGet(registryProviders.get(registryId), providers::get);
     return requireNonNull(
         provider,
         "could not determine provider for " + registryId);
@@ -146,7 +153,8 @@ public class DynamicIotAccessProvider extends IotAccessBase {
   @Override
   public void setProviderAffinity(String registryId, String deviceId, String providerId) {
     if (providerId != null) {
-      String previous = registryProviders.put(registryId, providerId);
+      String previous = registryProviders.getIfPresent(registryId);
+      registryProviders.put(registryId, providerId);
       if (!providerId.equals(previous)) {
         debug(format("Switching registry affinity for %s from %s -> %s", registryId, previous,
             providerId));
@@ -127,16 +127,17 @@ public class GcpIotAccessProvider extends IotAccessBase {
     }
   }
 
-  protected String updateConfig(String registryId, String deviceId, String config, Long version) {
+  protected Entry<Long, String> updateConfig(String registryId, String deviceId, String config,
+      Long version) {
     try {
       String useConfig = ofNullable(config).orElse("");
-      registries.devices().modifyCloudToDeviceConfig(
+      DeviceConfig written = registries.devices().modifyCloudToDeviceConfig(
           getDevicePath(registryId, deviceId),
           new ModifyCloudToDeviceConfigRequest()
               .setVersionToUpdate(version)
               .setBinaryData(Base64.getEncoder().encodeToString(useConfig.getBytes()))
       ).execute();
-      return useConfig;
+      return new SimpleEntry<>(written.getVersion(), useConfig);
     } catch (Exception e) {
       throw new RuntimeException("While modifying device config", e);
     }
@@ -5,27 +5,32 @@ import static com.google.udmi.util.GeneralUtils.ifNotNullGet;
 import static com.google.udmi.util.GeneralUtils.ifNotNullThen;
 import static com.google.udmi.util.JsonUtil.getTimestamp;
 import static com.google.udmi.util.JsonUtil.safeSleep;
-import static com.google.udmi.util.JsonUtil.toMap;
 import static java.lang.String.format;
 import static java.util.Objects.requireNonNull;
 import static java.util.Optional.ofNullable;
 
+import com.google.bos.udmi.service.access.CommandDispatcher.Command;
+import com.google.bos.udmi.service.access.CommandDispatcher.CommandStats;
 import com.google.bos.udmi.service.core.DistributorPipe;
 import com.google.bos.udmi.service.core.ProcessorBase.PreviousParseException;
 import com.google.bos.udmi.service.pod.ContainerBase;
+import com.google.bos.udmi.service.pod.MetricsWriter;
 import com.google.bos.udmi.service.pod.UdmiServicePod;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.ImmutableMap;
+import com.google.udmi.util.LatencyHistogram;
+import com.google.udmi.util.RefreshingCache;
 import java.time.Duration;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
-import java.time.temporal.TemporalAmount;
 import java.util.Arrays;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
-import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -42,12 +47,20 @@ import udmi.schema.UdmiState;
 public abstract class IotAccessBase extends ContainerBase {
 
   public static final int MAX_CONFIG_LENGTH = 65535;
-  public static final TemporalAmount REGION_RETRY_BACKOFF = Duration.ofSeconds(30);
+  public static final Duration REGION_RETRY_BACKOFF = Duration.ofSeconds(30);
+  public static final Duration REGION_REFRESH_INTERVAL = Duration.ofMinutes(10);
+  private static final String REGIONS_KEY = "regions";
   protected static final String EMPTY_JSON = "{}";
   private static final long REGISTRY_COMMAND_BACKOFF_SEC = 60;
   private static final Map<String, Instant> BACKOFF_MAP = new ConcurrentHashMap<>();
   private static final long CONFIG_UPDATE_BACKOFF_MS = 1000;
   private static final int CONFIG_UPDATE_MAX_RETRIES = 10;
+  private static final String CONFIG_CACHE_OPTION = "config_cache";
+  private static final long CONFIG_CACHE_DEFAULT_SIZE = 10000;
+  private static final String COMMAND_PARALLELISM_OPTION = "command_parallelism";
+  private static final int COMMAND_PARALLELISM_DEFAULT = 4;
+  private static final String COMMAND_QUEUE_OPTION = "command_queue";
+  private static final int COMMAND_QUEUE_DEFAULT_SIZE = 1000;
   private static final Map<IotProvider, Class<? extends IotAccessBase>> PROVIDERS = ImmutableMap.of(
       IotProvider.DYNAMIC, DynamicIotAccessProvider.class,
       IotProvider.CLEARBLADE, ClearBladeIotAccessProvider.class,
@@ -56,12 +69,30 @@ public abstract class IotAccessBase extends ContainerBase {
       IotProvider.LOCAL, LocalIotAccessProvider.class
   );
   final Map<String, Object> options;
-  private CompletableFuture<Map<String, String>> registryRegions;
-  private Instant regionRetry = Instant.now();
+  private final Cache<String, Entry<Long, String>> configCache;
+  private final CommandDispatcher commandDispatcher;
+  private final Map<String, LatencyHistogram> rpcLatency = new ConcurrentHashMap<>();
+  private final RefreshingCache<String, Map<String, String>> registryRegions =
+      new RefreshingCache<>(key -> loadRegistryRegions(), REGION_REFRESH_INTERVAL,
+          REGION_RETRY_BACKOFF);
   private DistributorPipe distributor;
 
+  /**
+   * Create a new instance. The size of the device config cache can be set with the config_cache
+   * option, with 0 to disable caching. Commands are sent asynchronously by command_parallelism
+   * workers (0 to send synchronously), with up to command_queue commands queued per device.
+   */
   public IotAccessBase(IotAccess iotAccess) {
     options = parseOptions(iotAccess);
+    long cacheSize = ofNullable(options.get(CONFIG_CACHE_OPTION)).map(Object::toString)
+        .map(Long::parseLong).orElse(CONFIG_CACHE_DEFAULT_SIZE);
+    configCache = CacheBuilder.newBuilder().maximumSize(cacheSize).build();
+    int commandParallelism = ofNullable(options.get(COMMAND_PARALLELISM_OPTION))
+        .map(Object::toString).map(Integer::parseInt).orElse(COMMAND_PARALLELISM_DEFAULT);
+    int commandQueueSize = ofNullable(options.get(COMMAND_QUEUE_OPTION)).map(Object::toString)
+        .map(Integer::parseInt).orElse(COMMAND_QUEUE_DEFAULT_SIZE);
+    commandDispatcher =
+        new CommandDispatcher(this::deliverCommand, commandParallelism, commandQueueSize);
   }
 
   /**
@@ -78,10 +109,10 @@ public abstract class IotAccessBase extends ContainerBase {
   }
 
   private static Instant getBackoff(String registryId, String deviceId) {
-    return BACKOFF_MAP.get(getBackoffKey(registryId, deviceId));
+    return BACKOFF_MAP.get(getDeviceKey(registryId, deviceId));
   }
 
-  private static String getBackoffKey(String registryId, String deviceId) {
+  private static String getDeviceKey(String registryId, String deviceId) {
     return format("%s/%s", registryId, deviceId);
   }
 
@@ -91,11 +122,7 @@ public abstract class IotAccessBase extends ContainerBase {
    * Update the cached registry regions with any incremental updates.
    */
   public void updateRegistryRegions(Map<String, String> regions) {
-    try {
-      registryRegions.get().putAll(regions);
-    } catch (Exception e) {
-      throw new RuntimeException("While updating registry regions", e);
-    }
+    ifNotNullThen(registryRegions.getIfPresent(REGIONS_KEY), current -> current.putAll(regions));
   }
 
   protected Map<String, String> fetchRegistryRegions() {
@@ -117,33 +144,52 @@ public abstract class IotAccessBase extends ContainerBase {
 
   protected abstract Set<String> getRegistriesForRegion(String region);
 
+  /**
+   * Get the region for a registry. Known registries are always served from the cached region map,
+   * which is refreshed in the background. An unknown registry triggers a refresh (shared with any
+   * other callers), unless the map was only just loaded, in which case it fails fast.
+   */
   @NotNull
   protected String getRegistryRegion(String registryId) {
-    String region = ofNullable(getCompletedRegistryRegion(registryId)).orElseGet(
-        () -> populateRegistryRegions(registryId));
+    String region =
+        ifNotNullGet(registryRegions.get(REGIONS_KEY), regions -> regions.get(registryId));
+    if (region == null) {
+      region = ifNotNullGet(populateRegistryRegions(), regions -> regions.get(registryId));
+    }
     return requireNonNull(region, "unknown region for registry " + registryId);
   }
 
   protected abstract boolean isEnabled();
 
-  protected synchronized String populateRegistryRegions(String registryId) {
-    if (regionRetry.isBefore(Instant.now())) {
-      regionRetry = Instant.now().plus(REGION_RETRY_BACKOFF);
-      Map<String, String> previousRegions =
-          ifNotNullGet(registryRegions, regions -> regions.getNow(ImmutableMap.of()));
-      registryRegions = new CompletableFuture<>();
-      registryRegions.complete(fetchRegistryRegions());
-      Map<String, String> currentRegions = registryRegions.getNow(ImmutableMap.of());
-      ifNotNullThen(previousRegions, () -> disseminateDifference(previousRegions, currentRegions));
+  /**
+   * Refresh the registry regions, unless they were refreshed within the retry backoff, and wait for
+   * the result. Only one refresh is ever in progress at a time.
+   */
+  protected Map<String, String> populateRegistryRegions() {
+    return registryRegions.await(REGIONS_KEY,
+        registryRegions.refresh(REGIONS_KEY, REGION_RETRY_BACKOFF));
+  }
+
+  private Map<String, String> loadRegistryRegions() {
+    Map<String, String> previousRegions = registryRegions.getIfPresent(REGIONS_KEY);
+    Map<String, String> fetchedRegions = fetchRegistryRegions();
+    if (fetchedRegions == null) {
+      return null;
     }
-    return getCompletedRegistryRegion(registryId);
+    Map<String, String> currentRegions = new ConcurrentHashMap<>(fetchedRegions);
+    ifNotNullThen(previousRegions, () -> disseminateDifference(previousRegions, currentRegions));
+    return currentRegions;
   }
 
   protected abstract void sendCommandBase(String registryId, String deviceId, SubFolder folder,
       String message);
 
-  protected abstract String updateConfig(String registryId, String deviceId, String config,
-      Long version);
+  /**
+   * Update a device config, if it's still at the given version (null for any). Returns the version
+   * and config that was written, with a null version if it's not known (which disables caching).
+   */
+  protected abstract Entry<Long, String> updateConfig(String registryId, String deviceId,
+      String config, Long version);
 
   private String checkedUpdate(String registryId, String deviceId, Long version, String updated) {
     int configLength = updated.length();
@@ -151,7 +197,15 @@ public abstract class IotAccessBase extends ContainerBase {
       throw new AbortLoopException(
           format("Config length %d exceeds maximum %d", configLength, MAX_CONFIG_LENGTH));
     }
-    return updateConfig(registryId, deviceId, updated, version);
+    Entry<Long, String> written =
+        timedRpc("update_config", () -> updateConfig(registryId, deviceId, updated, version));
+    String configKey = getDeviceKey(registryId, deviceId);
+    if (ifNotNullGet(written, Entry::getKey) == null) {
+      configCache.invalidate(configKey);
+    } else {
+      configCache.put(configKey, written);
+    }
+    return ifNotNullGet(written, Entry::getValue);
   }
 
   private void disseminateDifference(Map<String, String> previousRegions,
@@ -165,21 +219,13 @@ public abstract class IotAccessBase extends ContainerBase {
     distributor.distribute(envelope, udmiState);
   }
 
-  private String getCompletedRegistryRegion(String registryId) {
-    try {
-      return ifNotNullGet(registryRegions.get(), regions -> regions.get(registryId));
-    } catch (Exception e) {
-      throw new RuntimeException("While getting region for registry " + registryId, e);
-    }
-  }
-
   private boolean registryBackoffCheck(String registryId, String deviceId) {
     return ifNotNullGet(getBackoff(registryId, deviceId), end -> Instant.now().isAfter(end),
         true);
   }
 
   private void registryBackoffClear(String registryId, String deviceId) {
-    String backoffKey = getBackoffKey(registryId, deviceId);
+    String backoffKey = getDeviceKey(registryId, deviceId);
     ifNotNullThen(BACKOFF_MAP.remove(backoffKey),
         () -> debug("Released registry backoff for " + backoffKey));
   }
@@ -189,7 +235,7 @@ public abstract class IotAccessBase extends ContainerBase {
       return null;
     }
     Instant until = Instant.now().plus(REGISTRY_COMMAND_BACKOFF_SEC, ChronoUnit.SECONDS);
-    BACKOFF_MAP.put(getBackoffKey(registryId, deviceId), until);
+    BACKOFF_MAP.put(getDeviceKey(registryId, deviceId), until);
     return until;
   }
 
@@ -220,7 +266,7 @@ public abstract class IotAccessBase extends ContainerBase {
     super.activate();
     distributor = UdmiServicePod.maybeGetComponent((String) options.get("distributor"));
     if (isEnabled()) {
-      populateRegistryRegions(reflectRegistry);
+      registryRegions.get(REGIONS_KEY);
     }
   }
 
@@ -234,20 +280,33 @@ public abstract class IotAccessBase extends ContainerBase {
       CloudModel cloudModel);
 
   /**
-   * Modify a device configuration. Return the full/complete update that was actually written.
+   * Modify a device configuration. Return the full/complete update that was actually written. The
+   * last config written for a device is cached, so normally this only needs the update call. If
+   * the cached version is stale (some other writer got there first), then the versioned update
+   * fails, and the config is fetched again before retrying.
    */
   public String modifyConfig(String registryId, String deviceId, Function<String, String> munger) {
     int retryCount = CONFIG_UPDATE_MAX_RETRIES;
+    String configKey = getDeviceKey(registryId, deviceId);
     try {
       while (true) {
+        Entry<Long, String> cached = configCache.getIfPresent(configKey);
         try {
-          Entry<Long, String> configPair = fetchConfig(registryId, deviceId);
+          Entry<Long, String> configPair =
+              ofNullable(cached).orElseGet(
+                  () -> timedRpc("fetch_config", () -> fetchConfig(registryId, deviceId)));
           Long version = ifNotNullGet(configPair, Entry::getKey);
           return ifNotNullGet(safeMunge(munger, configPair),
               updated -> checkedUpdate(registryId, deviceId, version, updated));
         } catch (AbortLoopException e) {
           throw e;
         } catch (Exception e) {
+          configCache.invalidate(configKey);
+          if (cached != null) {
+            debug("Retrying with fetched config for %s/%s: %s", registryId, deviceId,
+                friendlyStackTrace(e));
+            continue;
+          }
           if (retryCount <= 0) {
             error("Failed modifying config for %s/%s: %s", registryId, deviceId,
                 friendlyStackTrace(e));
@@ -269,31 +328,81 @@ public abstract class IotAccessBase extends ContainerBase {
   }
 
   /**
-   * Send a command to a device.
+   * Send a command to a device. The command is queued and sent asynchronously, in order with any
+   * other commands to the same device. The metadata is the envelope of the message wrapped in the
+   * command (if any), and is only used for logging.
    */
   public final void sendCommand(String registryId, String deviceId, SubFolder folder,
-      String message) {
-    String backoffKey = getBackoffKey(registryId, deviceId);
-    if (registryBackoffCheck(registryId, deviceId)) {
-      try {
-        Map<String, Object> messageMap = toMap(message);
-        Object payloadSubType = messageMap.get("subType");
-        Object payloadSubFolder = messageMap.get("subFolder");
-        Object transactionId = messageMap.get("transactionId");
-        debug("Sending command containing %s/%s to %s/%s/%s %s", payloadSubType, payloadSubFolder,
-            registryId, deviceId, folder, transactionId);
-        requireNonNull(registryId, "registry not defined");
-        requireNonNull(deviceId, "device not defined");
-        sendCommandBase(registryId, deviceId, folder, message);
-      } catch (Exception e) {
-        error("Exception sending command to %s: %s", backoffKey, friendlyStackTrace(e));
-        ifNotNullThen(registryBackoffInhibit(registryId, deviceId),
-            until -> debug("Setting registry backoff for %s until %s",
-                backoffKey, getTimestamp(until)));
-      }
-    } else {
+      String message, Envelope metadata) {
+    commandDispatcher.submit(
+        new Command(registryId, deviceId, folder, message, metadata, System.nanoTime()));
+  }
+
+  /**
+   * Get the command statistics, keyed by registry/device.
+   */
+  public Map<String, CommandStats> getCommandStats() {
+    return commandDispatcher.getStats();
+  }
+
+  private boolean deliverCommand(Command command) {
+    String registryId = command.registryId();
+    String deviceId = command.deviceId();
+    String backoffKey = getDeviceKey(registryId, deviceId);
+    if (!registryBackoffCheck(registryId, deviceId)) {
       debug("Dropping message because registry backoff for %s", backoffKey);
+      return false;
     }
+    try {
+      Envelope metadata = command.metadata();
+      debug("Sending command containing %s/%s to %s/%s/%s %s",
+          ifNotNullGet(metadata, m -> m.subType), ifNotNullGet(metadata, m -> m.subFolder),
+          registryId, deviceId, command.folder(), ifNotNullGet(metadata, m -> m.transactionId));
+      requireNonNull(registryId, "registry not defined");
+      requireNonNull(deviceId, "device not defined");
+      timedRpc("send_command", () -> {
+        sendCommandBase(registryId, deviceId, command.folder(), command.message());
+        return null;
+      });
+      return true;
+    } catch (Exception e) {
+      error("Exception sending command to %s: %s", backoffKey, friendlyStackTrace(e));
+      ifNotNullThen(registryBackoffInhibit(registryId, deviceId),
+          until -> debug("Setting registry backoff for %s until %s",
+              backoffKey, getTimestamp(until)));
+      throw e;
+    }
+  }
+
+  private <T> T timedRpc(String operation, Supplier<T> rpc) {
+    long startNanos = System.nanoTime();
+    try {
+      return rpc.get();
+    } finally {
+      rpcLatency.computeIfAbsent(operation, key -> new LatencyHistogram()).recordSince(startNanos);
+    }
+  }
+
+  @Override
+  public void shutdown() {
+    commandDispatcher.shutdown();
+    super.shutdown();
+  }
+
+  @Override
+  public void writeMetrics(MetricsWriter metrics) {
+    rpcLatency.forEach((operation, latency) -> metrics.latency("iot_rpc_seconds",
+        "Latency of IoT access provider calls", latency, "operation", operation));
+    getCommandStats().forEach((target, stats) -> {
+      metrics.latency("iot_command_seconds", "Time from command submission until it was sent",
+          stats.getLatency(), "target", target);
+      metrics.counter("iot_command_errors_total", "Commands that failed to send",
+          stats.getErrors(), "target", target);
+      metrics.counter("iot_command_dropped_total", "Commands dropped (queue full or backoff)",
+          stats.getDropped(), "target", target);
+      metrics.gauge("iot_command_queued", "Commands waiting to be sent", stats.getQueued(),
+          "target", target);
+    });
   }
 
   public void setProviderAffinity(String registryId, String deviceId, String providerId) {
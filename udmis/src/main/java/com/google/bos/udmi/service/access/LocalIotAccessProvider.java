@@ -39,14 +39,16 @@ public class LocalIotAccessProvider extends IotAccessBase {
   }
 
   @Override
-  protected String updateConfig(String registryId, String deviceId, String config, Long version) {
+  protected Entry<Long, String> updateConfig(String registryId, String deviceId, String config,
+      Long version) {
     Entry<Long, String> entry = DEVICE_CONFIGS.get(deviceId);
     if (version != null && !entry.getKey().equals(version)) {
       throw new IllegalStateException("Config version mismatch");
     }
     Long previous = Optional.ofNullable(entry).orElse(new SimpleEntry<>(0L, "")).getKey();
-    DEVICE_CONFIGS.put(deviceId, new SimpleEntry<>(previous + 1, config));
-    return config;
+    SimpleEntry<Long, String> updated = new SimpleEntry<>(previous + 1, config);
+    DEVICE_CONFIGS.put(deviceId, updated);
+    return updated;
   }
 
   @Override
@@ -108,6 +110,7 @@ public class LocalIotAccessProvider extends IotAccessBase {
   @Override
   public void shutdown() {
     debug("shutdown");
+    super.shutdown();
   }
 
   @Override
@@ -69,9 +69,11 @@ public class PubSubIotAccessProvider extends IotAccessBase {
   }
 
   @Override
-  protected String updateConfig(String registryId, String deviceId, String config, Long version) {
+  protected Entry<Long, String> updateConfig(String registryId, String deviceId, String config,
+      Long version) {
     publish(registryId, deviceId, CONFIG_CATEGORY, null, config);
-    return config;
+    // No version since config is not sticky, which also means it's not cached.
+    return new SimpleEntry<>(null, config);
   }
 
   private Publisher getPublisher(String topicName) {
@@ -1,6 +1,7 @@
 package com.google.bos.udmi.service.core;
 
 import com.google.bos.udmi.service.messaging.MessagePipe;
+import com.google.bos.udmi.service.pod.MetricsWriter;
 import udmi.schema.EndpointConfiguration;
 
 /**
@@ -30,4 +31,10 @@ public class BridgeProcessor extends ProcessorBase {
     pipeA.shutdown();
     pipeB.shutdown();
   }
+
+  @Override
+  public void writeMetrics(MetricsWriter metrics) {
+    pipeA.writeMetrics(metrics.withLabels("pipe", "from"));
+    pipeB.writeMetrics(metrics.withLabels("pipe", "to"));
+  }
 }
@@ -0,0 +1,162 @@
+package com.google.bos.udmi.service.core;
+
+import static com.google.udmi.util.GeneralUtils.friendlyStackTrace;
+import static com.google.udmi.util.GeneralUtils.ifNotNullThen;
+import static java.lang.String.format;
+
+import com.google.bos.udmi.service.access.IotAccessBase;
+import com.google.bos.udmi.service.core.ProcessorBase.PreviousParseException;
+import com.google.bos.udmi.service.messaging.impl.MessageBase;
+import com.google.bos.udmi.service.pod.ContainerBase;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Combines device config modifications that arrive within a short window. All the modifications
+ * pending for a device are applied (in order) in a single fetch-munge-update cycle, so there's
+ * only one config write (and one version bump) for the lot. Each caller is then completed with the
+ * config that was actually written, or null if its own modification made no change. Flushes for
+ * any one device are serialized: changes that arrive while a write is in flight are held until it
+ * finishes, and then flushed in their own window.
+ */
+public class ConfigCoalescer extends ContainerBase {
+
+  private static final long AWAIT_TERMINATION_SEC = 10;
+
+  private final IotAccessBase iotAccess;
+  private final long windowMs;
+  private final ScheduledExecutorService scheduler =
+      Executors.newScheduledThreadPool(MessageBase.EXECUTION_THREADS);
+  private final Map<String, List<PendingChange>> pendingChanges = new HashMap<>();
+  private final Set<String> inFlight = new HashSet<>();
+
+  /**
+   * Create a coalescer that writes through the given access provider.
+   */
+  public ConfigCoalescer(IotAccessBase iotAccess, long windowMs) {
+    this.iotAccess = iotAccess;
+    this.windowMs = windowMs;
+  }
+
+  /**
+   * Queue up a device config modification, to be written at the end of the device's window.
+   */
+  public CompletableFuture<String> modifyConfig(String registryId, String deviceId,
+      Function<String, String> munger) {
+    String deviceKey = format("%s/%s", registryId, deviceId);
+    PendingChange change = new PendingChange(munger);
+    synchronized (pendingChanges) {
+      List<PendingChange> changes = pendingChanges.get(deviceKey);
+      if (changes != null) {
+        changes.add(change);
+        return change.future;
+      }
+      pendingChanges.put(deviceKey, new ArrayList<>(List.of(change)));
+      if (inFlight.contains(deviceKey)) {
+        // Will be scheduled when the in-flight write completes.
+        return change.future;
+      }
+    }
+    scheduleFlush(registryId, deviceId, deviceKey);
+    return change.future;
+  }
+
+  private void scheduleFlush(String registryId, String deviceId, String deviceKey) {
+    try {
+      scheduler.schedule(() -> flushChanges(registryId, deviceId, deviceKey), windowMs,
+          TimeUnit.MILLISECONDS);
+    } catch (RejectedExecutionException e) {
+      final List<PendingChange> changes;
+      synchronized (pendingChanges) {
+        changes = pendingChanges.remove(deviceKey);
+      }
+      ifNotNullThen(changes,
+          list -> list.forEach(change -> change.future.completeExceptionally(e)));
+    }
+  }
+
+  private void flushChanges(String registryId, String deviceId, String deviceKey) {
+    grabExecutionContext();
+    final List<PendingChange> changes;
+    synchronized (pendingChanges) {
+      changes = pendingChanges.remove(deviceKey);
+      inFlight.add(deviceKey);
+    }
+    debug("Coalesced %d config changes for %s", changes.size(), deviceKey);
+    try {
+      String written = iotAccess.modifyConfig(registryId, deviceId,
+          previous -> applyChanges(changes, previous));
+      changes.forEach(change -> change.future.complete(
+          written == null || change.result == null ? null : written));
+    } catch (Exception e) {
+      changes.forEach(change -> change.future.completeExceptionally(e));
+    } finally {
+      final boolean more;
+      synchronized (pendingChanges) {
+        inFlight.remove(deviceKey);
+        more = pendingChanges.containsKey(deviceKey);
+      }
+      if (more) {
+        scheduleFlush(registryId, deviceId, deviceKey);
+      }
+    }
+  }
+
+  /**
+   * Apply all the pending changes in turn, remembering which ones actually made a change. This
+   * might be called multiple times if the underlying update needs to be retried.
+   */
+  private String applyChanges(List<PendingChange> changes, String previous) {
+    String config = previous;
+    boolean modified = false;
+    for (PendingChange change : changes) {
+      try {
+        change.result = change.munger.apply(config);
+      } catch (PreviousParseException e) {
+        throw e;
+      } catch (Exception e) {
+        error("Exception munging config: " + friendlyStackTrace(e));
+        change.result = null;
+      }
+      if (change.result != null) {
+        config = change.result;
+        modified = true;
+      }
+    }
+    return modified ? config : null;
+  }
+
+  @Override
+  public void shutdown() {
+    try {
+      // Already scheduled flushes are still run after shutdown, so pending changes aren't lost.
+      // Anything that would need a new flush after this point is failed rather than left hanging.
+      scheduler.shutdown();
+      scheduler.awaitTermination(AWAIT_TERMINATION_SEC, TimeUnit.SECONDS);
+    } catch (Exception e) {
+      throw new RuntimeException("While shutting down config coalescer", e);
+    }
+    super.shutdown();
+  }
+
+  private static class PendingChange {
+
+    final Function<String, String> munger;
+    final CompletableFuture<String> future = new CompletableFuture<>();
+    String result;
+
+    PendingChange(Function<String, String> munger) {
+      this.munger = munger;
+    }
+  }
+}
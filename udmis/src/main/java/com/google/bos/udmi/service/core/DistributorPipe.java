@@ -1,24 +1,55 @@
 package com.google.bos.udmi.service.core;
 
 import static com.google.udmi.util.GeneralUtils.friendlyStackTrace;
+import static com.google.udmi.util.GeneralUtils.ifNotNullThen;
+import static com.google.udmi.util.JsonUtil.convertTo;
+import static com.google.udmi.util.JsonUtil.toMap;
 import static java.lang.String.format;
+import static java.util.Optional.ofNullable;
 
+import com.google.bos.udmi.service.messaging.impl.MessageBase.Bundle;
 import com.google.bos.udmi.service.messaging.impl.MessageDispatcherImpl;
 import com.google.bos.udmi.service.pod.ContainerBase;
+import com.google.bos.udmi.service.pod.MetricsWriter;
 import com.google.bos.udmi.service.pod.UdmiServicePod;
-import com.google.udmi.util.GeneralUtils;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import org.jetbrains.annotations.TestOnly;
 import udmi.schema.EndpointConfiguration;
 import udmi.schema.Envelope;
 import udmi.schema.UdmiState;
 
 /**
- * Simple distributor that uses an underlying message pipe.
+ * Simple distributor that uses an underlying message pipe. With a shard heartbeat configured, it
+ * also coordinates sharded processing across pods: each pod announces itself as a shard over the
+ * distributor, and every pod keeps the same consistent-hash ring of live shards, so they all agree
+ * on which one owns each registry/device. Messages received for a device owned by another shard
+ * are forwarded to it, and ownership rebalances as shards join and leave.
  */
 public class DistributorPipe extends ContainerBase {
 
+  private static final long SHARD_EXPIRY_HEARTBEATS = 3;
+  private static final String SHARD_ACTION_KEY = "action";
+  private static final String SHARD_TARGET_KEY = "target";
+
   private final MessageDispatcherImpl dispatcher;
-  private final String clientId = format("distributor-%08x", System.currentTimeMillis());
+  private final String clientId =
+      format("distributor-%08x", ThreadLocalRandom.current().nextInt());
   private final ReflectProcessor reflectProcessor;
+  private final long heartbeatMs;
+  private final ShardRing shardRing = new ShardRing();
+  private final Map<String, Long> shardSeen = new ConcurrentHashMap<>();
+  private final Map<String, Consumer<Bundle>> shardTargets = new ConcurrentHashMap<>();
+  private final LongAdder forwardedOut = new LongAdder();
+  private final LongAdder forwardedIn = new LongAdder();
+  private final LongAdder rebalances = new LongAdder();
+  private ScheduledExecutorService heartbeat;
 
   /**
    * Create a new distributor given the endpoint configuration.
@@ -26,8 +57,14 @@ public class DistributorPipe extends ContainerBase {
   public DistributorPipe(EndpointConfiguration config) {
     dispatcher = new MessageDispatcherImpl(config);
     dispatcher.registerHandler(UdmiState.class, this::handleUdmiState);
+    heartbeatMs = TimeUnit.SECONDS.toMillis(ofNullable(config.shard_heartbeat_sec).orElse(0));
+    if (isSharded()) {
+      dispatcher.registerHandler(Object.class, this::handleShardMessage);
+      dispatcher.setBundleFilter(this::isForeignForward);
+      shardRing.add(clientId);
+    }
     debug("Distributing to dispatcher %s as client %s", dispatcher, clientId);
-    reflectProcessor = UdmiServicePod.getComponent(ReflectProcessor.class);
+    reflectProcessor = UdmiServicePod.maybeGetComponent(getName(ReflectProcessor.class));
   }
 
   public static ContainerBase from(EndpointConfiguration config) {
@@ -40,21 +77,135 @@ public class DistributorPipe extends ContainerBase {
       return;
     }
     debug("Received UdmiState from %s %s", envelope.deviceId, envelope.transactionId);
-    reflectProcessor.updateAwareness(envelope, message);
+    ifNotNullThen(reflectProcessor, processor -> processor.updateAwareness(envelope, message));
+  }
+
+  /**
+   * Check for a forward addressed to some other shard. The distributor is a broadcast channel, so
+   * every shard receives every forward, and this drops the ones for other shards before they're
+   * decoded and dispatched.
+   */
+  private boolean isForeignForward(Bundle bundle) {
+    return bundle.message instanceof Map<?, ?> map
+        && ShardAction.FORWARD.name().equals(map.get(SHARD_ACTION_KEY))
+        && !clientId.equals(map.get(SHARD_TARGET_KEY));
+  }
+
+  private void handleShardMessage(Object defaultedMessage) {
+    ShardMessage message = convertTo(ShardMessage.class, defaultedMessage);
+    if (message.action == null || message.shard == null || clientId.equals(message.shard)) {
+      return;
+    }
+    switch (message.action) {
+      case JOIN -> shardJoined(message.shard);
+      case LEAVE -> shardLeft(message.shard);
+      case FORWARD -> receiveForward(message);
+      default -> throw new IllegalStateException("Unknown shard action " + message.action);
+    }
+  }
+
+  private void shardJoined(String shard) {
+    shardSeen.put(shard, System.currentTimeMillis());
+    if (shardRing.add(shard)) {
+      rebalances.increment();
+      info("Shard %s joined, now %d shards", shard, shardRing.getMembers().size());
+      // Announce right away, so the new shard learns of this one without waiting a heartbeat.
+      announce(ShardAction.JOIN);
+    }
+  }
+
+  private void shardLeft(String shard) {
+    shardSeen.remove(shard);
+    if (shardRing.remove(shard)) {
+      rebalances.increment();
+      info("Shard %s left, now %d shards", shard, shardRing.getMembers().size());
+    }
+  }
+
+  /**
+   * Handle a message forwarded by another shard, by queueing it for the target flow's own message
+   * loops. It's processed even if this shard no longer thinks it owns the device (the ring may have
+   * just changed), so messages never bounce around.
+   */
+  private void receiveForward(ShardMessage message) {
+    if (!clientId.equals(message.target)) {
+      return;
+    }
+    Consumer<Bundle> target = shardTargets.get(message.flow);
+    if (target == null) {
+      warn("Dropping forwarded message for unknown flow %s", message.flow);
+      return;
+    }
+    forwardedIn.increment();
+    target.accept(new Bundle(message.envelope, message.message));
+  }
+
+  /**
+   * Announce this shard, and expire any others that haven't been heard from in a while.
+   */
+  private void shardHeartbeat() {
+    try {
+      announce(ShardAction.JOIN);
+      long expiry = System.currentTimeMillis() - heartbeatMs * SHARD_EXPIRY_HEARTBEATS;
+      shardSeen.forEach((shard, seen) -> {
+        if (seen < expiry) {
+          warn("Expiring unresponsive shard %s", shard);
+          shardLeft(shard);
+        }
+      });
+    } catch (Exception e) {
+      error("Shard heartbeat failed: " + friendlyStackTrace(e));
+    }
+  }
+
+  private void announce(ShardAction action) {
+    ShardMessage message = new ShardMessage();
+    message.shard = clientId;
+    message.action = action;
+    publishShardMessage(new Envelope(), message);
+  }
+
+  private void publishShardMessage(Envelope envelope, ShardMessage message) {
+    envelope.gatewayId = clientId;
+    dispatcher.publish(dispatcher.makeMessageBundle(envelope, toMap(message)));
   }
 
   @Override
   public void activate() {
     super.activate();
     dispatcher.activate();
+    if (isSharded()) {
+      info("Sharding as %s with heartbeat %dms", clientId, heartbeatMs);
+      heartbeat = Executors.newSingleThreadScheduledExecutor();
+      heartbeat.scheduleWithFixedDelay(this::shardHeartbeat, 0, heartbeatMs,
+          TimeUnit.MILLISECONDS);
+    }
   }
 
   @Override
   public void shutdown() {
+    if (heartbeat != null) {
+      heartbeat.shutdown();
+      announce(ShardAction.LEAVE);
+    }
     dispatcher.shutdown();
     super.shutdown();
   }
 
+  @Override
+  public void writeMetrics(MetricsWriter metrics) {
+    dispatcher.writeMetrics(metrics);
+    if (isSharded()) {
+      metrics.gauge("shard_members", "Live shards in the consistent-hash ring",
+          shardRing.getMembers().size());
+      metrics.counter("shard_forwarded_total", "Messages forwarded to their owning shard",
+          forwardedOut.sum());
+      metrics.counter("shard_received_total", "Messages forwarded here from other shards",
+          forwardedIn.sum());
+      metrics.counter("shard_rebalances_total", "Shard joins and leaves", rebalances.sum());
+    }
+  }
+
   /**
    * Distribute a message (broadcast).
    */
@@ -69,4 +220,85 @@ public class DistributorPipe extends ContainerBase {
     }
   }
 
+  public boolean isSharded() {
+    return heartbeatMs > 0;
+  }
+
+  /**
+   * Register the consumer for messages forwarded to this shard for the named flow. It's called on
+   * the distributor's message loop, so it should only hand the bundle off (e.g. queue it).
+   */
+  public void registerShardTarget(String flow, Consumer<Bundle> target) {
+    shardTargets.put(flow, target);
+  }
+
+  /**
+   * Forward a received bundle to the shard that owns its device, if that's not this one. Returns
+   * true if the bundle was forwarded, so it should not be processed locally. Bundles without a
+   * device, error bundles, or bundles that fail to forward are always processed locally.
+   */
+  public boolean forwardForeign(String flow, Bundle bundle) {
+    Envelope envelope = bundle.envelope;
+    if (envelope == null || envelope.deviceRegistryId == null || envelope.deviceId == null
+        || bundle.payload != null || bundle.message instanceof Exception) {
+      return false;
+    }
+    String owner = shardRing.ownerOf(envelope.deviceRegistryId + "/" + envelope.deviceId);
+    if (owner == null || owner.equals(clientId)) {
+      return false;
+    }
+    try {
+      ShardMessage message = new ShardMessage();
+      message.shard = clientId;
+      message.action = ShardAction.FORWARD;
+      message.target = owner;
+      message.flow = flow;
+      message.envelope = envelope;
+      message.message = bundle.message;
+      // The distributor envelope keeps the device, so forwards are processed in device order.
+      Envelope forward = new Envelope();
+      forward.deviceRegistryId = envelope.deviceRegistryId;
+      forward.deviceId = envelope.deviceId;
+      forward.transactionId = envelope.transactionId;
+      publishShardMessage(forward, message);
+      forwardedOut.increment();
+      return true;
+    } catch (Exception e) {
+      error("Forward to shard %s failed, processing locally: %s", owner, friendlyStackTrace(e));
+      return false;
+    }
+  }
+
+  @TestOnly
+  String getClientId() {
+    return clientId;
+  }
+
+  @TestOnly
+  ShardRing getShardRing() {
+    return shardRing;
+  }
+
+  /**
+   * Actions for shard coordination messages.
+   */
+  enum ShardAction {
+    JOIN,
+    LEAVE,
+    FORWARD
+  }
+
+  /**
+   * Shard coordination message: a join or leave announcement, or a message forwarded to the shard
+   * that owns its device.
+   */
+  static class ShardMessage {
+
+    public String shard;
+    public ShardAction action;
+    public String target;
+    public String flow;
+    public Envelope envelope;
+    public Object message;
+  }
 }
@@ -36,6 +36,7 @@ import com.google.bos.udmi.service.messaging.impl.MessageBase;
 import com.google.bos.udmi.service.messaging.impl.MessageBase.Bundle;
 import com.google.bos.udmi.service.messaging.impl.MessageBase.BundleException;
 import com.google.bos.udmi.service.pod.ContainerBase;
+import com.google.bos.udmi.service.pod.MetricsWriter;
 import com.google.bos.udmi.service.pod.UdmiServicePod;
 import com.google.common.collect.ImmutableList;
 import com.google.udmi.util.Common;
@@ -45,6 +46,7 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
 import java.util.function.Consumer;
+import java.util.function.Function;
 import org.jetbrains.annotations.TestOnly;
 import udmi.schema.EndpointConfiguration;
 import udmi.schema.Envelope;
@@ -70,6 +72,8 @@ public abstract class ProcessorBase extends ContainerBase {
   );
   protected DistributorPipe distributor;
   String distributorName;
+  long configCoalesceMs;
+  private ConfigCoalescer configCoalescer;
 
   /**
    * Create a new instance of the given target class with the provided configuration.
@@ -79,6 +83,7 @@ public abstract class ProcessorBase extends ContainerBase {
       T object = clazz.getDeclaredConstructor().newInstance();
       object.dispatcher = MessageDispatcher.from(config);
       object.distributorName = config.distributor;
+      object.configCoalesceMs = ofNullable(config.coalesce_ms).orElse(0);
       return object;
     } catch (Exception e) {
       throw new RuntimeException("While instantiating class " + clazz.getName(), e);
@@ -101,6 +106,10 @@ public abstract class ProcessorBase extends ContainerBase {
       return;
     }
     Envelope envelope = getContinuation(e).getEnvelope();
+    reflectException(envelope, e);
+  }
+
+  private void reflectException(Envelope envelope, Throwable e) {
     String message = Common.getExceptionMessage(e);
     String payload = friendlyStackTrace(e);
     error(format("Received message exception: %s", payload));
@@ -113,18 +122,42 @@ public abstract class ProcessorBase extends ContainerBase {
     return null;
   }
 
+  /**
+   * Process a device config change. If coalescing is enabled, then the change is combined with
+   * any others for the same device within the window, and acknowledged once it's been written.
+   */
   protected void processConfigChange(Envelope envelope, Map<String, Object> payload,
       Date newLastStart) {
-    SubFolder subFolder = envelope.subFolder;
     debug(format("Modifying device config %s/%s/%s %s", envelope.deviceRegistryId,
-        envelope.deviceId, subFolder, envelope.transactionId));
+        envelope.deviceId, envelope.subFolder, envelope.transactionId));
+
+    if (configCoalescer == null) {
+      String configUpdate = iotAccess.modifyConfig(envelope.deviceRegistryId,
+          envelope.deviceId, previous -> updateConfig(previous, envelope, payload, newLastStart));
+      acknowledgeConfigChange(envelope, newLastStart, configUpdate);
+      return;
+    }
 
-    String configUpdate = iotAccess.modifyConfig(envelope.deviceRegistryId,
-        envelope.deviceId, previous -> updateConfig(previous, envelope, payload, newLastStart));
+    // The change is processed later, so use a copy in case the original envelope is reused.
+    Envelope useEnvelope = deepCopy(envelope);
+    Function<String, String> munger =
+        previous -> updateConfig(previous, useEnvelope, payload, newLastStart);
+    configCoalescer.modifyConfig(envelope.deviceRegistryId, envelope.deviceId, munger)
+        .whenComplete((configUpdate, e) -> {
+          if (e != null) {
+            reflectException(useEnvelope, e);
+          } else {
+            acknowledgeConfigChange(useEnvelope, newLastStart, configUpdate);
+          }
+        });
+  }
 
+  private void acknowledgeConfigChange(Envelope envelope, Date newLastStart,
+      String configUpdate) {
     if (configUpdate == null) {
       return;
     }
+    SubFolder subFolder = envelope.subFolder;
     Envelope useAttributes = deepCopy(envelope);
     ifNotNullThen(newLastStart, start -> useAttributes.subType = SubType.CONFIG);
     useAttributes.subFolder = UPDATE;
@@ -161,7 +194,7 @@ public abstract class ProcessorBase extends ContainerBase {
     error(format("Reflecting error %s/%s for %s", errorMap.get(SUBTYPE_PROPERTY_KEY),
         errorMap.get(SUBFOLDER_PROPERTY_KEY),
         errorMap.get(DEVICE_ID_KEY)));
-    reflectString(errorMap.get(REGISTRY_ID_PROPERTY_KEY), stringify(errorMap));
+    reflectString(errorMap.get(REGISTRY_ID_PROPERTY_KEY), stringify(errorMap), null);
   }
 
   protected void reflectMessage(Envelope envelope, String message) {
@@ -174,7 +207,9 @@ public abstract class ProcessorBase extends ContainerBase {
     try {
       checkState(envelope.payload == null, "envelope payload is not null");
       envelope.payload = encodeBase64(message);
-      reflectString(deviceRegistryId, stringify(envelope));
+      String commandString = stringify(envelope);
+      envelope.payload = null;
+      reflectString(deviceRegistryId, commandString, commandMetadata(envelope));
     } catch (Exception e) {
       error(format("Message reflection error %s", friendlyStackTrace(e)));
     } finally {
@@ -207,12 +242,24 @@ public abstract class ProcessorBase extends ContainerBase {
         envelopeMap.get(DEVICE_ID_KEY)));
     String deviceRegistryId = envelopeMap.get(REGISTRY_ID_PROPERTY_KEY);
     envelopeMap.put("payload", encodeBase64(bundleException.bundle.payload));
-    reflectString(deviceRegistryId, stringify(envelopeMap));
+    reflectString(deviceRegistryId, stringify(envelopeMap), null);
+  }
+
+  /**
+   * Snapshot the envelope fields logged when the command is delivered, since that happens
+   * asynchronously and the caller is free to reuse the envelope in the meantime.
+   */
+  private static Envelope commandMetadata(Envelope envelope) {
+    Envelope metadata = new Envelope();
+    metadata.subType = envelope.subType;
+    metadata.subFolder = envelope.subFolder;
+    metadata.transactionId = envelope.transactionId;
+    return metadata;
   }
 
-  private void reflectString(String deviceRegistryId, String commandString) {
-    ifNotNullThen(iotAccess, () ->
-        iotAccess.sendCommand(reflectRegistry, deviceRegistryId, SubFolder.UDMI, commandString));
+  private void reflectString(String deviceRegistryId, String commandString, Envelope metadata) {
+    ifNotNullThen(iotAccess, () -> iotAccess.sendCommand(reflectRegistry, deviceRegistryId,
+        SubFolder.UDMI, commandString, metadata));
   }
 
   private String updateConfig(String previous, Envelope attributes,
@@ -293,17 +340,40 @@ public abstract class ProcessorBase extends ContainerBase {
     info("Activating");
     iotAccess = UdmiServicePod.getComponent(IOT_ACCESS_COMPONENT);
     distributor = UdmiServicePod.maybeGetComponent(distributorName);
+    if (configCoalesceMs > 0) {
+      configCoalescer = new ConfigCoalescer(iotAccess, configCoalesceMs);
+    }
     if (dispatcher != null) {
       registerHandlers(baseHandlers);
       registerHandlers();
+      ifNotNullThen(distributor, this::activateSharding);
       dispatcher.activate();
     }
   }
 
+  /**
+   * Hook up to a sharded distributor, so that messages for devices owned by other shards are
+   * forwarded to them, and messages forwarded here are dispatched as if received directly.
+   */
+  private void activateSharding(DistributorPipe shards) {
+    if (!shards.isSharded()) {
+      return;
+    }
+    String flow = getName(getClass());
+    info("Sharding flow %s", flow);
+    shards.registerShardTarget(flow, dispatcher::enqueueBundle);
+    dispatcher.setBundleFilter(bundle -> shards.forwardForeign(flow, bundle));
+  }
+
   public int getMessageCount(Class<?> clazz) {
     return dispatcher.getHandlerCount(clazz);
   }
 
+  @Override
+  public void writeMetrics(MetricsWriter metrics) {
+    ifNotNullThen(dispatcher, active -> active.writeMetrics(metrics));
+  }
+
   /**
    * Shutdown the component.
    */
@@ -311,6 +381,7 @@ public abstract class ProcessorBase extends ContainerBase {
     if (dispatcher != null) {
       dispatcher.shutdown();
     }
+    ifNotNullThen(configCoalescer, ConfigCoalescer::shutdown);
   }
 
   /**
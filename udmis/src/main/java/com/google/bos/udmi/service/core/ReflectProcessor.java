@@ -239,7 +239,8 @@ public class ReflectProcessor extends ProcessorBase {
     String reflectRegistry = reflection.deviceRegistryId;
     String deviceRegistry = reflection.deviceId;
     message.payload = encodeBase64(stringify(payload));
-    iotAccess.sendCommand(reflectRegistry, deviceRegistry, SubFolder.UDMI, stringify(message));
+    iotAccess.sendCommand(reflectRegistry, deviceRegistry, SubFolder.UDMI, stringify(message),
+        message);
   }
 
   private void updateProviderAffinity(Envelope envelope, String source) {
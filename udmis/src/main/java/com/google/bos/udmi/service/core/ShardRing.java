@@ -0,0 +1,80 @@
+package com.google.bos.udmi.service.core;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import java.util.Collections;
+import java.util.Map.Entry;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Consistent-hash ring that assigns keys (e.g. registry/device) to shards. Each shard is placed on
+ * the ring at a number of virtual points, so keys are spread evenly, and when a shard joins or
+ * leaves only the keys in its ranges change owner. Lookups work off an immutable snapshot of the
+ * ring, so they never contend with membership changes.
+ */
+class ShardRing {
+
+  static final int VIRTUAL_NODES = 128;
+  private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+
+  private final Set<String> members = new TreeSet<>();
+  private volatile NavigableMap<Long, String> ring = Collections.emptyNavigableMap();
+
+  private static long hash(String value) {
+    return HASH_FUNCTION.hashString(value, UTF_8).asLong();
+  }
+
+  /**
+   * Add a shard to the ring, returning true if it was not already a member.
+   */
+  synchronized boolean add(String shard) {
+    boolean added = members.add(shard);
+    if (added) {
+      rebuild();
+    }
+    return added;
+  }
+
+  /**
+   * Remove a shard from the ring, returning true if it was a member.
+   */
+  synchronized boolean remove(String shard) {
+    boolean removed = members.remove(shard);
+    if (removed) {
+      rebuild();
+    }
+    return removed;
+  }
+
+  synchronized Set<String> getMembers() {
+    return ImmutableSet.copyOf(members);
+  }
+
+  /**
+   * Get the shard that owns the given key, or null if there are no shards.
+   */
+  String ownerOf(String key) {
+    NavigableMap<Long, String> snapshot = ring;
+    if (snapshot.isEmpty()) {
+      return null;
+    }
+    Entry<Long, String> entry = snapshot.ceilingEntry(hash(key));
+    return (entry == null ? snapshot.firstEntry() : entry).getValue();
+  }
+
+  private void rebuild() {
+    NavigableMap<Long, String> updated = new TreeMap<>();
+    for (String member : members) {
+      for (int i = 0; i < VIRTUAL_NODES; i++) {
+        updated.put(hash(member + "#" + i), member);
+      }
+    }
+    ring = Collections.unmodifiableNavigableMap(updated);
+  }
+}
@@ -1,19 +1,21 @@
 package com.google.bos.udmi.service.core;
 
 import static com.google.udmi.util.GeneralUtils.ifNotNullThen;
+import static com.google.udmi.util.JsonUtil.OBJECT_MAPPER;
 import static com.google.udmi.util.JsonUtil.convertToStrict;
-import static com.google.udmi.util.JsonUtil.stringify;
-import static com.google.udmi.util.JsonUtil.toMap;
 import static com.google.udmi.util.MessageUpgrader.STATE_SCHEMA;
 import static udmi.schema.Envelope.SubFolder.UPDATE;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.google.bos.udmi.service.messaging.MessageContinuation;
+import com.google.bos.udmi.service.messaging.PreparedMessage;
 import com.google.bos.udmi.service.messaging.StateUpdate;
 import com.google.udmi.util.MessageUpgrader;
+import java.lang.reflect.Field;
 import java.util.Arrays;
-import java.util.Map;
+import java.util.List;
 import java.util.Set;
-import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 import udmi.schema.Envelope;
 import udmi.schema.Envelope.SubFolder;
@@ -28,9 +30,19 @@ import udmi.schema.State;
 @ComponentName("state")
 public class StateProcessor extends ProcessorBase {
 
+  private static final String VERSION_KEY = "version";
+  private static final String TIMESTAMP_KEY = "timestamp";
   private static final Set<String> STATE_SUB_FOLDERS =
       Arrays.stream(SubFolder.values()).map(SubFolder::value).collect(Collectors.toSet());
 
+  /**
+   * Plan for sharding state messages: which top-level state fields go to which subfolder, in
+   * field order. Fixed by the compiled schema, so it's worked out once rather than per message.
+   */
+  private static final List<SubFolder> SHARD_PLAN = Arrays.stream(State.class.getFields())
+      .map(Field::getName).filter(STATE_SUB_FOLDERS::contains)
+      .map(SubFolder::fromValue).toList();
+
   @Override
   protected void defaultHandler(Object originalMessage) {
     Object upgradedMessage = new MessageUpgrader(STATE_SCHEMA, originalMessage).upgrade();
@@ -49,34 +61,42 @@ public class StateProcessor extends ProcessorBase {
     registerHandler(StateUpdate.class, this::stateHandler);
   }
 
+  /**
+   * Shard a state update into its subfolder parts. Each part is built directly from the message
+   * tree, and serialized only once for both the reflected and published copies.
+   */
   private void shardStateUpdate(MessageContinuation continuation, StateUpdate message) {
     Envelope envelope = continuation.getEnvelope();
     envelope.subType = SubType.STATE;
     envelope.subFolder = UPDATE;
-    reflectMessage(envelope, stringify(message));
-    continuation.publish(message);
+    ObjectNode stateTree = OBJECT_MAPPER.valueToTree(message);
+    publishShard(continuation, envelope, stateTree);
     String originalTransaction = envelope.transactionId;
-    AtomicInteger txnSuffix = new AtomicInteger();
+    int txnSuffix = 0;
     info("Sharding state message for %s/%s %s", envelope.deviceRegistryId, envelope.deviceId,
         originalTransaction);
-    Arrays.stream(State.class.getFields()).forEach(field -> {
-      try {
-        if (STATE_SUB_FOLDERS.contains(field.getName())) {
-          ifNotNullThen(field.get(message), fieldMessage -> {
-            Map<String, Object> stringObjectMap = toMap(fieldMessage);
-            stringObjectMap.put("version", message.version);
-            stringObjectMap.put("timestamp", message.timestamp);
-            envelope.subFolder = SubFolder.fromValue(field.getName());
-            envelope.transactionId = originalTransaction + "-" + txnSuffix.getAndIncrement();
-            debug("Sharding state %s %s", envelope.subFolder, envelope.transactionId);
-            reflectMessage(envelope, stringify(stringObjectMap));
-            continuation.publish(stringObjectMap);
-          });
-        }
-      } catch (Exception e) {
-        throw new RuntimeException("While extracting field " + field.getName(), e);
+    JsonNode version = stateTree.get(VERSION_KEY);
+    JsonNode timestamp = stateTree.get(TIMESTAMP_KEY);
+    for (SubFolder subFolder : SHARD_PLAN) {
+      JsonNode fieldTree = stateTree.get(subFolder.value());
+      if (fieldTree instanceof ObjectNode fieldObject) {
+        // Shallow copy: the shard shares (never modified) subtrees with the full state message.
+        ObjectNode shardTree = OBJECT_MAPPER.createObjectNode();
+        shardTree.setAll(fieldObject);
+        ifNotNullThen(version, node -> shardTree.set(VERSION_KEY, node));
+        ifNotNullThen(timestamp, node -> shardTree.set(TIMESTAMP_KEY, node));
+        envelope.subFolder = subFolder;
+        envelope.transactionId = originalTransaction + "-" + txnSuffix++;
+        debug("Sharding state %s %s", envelope.subFolder, envelope.transactionId);
+        publishShard(continuation, envelope, shardTree);
       }
-    });
+    }
+  }
+
+  private void publishShard(MessageContinuation continuation, Envelope envelope, ObjectNode tree) {
+    PreparedMessage shard = new PreparedMessage(tree);
+    reflectMessage(envelope, shard.getJson());
+    continuation.publish(shard);
   }
 
   private void stateHandler(StateUpdate message) {
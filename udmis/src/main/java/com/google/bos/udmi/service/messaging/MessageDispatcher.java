@@ -1,11 +1,18 @@
 package com.google.bos.udmi.service.messaging;
 
 import static com.google.udmi.util.GeneralUtils.ifNotNullThen;
+import static java.lang.String.format;
 
+import com.google.bos.udmi.service.messaging.impl.MessageBase.Bundle;
 import com.google.bos.udmi.service.messaging.impl.MessageDispatcherImpl;
+import com.google.bos.udmi.service.pod.MetricsWriter;
+import com.google.udmi.util.LatencyHistogram;
 import java.util.AbstractMap.SimpleEntry;
 import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Consumer;
+import java.util.function.Predicate;
 import udmi.schema.EndpointConfiguration;
 import udmi.schema.Envelope;
 
@@ -66,11 +73,34 @@ public interface MessageDispatcher {
    */
   int getHandlerCount(Class<?> clazz);
 
+  /**
+   * Return the handler statistics for each message class that has been handled.
+   */
+  Map<Class<?>, HandlerStats> getHandlerStats();
+
+  /**
+   * Write out the handler metrics, and those of the underlying pipe.
+   */
+  void writeMetrics(MetricsWriter metrics);
+
   /**
    * Register a class message handler with the dispatcher.
    */
   <T> void registerHandler(Class<T> targetClass, Consumer<T> handler);
 
+  /**
+   * Set a filter that sees every received bundle before it's dispatched. If the filter returns
+   * true then it has taken over the bundle (e.g. forwarded it elsewhere), so it's not dispatched.
+   */
+  void setBundleFilter(Predicate<Bundle> filter);
+
+  /**
+   * Queue a bundle that came in some other way than the message pipe (e.g. forwarded from another
+   * pod), so it's processed by the pipe's message loops (in device order) as if it had been
+   * received. The bundle filter does not apply.
+   */
+  void enqueueBundle(Bundle bundle);
+
   /**
    * Convenience function to register an entire collection of handler specifications.
    */
@@ -94,4 +124,43 @@ public interface MessageDispatcher {
       dispatcher.registerHandler((Class<T>) getKey(), (Consumer<T>) getValue());
     }
   }
+
+  /**
+   * Running statistics for a message handler. Updated lock-free on every handled message, so
+   * they can be read at any time without contending with the message processing threads.
+   */
+  class HandlerStats {
+
+    private final LongAdder count = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    /**
+     * Record a handler invocation that started at the given System.nanoTime().
+     */
+    public void record(long startNanos, boolean success) {
+      latency.recordSince(startNanos);
+      if (!success) {
+        errors.increment();
+      }
+      count.increment();
+    }
+
+    public long getCount() {
+      return count.sum();
+    }
+
+    public long getErrors() {
+      return errors.sum();
+    }
+
+    public LatencyHistogram getLatency() {
+      return latency;
+    }
+
+    @Override
+    public String toString() {
+      return format("errors=%d %s", getErrors(), latency);
+    }
+  }
 }
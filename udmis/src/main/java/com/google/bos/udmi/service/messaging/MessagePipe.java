@@ -8,6 +8,7 @@ import com.google.bos.udmi.service.messaging.impl.MessageBase.Bundle;
 import com.google.bos.udmi.service.messaging.impl.PubSubPipe;
 import com.google.bos.udmi.service.messaging.impl.SimpleMqttPipe;
 import com.google.bos.udmi.service.messaging.impl.TraceMessagePipe;
+import com.google.bos.udmi.service.pod.MetricsWriter;
 import com.google.common.collect.ImmutableMap;
 import java.util.Map;
 import java.util.function.Consumer;
@@ -62,4 +63,9 @@ public interface MessagePipe {
    * Shutdown an active pipe so that it no longer processes received messages.
    */
   void shutdown();
+
+  /**
+   * Write out the throughput, queue and latency metrics for this pipe.
+   */
+  void writeMetrics(MetricsWriter metrics);
 }
\ No newline at end of file
@@ -0,0 +1,61 @@
+package com.google.bos.udmi.service.messaging;
+
+import static com.google.udmi.util.JsonUtil.stringify;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonSerializable;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.jsontype.TypeSerializer;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import java.io.IOException;
+
+/**
+ * Message in already-parsed tree form, whose JSON text is generated (at most) once and then reused
+ * every time the message is written out, e.g. when it's both reflected and published. Like a
+ * generic map message, the type and folder are taken from the envelope it's published with.
+ */
+public class PreparedMessage implements JsonSerializable {
+
+  private final ObjectNode tree;
+  private String json;
+
+  public PreparedMessage(ObjectNode tree) {
+    this.tree = tree;
+  }
+
+  public ObjectNode getTree() {
+    return tree;
+  }
+
+  /**
+   * Get the JSON text for this message, generating it on first use.
+   */
+  public String getJson() {
+    if (json == null) {
+      json = stringify(tree);
+    }
+    return json;
+  }
+
+  @Override
+  public void serialize(JsonGenerator gen, SerializerProvider serializers) throws IOException {
+    // Token buffers are used for in-memory conversion (e.g. to a typed object), so use the tree.
+    if (gen instanceof TokenBuffer) {
+      gen.writeTree(tree);
+    } else {
+      gen.writeRawValue(getJson());
+    }
+  }
+
+  @Override
+  public void serializeWithType(JsonGenerator gen, SerializerProvider serializers,
+      TypeSerializer typeSer) throws IOException {
+    serialize(gen, serializers);
+  }
+
+  @Override
+  public String toString() {
+    return getJson();
+  }
+}
@@ -4,18 +4,15 @@ import static com.google.udmi.util.GeneralUtils.CSV_JOINER;
 import static com.google.udmi.util.GeneralUtils.ifNotNullThen;
 import static com.google.udmi.util.JsonUtil.JSON_EXT;
 import static com.google.udmi.util.JsonUtil.loadFileString;
-import static com.google.udmi.util.JsonUtil.safeSleep;
-import static com.google.udmi.util.JsonUtil.toMap;
 import static com.google.udmi.util.JsonUtil.toStringMap;
 import static java.lang.String.format;
 
 import com.google.bos.udmi.service.messaging.MessagePipe;
+import com.google.bos.udmi.service.messaging.impl.TraceReplayer.Replay;
 import com.google.udmi.util.JsonUtil;
 import java.io.File;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicInteger;
 import udmi.schema.EndpointConfiguration;
 import udmi.schema.Envelope;
@@ -30,11 +27,11 @@ import udmi.schema.Envelope.SubType;
 public class FileMessagePipe extends MessageBase {
 
   public static final String DEVICES_DIR_NAME = "devices";
-  private static final long FILE_PLAYBACK_MESSAGE_DELAY_MS = 50;
   private final Map<File, AtomicInteger> traceCounts = new HashMap<>();
   private File outFileRoot;
 
   public FileMessagePipe(EndpointConfiguration config) {
+    super(config);
     ifNotNullThen(config.recv_id, this::playbackEngine);
     ifNotNullThen(config.send_id, this::fileOutHandler);
   }
@@ -69,25 +66,18 @@ public class FileMessagePipe extends MessageBase {
     }
   }
 
+  /**
+   * Replay files from the given directory. Files carry no publish time, so they're always replayed
+   * as fast as possible.
+   */
   private void playbackEngine(String recvId) {
     debug("Playback trace messages from " + new File(recvId).getAbsolutePath());
-    DirectoryTraverser filesIn = new DirectoryTraverser(recvId);
-    ExecutorService playback = Executors.newSingleThreadExecutor();
-    playback.submit(() -> {
-      filesIn.stream().forEach(this::consumeFile);
-      terminateHandlers();
-    });
+    startReplay(new DirectoryTraverser(recvId), this::decodeFile, null);
   }
 
-  private void consumeFile(File file) {
-    try {
-      Envelope envelope = makeEnvelope(file);
-      receiveMessage(toStringMap(envelope), loadFileString(file));
-      // Processing of received messages is asynchronous, so add a small artificial delay.
-      safeSleep(FILE_PLAYBACK_MESSAGE_DELAY_MS);
-    } catch (Exception e) {
-      e.printStackTrace();
-    }
+  private Replay decodeFile(File file) {
+    Envelope envelope = makeEnvelope(file);
+    return new Replay(toStringMap(envelope), loadFileString(file), null);
   }
 
   private void fileOutHandler(String sendId) {
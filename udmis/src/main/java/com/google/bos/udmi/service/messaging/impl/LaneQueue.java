@@ -0,0 +1,284 @@
+package com.google.bos.udmi.service.messaging.impl;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.AbstractQueue;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * Blocking queue with separate lanes for control and telemetry traffic, each in FIFO order.
+ * Control entries are taken ahead of telemetry, but only for a limited run while telemetry is
+ * waiting, so neither lane can starve the other. For a bounded queue, part of the capacity is
+ * reserved for control entries, so a telemetry burst can't fill the queue and block them out.
+ */
+class LaneQueue<T> extends AbstractQueue<T> implements BlockingQueue<T> {
+
+  /**
+   * Number of control entries taken in a row before a waiting telemetry entry gets a turn.
+   */
+  static final int CONTROL_RUN = 4;
+
+  private final Function<T, Lane> laneFunction;
+  private final int capacity;
+  private final int telemetryCapacity;
+  private final Deque<T> control = new ArrayDeque<>();
+  private final Deque<T> telemetry = new ArrayDeque<>();
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition notEmpty = lock.newCondition();
+  private final Condition notFull = lock.newCondition();
+  private int controlRun;
+
+  /**
+   * Create a new queue with the given capacity (0 for unbounded), of which the reserve is only
+   * available to control entries. The lane function determines which lane an entry goes in.
+   */
+  LaneQueue(int capacity, int reserve, Function<T, Lane> laneFunction) {
+    checkArgument(capacity >= 0 && reserve >= 0, "negative queue capacity");
+    checkArgument(capacity == 0 || reserve < capacity, "reserve must be less than capacity");
+    this.laneFunction = laneFunction;
+    this.capacity = capacity == 0 ? Integer.MAX_VALUE : capacity;
+    this.telemetryCapacity = capacity == 0 ? Integer.MAX_VALUE : capacity - reserve;
+  }
+
+  private Deque<T> laneFor(T entry) {
+    return laneFunction.apply(entry) == Lane.CONTROL ? control : telemetry;
+  }
+
+  private boolean hasSpace(Deque<T> lane) {
+    return size() < capacity && (lane == control || telemetry.size() < telemetryCapacity);
+  }
+
+  private void enqueue(Deque<T> lane, T entry) {
+    lane.add(entry);
+    notEmpty.signal();
+  }
+
+  private T dequeue() {
+    final T entry;
+    if (!control.isEmpty() && (telemetry.isEmpty() || controlRun < CONTROL_RUN)) {
+      entry = control.poll();
+      controlRun++;
+    } else {
+      entry = telemetry.poll();
+      controlRun = 0;
+    }
+    if (entry != null) {
+      // Space can open up in either lane, so everybody waiting gets to check.
+      notFull.signalAll();
+    }
+    return entry;
+  }
+
+  /**
+   * Remove the oldest entry that makes space for the given one: telemetry goes before control,
+   * and a telemetry entry can only displace other telemetry. Used for drop-oldest overflow, so
+   * that telemetry never causes control entries to be dropped.
+   */
+  T pollOldestFor(T entry) {
+    lock.lock();
+    try {
+      T dropped = telemetry.poll();
+      if (dropped == null && laneFor(entry) == control) {
+        dropped = control.poll();
+      }
+      if (dropped != null) {
+        notFull.signalAll();
+      }
+      return dropped;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Get the number of entries currently in the given lane.
+   */
+  int laneSize(Lane lane) {
+    lock.lock();
+    try {
+      return lane == Lane.CONTROL ? control.size() : telemetry.size();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public boolean offer(T entry) {
+    checkNotNull(entry);
+    lock.lock();
+    try {
+      Deque<T> lane = laneFor(entry);
+      if (!hasSpace(lane)) {
+        return false;
+      }
+      enqueue(lane, entry);
+      return true;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public boolean offer(T entry, long timeout, TimeUnit unit) throws InterruptedException {
+    checkNotNull(entry);
+    long nanos = unit.toNanos(timeout);
+    lock.lockInterruptibly();
+    try {
+      Deque<T> lane = laneFor(entry);
+      while (!hasSpace(lane)) {
+        if (nanos <= 0) {
+          return false;
+        }
+        nanos = notFull.awaitNanos(nanos);
+      }
+      enqueue(lane, entry);
+      return true;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public void put(T entry) throws InterruptedException {
+    checkNotNull(entry);
+    lock.lockInterruptibly();
+    try {
+      Deque<T> lane = laneFor(entry);
+      while (!hasSpace(lane)) {
+        notFull.await();
+      }
+      enqueue(lane, entry);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public T poll() {
+    lock.lock();
+    try {
+      return dequeue();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public T poll(long timeout, TimeUnit unit) throws InterruptedException {
+    long nanos = unit.toNanos(timeout);
+    lock.lockInterruptibly();
+    try {
+      while (size() == 0) {
+        if (nanos <= 0) {
+          return null;
+        }
+        nanos = notEmpty.awaitNanos(nanos);
+      }
+      return dequeue();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public T take() throws InterruptedException {
+    lock.lockInterruptibly();
+    try {
+      while (size() == 0) {
+        notEmpty.await();
+      }
+      return dequeue();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public T peek() {
+    lock.lock();
+    try {
+      boolean takeControl =
+          !control.isEmpty() && (telemetry.isEmpty() || controlRun < CONTROL_RUN);
+      return takeControl ? control.peek() : telemetry.peek();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public int size() {
+    lock.lock();
+    try {
+      return control.size() + telemetry.size();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public int remainingCapacity() {
+    lock.lock();
+    try {
+      return capacity == Integer.MAX_VALUE ? Integer.MAX_VALUE : capacity - size();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public int drainTo(Collection<? super T> sink) {
+    return drainTo(sink, Integer.MAX_VALUE);
+  }
+
+  @Override
+  public int drainTo(Collection<? super T> sink, int maxElements) {
+    checkArgument(sink != this, "can't drain to self");
+    lock.lock();
+    try {
+      int count = 0;
+      T entry;
+      while (count < maxElements && (entry = dequeue()) != null) {
+        sink.add(entry);
+        count++;
+      }
+      return count;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Iterate over a (read-only) snapshot of the queue contents, control lane first.
+   */
+  @Override
+  public Iterator<T> iterator() {
+    lock.lock();
+    try {
+      List<T> snapshot = new ArrayList<>(control);
+      snapshot.addAll(telemetry);
+      return Collections.unmodifiableList(snapshot).iterator();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Traffic lanes, in order of priority.
+   */
+  enum Lane {
+    CONTROL,
+    TELEMETRY
+  }
+}
@@ -1,7 +1,6 @@
 package com.google.bos.udmi.service.messaging.impl;
 
 import static com.google.common.base.Preconditions.checkNotNull;
-import static com.google.udmi.util.JsonUtil.stringify;
 import static java.lang.String.format;
 
 import com.google.bos.udmi.service.messaging.MessagePipe;
@@ -9,7 +8,6 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.LinkedBlockingQueue;
 import java.util.function.Function;
 import org.jetbrains.annotations.NotNull;
 import udmi.schema.EndpointConfiguration;
@@ -33,6 +31,7 @@ public class LocalMessagePipe extends MessageBase {
    * Create a new local message pipe given a configuration bundle.
    */
   public LocalMessagePipe(EndpointConfiguration config) {
+    super(config);
     namespace = normalizeNamespace(config.hostname);
     sourceName = config.recv_id;
     setSourceQueue(getQueueForScope(sourceName));
@@ -53,18 +52,23 @@ public class LocalMessagePipe extends MessageBase {
     return namedQueues.computeIfAbsent(name, trackedQueue(name));
   }
 
+  /**
+   * Make a new named queue. Queues are shared within a namespace, so the capacity of a queue is
+   * determined by the configuration of whichever pipe first uses it.
+   */
   @NotNull
   private Function<String, BlockingQueue<QueueEntry>> trackedQueue(String name) {
-    return key -> new LinkedBlockingQueue<>();
+    return key -> newQueue();
   }
 
   /**
-   * Publish a message bundle to this pipe. Simply pushes it into the outgoing queue!
+   * Publish a message bundle to this pipe. Simply pushes it into the outgoing queue! The bundle is
+   * handed over as-is, so it should not be modified by the caller after publishing.
    */
   public void publish(Bundle bundle) {
     try {
       debug("Publishing bundle to %s", this);
-      pushQueueEntry(destinationQueue, stringify(bundle));
+      pushQueueEntry(destinationQueue, bundle);
     } catch (Exception e) {
       throw new RuntimeException("While publishing to destination queue", e);
     }
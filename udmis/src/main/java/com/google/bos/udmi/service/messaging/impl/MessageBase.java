@@ -8,6 +8,7 @@ import static com.google.udmi.util.GeneralUtils.ifNotNullGet;
 import static com.google.udmi.util.GeneralUtils.ifNotNullThen;
 import static com.google.udmi.util.GeneralUtils.mergeObject;
 import static com.google.udmi.util.GeneralUtils.stackTraceString;
+import static com.google.udmi.util.JsonUtil.OBJECT_MAPPER;
 import static com.google.udmi.util.JsonUtil.convertToStrict;
 import static com.google.udmi.util.JsonUtil.fromString;
 import static com.google.udmi.util.JsonUtil.parseJson;
@@ -16,15 +17,27 @@ import static com.google.udmi.util.JsonUtil.toStringMap;
 import static java.lang.String.format;
 import static java.util.Objects.requireNonNull;
 import static java.util.Optional.ofNullable;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.google.bos.udmi.service.messaging.MessagePipe;
+import com.google.bos.udmi.service.messaging.impl.LaneQueue.Lane;
+import com.google.bos.udmi.service.messaging.impl.TraceReplayer.Replay;
 import com.google.bos.udmi.service.pod.ContainerBase;
+import com.google.bos.udmi.service.pod.MetricsWriter;
 import com.google.bos.udmi.service.pod.UdmiServicePod;
-import java.time.Duration;
-import java.time.Instant;
+import com.google.udmi.util.LatencyHistogram;
+import java.io.File;
+import java.util.ArrayDeque;
 import java.util.Date;
+import java.util.Deque;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
@@ -32,11 +45,20 @@ import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Consumer;
+import java.util.function.Function;
 import org.jetbrains.annotations.Nullable;
 import org.jetbrains.annotations.TestOnly;
+import org.jetbrains.annotations.VisibleForTesting;
 import udmi.schema.EndpointConfiguration;
+import udmi.schema.EndpointConfiguration.Overflow;
 import udmi.schema.Envelope;
 import udmi.schema.Envelope.SubFolder;
 import udmi.schema.Envelope.SubType;
@@ -49,17 +71,67 @@ public abstract class MessageBase extends ContainerBase implements MessagePipe {
 
   public static final String INVALID_ENVELOPE_KEY = "invalid";
   static final String TERMINATE_MARKER = "terminate";
+  static final TypeReference<Map<String, String>> ATTRIBUTES_TYPE = new TypeReference<>() {
+  };
   private static final String DEFAULT_NAMESPACE = "default-namespace";
   private static final Set<Object> HANDLED_QUEUES = new HashSet<>();
   private static final long DEFAULT_POLL_TIME_SEC = 1;
   private static final long AWAIT_TERMINATION_SEC = 10;
+  private static final long BACKLOG_CHECK_MS = 100;
   public static final int EXECUTION_THREADS = 4;
   public static final String ERROR_MESSAGE_MARKER = "error-mark";
 
-  private final ExecutorService executor = Executors.newFixedThreadPool(EXECUTION_THREADS);
+  private final int minLoops;
+  private final int maxLoops;
+  private final int capacity;
+  private final Overflow overflow;
+  private final int controlReserve;
+  private final ExecutorService executor;
+  private final AtomicInteger activeLoops = new AtomicInteger();
+  private final AtomicInteger idleLoops = new AtomicInteger();
+  private final AtomicInteger loopIndex = new AtomicInteger();
+  private final ReentrantLock sourceLock = new ReentrantLock();
+  private final ReentrantLock pollLock = new ReentrantLock();
+  private final Condition deferredSpace = sourceLock.newCondition();
+  private final Map<String, Deque<QueueEntry>> deviceBacklog = new HashMap<>();
+  private final AtomicInteger deferredEntries = new AtomicInteger();
+  private final AtomicLong droppedEntries = new AtomicLong();
+  private final AtomicLong rejectedEntries = new AtomicLong();
+  private final LatencyHistogram publishLatency = new LatencyHistogram();
+  private final LatencyHistogram queueWait = new LatencyHistogram();
+  private final LatencyHistogram processTime = new LatencyHistogram();
+  private final Map<Lane, LatencyHistogram> laneWait = new EnumMap<>(Lane.class);
+  private final LongAdder receivedEntries = new LongAdder();
+  private final LongAdder publishErrors = new LongAdder();
+  private ScheduledExecutorService backlogMonitor;
   private BlockingQueue<QueueEntry> sourceQueue;
   private Consumer<Bundle> dispatcher;
   private boolean activated;
+  private boolean serializeEntries;
+  private TraceReplayer replayer;
+
+  /**
+   * Create a new pipe with the execution parameters from the given configuration. The pipe starts
+   * with a base set of message loops, and adds more (up to the max) when messages are backing up
+   * on the source queue with no idle loop available to take them. Queues are unbounded unless a
+   * capacity is configured, in which case the overflow policy determines what happens when full.
+   * A control reserve puts control and telemetry messages in separate priority lanes.
+   */
+  public MessageBase(EndpointConfiguration config) {
+    Integer threads = ifNotNullGet(config, c -> c.threads);
+    minLoops = threads == null || threads <= 0 ? EXECUTION_THREADS : threads;
+    Integer threadsMax = ifNotNullGet(config, c -> c.threads_max);
+    maxLoops = Math.max(minLoops, ofNullable(threadsMax).orElse(minLoops));
+    Integer queueCapacity = ifNotNullGet(config, c -> c.capacity);
+    capacity = queueCapacity == null || queueCapacity <= 0 ? 0 : queueCapacity;
+    overflow = ofNullable(ifNotNullGet(config, c -> c.overflow)).orElse(Overflow.BLOCK);
+    int reserve = ofNullable(ifNotNullGet(config, c -> c.control_reserve)).orElse(0);
+    controlReserve = capacity > 0 ? Math.min(reserve, capacity - 1) : Math.max(reserve, 0);
+    for (Lane lane : Lane.values()) {
+      laneWait.put(lane, new LatencyHistogram());
+    }
+    executor = Executors.newFixedThreadPool(maxLoops);
+  }
 
   /**
    * Combine two message configurations together (for applying defaults).
@@ -95,75 +167,371 @@ public abstract class MessageBase extends ContainerBase implements MessagePipe {
     return bundle;
   }
 
+  /**
+   * Make a new queue for this pipe. With a control reserve, this is a lane queue that takes
+   * control messages ahead of telemetry (without starving it), otherwise it's a plain FIFO.
+   */
+  protected BlockingQueue<QueueEntry> newQueue() {
+    if (controlReserve > 0) {
+      return new LaneQueue<>(capacity, controlReserve, QueueEntry::lane);
+    }
+    return capacity > 0 ? new LinkedBlockingDeque<>(capacity) : new LinkedBlockingDeque<>();
+  }
+
+  /**
+   * Push a serialized bundle onto the given queue. It's parsed once here, and the parsed bundle is
+   * what's queued, so the traffic lane comes from its envelope without another parse on dequeue.
+   */
   protected void pushQueueEntry(BlockingQueue<QueueEntry> queue, String stringBundle) {
     try {
       requireNonNull(stringBundle, "missing queue bundle");
-      queue.put(new QueueEntry(grabExecutionContext(), stringBundle));
+      pushQueueEntry(queue, new QueueEntry(grabExecutionContext(), extractBundle(stringBundle)));
+    } catch (Exception e) {
+      throw new RuntimeException("While pushing queue entry", e);
+    }
+  }
+
+  /**
+   * Push a bundle onto the given queue. For in-process queues the bundle object itself is passed
+   * along, which means the caller gives up ownership and must not modify it afterwards. Receiving
+   * dispatchers always materialize a fresh typed message from the bundle, so consumers never share
+   * mutable state with the producer.
+   */
+  protected void pushQueueEntry(BlockingQueue<QueueEntry> queue, Bundle bundle) {
+    try {
+      pushQueueEntry(queue, makeQueueEntry(bundle));
     } catch (Exception e) {
       throw new RuntimeException("While pushing queue entry", e);
     }
   }
 
-  protected void receiveMessage(Envelope envelope, Map<?, ?> messageMap) {
-    receiveMessage(toStringMap(envelope), stringify(messageMap));
+  private void pushQueueEntry(BlockingQueue<QueueEntry> queue, QueueEntry entry)
+      throws InterruptedException {
+    if (!offerQueueEntry(queue, entry)) {
+      rejectedEntries.incrementAndGet();
+      throw new IllegalStateException("Queue at capacity " + queueIdentifier(queue));
+    }
+  }
+
+  private QueueEntry makeQueueEntry(Bundle bundle) {
+    requireNonNull(bundle, "missing queue bundle");
+    long context = grabExecutionContext();
+    return serializeEntries ? new QueueEntry(context, stringify(bundle), bundle)
+        : new QueueEntry(context, bundle);
+  }
+
+  /**
+   * Add an entry to a queue, applying the overflow policy if the queue is at capacity. Returns
+   * false if the entry was rejected (nack policy), in which case it has not been queued.
+   */
+  private boolean offerQueueEntry(BlockingQueue<QueueEntry> queue, QueueEntry entry)
+      throws InterruptedException {
+    switch (overflow) {
+      case NACK -> {
+        return queue.offer(entry);
+      }
+      case DROP_OLDEST -> {
+        while (!queue.offer(entry)) {
+          QueueEntry dropped = dropOldest(queue, entry);
+          if (dropped == null) {
+            continue;
+          }
+          droppedEntries.incrementAndGet();
+          if (dropped == entry) {
+            trace("Dropped new queue entry for %s", queueIdentifier(queue));
+            return true;
+          }
+          if (dropped.isTerminateMarker()) {
+            // Never lose a terminate marker, so drop the new entry instead.
+            queue.put(dropped);
+            return true;
+          }
+          trace("Dropped oldest queue entry for %s", queueIdentifier(queue));
+        }
+        return true;
+      }
+      default -> {
+        queue.put(entry);
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Remove the oldest entry from a full queue, to make room for a new one. For a lane queue, this
+   * is the oldest entry that the new one may displace, or the new entry itself when there is none
+   * (telemetry never displaces control messages).
+   */
+  private static QueueEntry dropOldest(BlockingQueue<QueueEntry> queue, QueueEntry entry) {
+    if (queue instanceof LaneQueue<QueueEntry> lanes) {
+      return ofNullable(lanes.pollOldestFor(entry)).orElse(entry);
+    }
+    return queue.poll();
+  }
+
+  protected boolean receiveMessage(Envelope envelope, Map<?, ?> messageMap) {
+    return receiveMessage(toStringMap(envelope), messageMap);
   }
 
-  protected void receiveMessage(Map<String, String> envelopeMap, Map<?, ?> messageMap) {
-    receiveMessage(envelopeMap, stringify(messageMap));
+  protected boolean receiveMessage(Map<String, String> envelopeMap, Map<?, ?> messageMap) {
+    return receiveMessage(envelopeMap, (JsonNode) OBJECT_MAPPER.valueToTree(messageMap));
   }
 
-  protected void receiveMessage(Map<String, String> attributesMap, String messageString) {
+  /**
+   * Receive a message that has already been parsed (e.g. as part of a larger structure).
+   */
+  protected boolean receiveMessage(Map<String, String> envelopeMap, JsonNode messageTree) {
     grabExecutionContext();
+    return receiveTree(envelopeMap, messageTree, null);
+  }
 
-    final Object messageObject;
+  /**
+   * Receive a message into the source queue. Returns false if the message was rejected because the
+   * queue is at capacity, which only happens for the nack overflow policy.
+   */
+  protected boolean receiveMessage(Map<String, String> attributesMap, String messageString) {
+    grabExecutionContext();
+
+    final JsonNode messageTree;
     try {
-      messageObject = parseJson(messageString);
+      messageTree = (JsonNode) parseJson(messageString);
     } catch (Exception e) {
-      receiveException(attributesMap, messageString, e, SubFolder.ERROR);
-      return;
+      return receiveException(attributesMap, messageString, e, SubFolder.ERROR);
     }
-    final Envelope envelope;
+    return receiveTree(attributesMap, messageTree, messageString);
+  }
 
+  /**
+   * Receive an already parsed message. The original message string is only needed for error
+   * reporting, so if it's not available it's reconstructed from the tree when needed.
+   */
+  private boolean receiveTree(Map<String, String> attributesMap, JsonNode messageTree,
+      String messageString) {
+    final Envelope envelope;
     try {
       envelope = convertToStrict(Envelope.class, attributesMap);
     } catch (Exception e) {
       attributesMap.put(INVALID_ENVELOPE_KEY, "true");
-      receiveException(attributesMap, messageString, e, null);
-      return;
+      return receiveException(attributesMap, asString(messageTree, messageString), e, null);
     }
 
     try {
-      Bundle bundle = new Bundle(envelope, messageObject);
+      Bundle bundle = new Bundle(envelope, materializeMessage(envelope, messageTree));
+      bundle.materialized = true;
       debug("Received %s/%s -> %s %s", bundle.envelope.subType, bundle.envelope.subFolder,
           queueIdentifier(), bundle.envelope.transactionId);
-      receiveBundle(bundle);
+      return receiveBundle(bundle);
     } catch (Exception e) {
-      receiveException(attributesMap, messageString, e, null);
+      return receiveException(attributesMap, asString(messageTree, messageString), e, null);
+    }
+  }
+
+  private static String asString(JsonNode messageTree, String messageString) {
+    return ofNullable(messageString).orElseGet(() -> stringify(messageTree));
+  }
+
+  /**
+   * Materialize a received message straight from its parse tree, as the schema class for its
+   * type and folder when it strictly conforms. Otherwise (or when there is no schema class) it's
+   * materialized as a generic map, which is what the dispatcher would fall back to anyway.
+   */
+  private static Object materializeMessage(Envelope envelope, JsonNode messageTree)
+      throws JsonProcessingException {
+    Class<?> messageClass = MessageDispatcherImpl.getMessageClassFor(envelope);
+    if (messageClass != Object.class && messageTree.isObject()) {
+      try {
+        return convertToStrict(messageClass, messageTree);
+      } catch (Exception e) {
+        // Not a conforming message, so leave it for the handlers to deal with as a map.
+      }
     }
+    return OBJECT_MAPPER.treeToValue(messageTree, Object.class);
+  }
+
+  /**
+   * Replay trace files into this pipe, using the given decoder to turn each file into a message,
+   * and terminate the message loops when done.
+   */
+  protected void startReplay(Iterator<File> files, Function<File, Replay> decoder, Double speed) {
+    replayer = new TraceReplayer(decoder,
+        replay -> receiveMessage(replay.attributes(), replay.message()), speed);
+    replayer.start(files, this::terminateHandlers);
   }
 
   protected void setSourceQueue(BlockingQueue<QueueEntry> queueForScope) {
     sourceQueue = queueForScope;
   }
 
+  /**
+   * Terminate the message loops. A single marker is queued, and each loop passes it along to the
+   * next before exiting, so this works regardless of how many loops are currently running.
+   */
   protected void terminateHandlers() {
     debug("Terminating " + this);
-    for (int i = 0; i < EXECUTION_THREADS; i++) {
-      receiveBundle(new Bundle(TERMINATE_MARKER));
-    }
+    receiveTerminate(new Bundle(TERMINATE_MARKER));
   }
 
   private synchronized void ensureSourceQueue() {
     if (sourceQueue == null) {
-      sourceQueue = new LinkedBlockingDeque<>();
+      sourceQueue = newQueue();
+    }
+  }
+
+  /**
+   * Get the key used for ordering messages, so that messages for the same device are processed
+   * in order. Messages without a device (or registry) have no ordering constraints.
+   */
+  @Nullable
+  static String orderingKey(Bundle bundle) {
+    Envelope envelope = bundle.envelope;
+    if (envelope == null || envelope.deviceRegistryId == null || envelope.deviceId == null) {
+      return null;
+    }
+    return envelope.deviceRegistryId + "/" + envelope.deviceId;
+  }
+
+  /**
+   * Get the traffic lane for a bundle. Telemetry is the bulk event stream from devices, while
+   * everything else (config, state, commands, model and query traffic, as well as tool and
+   * reflector messages in the udmi folder) is control.
+   */
+  static Lane laneFor(Bundle bundle) {
+    Envelope envelope = bundle.envelope;
+    if (envelope == null) {
+      return Lane.TELEMETRY;
+    }
+    boolean isEvent = envelope.subType == null || envelope.subType == SubType.EVENT;
+    return isEvent && envelope.subFolder != SubFolder.UDMI ? Lane.TELEMETRY : Lane.CONTROL;
+  }
+
+  @Nullable
+  private Bundle getFromSourceQueue() throws InterruptedException {
+    return activateEntry(sourceQueue.poll(DEFAULT_POLL_TIME_SEC, TimeUnit.SECONDS));
+  }
+
+  private Bundle activateEntry(QueueEntry entry) {
+    ifNotNullThen(entry, e -> setExecutionContext(e.context));
+    return ifNotNullGet(entry, QueueEntry::extractBundle);
+  }
+
+  /**
+   * Get the next bundle for a message loop, while keeping per-device ordering. A loop that gets a
+   * message for a device owns that device until it has no more messages pending for it. Messages
+   * for a device owned by another loop are queued up behind it, so messages for the same device
+   * are processed in order while different devices are processed in parallel. The source lock only
+   * covers the backlog and ownership bookkeeping, so an owner can always get at its backlog right
+   * away. Reading the source queue is serialized separately (by the poll lock), so ownership is
+   * still claimed in the same order as queued, and entries are only parsed once they're handed
+   * out. Deferred messages count against the queue capacity, so reading stops while too many are
+   * held back, until an owner takes some of its backlog.
+   */
+  @Nullable
+  private Bundle getNextBundle(String ownedKey) throws InterruptedException {
+    idleLoops.incrementAndGet();
+    try {
+      QueueEntry entry = takeBacklog(ownedKey);
+      if (entry == null) {
+        entry = pollSourceQueue();
+      }
+      ifNotNullThen(entry, this::recordQueueWait);
+      return activateEntry(entry);
+    } finally {
+      idleLoops.decrementAndGet();
+    }
+  }
+
+  /**
+   * Take the next deferred entry for an owned device, or release ownership if there is none.
+   */
+  @Nullable
+  private QueueEntry takeBacklog(String ownedKey) {
+    if (ownedKey == null) {
+      return null;
+    }
+    sourceLock.lock();
+    try {
+      QueueEntry pending = ifNotNullGet(deviceBacklog.get(ownedKey), Deque::poll);
+      if (pending != null) {
+        deferredEntries.decrementAndGet();
+        deferredSpace.signal();
+        return pending;
+      }
+      deviceBacklog.remove(ownedKey);
+      return null;
+    } finally {
+      sourceLock.unlock();
     }
   }
 
+  /**
+   * Read the source queue until there is an entry this loop can process, deferring any for
+   * devices owned by other loops. Returns null if nothing turns up within the poll time.
+   */
   @Nullable
-  private String getFromSourceQueue() throws InterruptedException {
-    QueueEntry poll = sourceQueue.poll(DEFAULT_POLL_TIME_SEC, TimeUnit.SECONDS);
-    ifNotNullThen(poll, p -> setExecutionContext(p.context));
-    return ifNotNullGet(poll, p -> p.message);
+  private QueueEntry pollSourceQueue() throws InterruptedException {
+    if (!pollLock.tryLock(DEFAULT_POLL_TIME_SEC, TimeUnit.SECONDS)) {
+      return null;
+    }
+    try {
+      while (true) {
+        if (!awaitDeferredSpace()) {
+          return null;
+        }
+        QueueEntry entry = sourceQueue.poll(DEFAULT_POLL_TIME_SEC, TimeUnit.SECONDS);
+        if (entry == null || claimOrDefer(entry)) {
+          return entry;
+        }
+      }
+    } finally {
+      pollLock.unlock();
+    }
+  }
+
+  private boolean awaitDeferredSpace() throws InterruptedException {
+    if (capacity <= 0) {
+      return true;
+    }
+    sourceLock.lockInterruptibly();
+    try {
+      while (deferredEntries.get() >= capacity) {
+        if (!deferredSpace.await(DEFAULT_POLL_TIME_SEC, TimeUnit.SECONDS)) {
+          return false;
+        }
+      }
+      return true;
+    } finally {
+      sourceLock.unlock();
+    }
+  }
+
+  /**
+   * Claim the device for an entry, returning true if this loop now owns it, or false if the entry
+   * has been deferred behind another loop that already does.
+   */
+  private boolean claimOrDefer(QueueEntry entry) {
+    String key = entry.key();
+    if (key == null) {
+      return true;
+    }
+    sourceLock.lock();
+    try {
+      Deque<QueueEntry> backlog = deviceBacklog.get(key);
+      if (backlog == null) {
+        deviceBacklog.put(key, new ArrayDeque<>());
+        return true;
+      }
+      trace("Deferring message for %s", key);
+      backlog.add(entry);
+      deferredEntries.incrementAndGet();
+      return false;
+    } finally {
+      sourceLock.unlock();
+    }
+  }
+
+  private void recordQueueWait(QueueEntry entry) {
+    queueWait.recordSince(entry.queuedNanos());
+    laneWait.get(entry.lane()).recordSince(entry.queuedNanos());
   }
 
   private void handleDispatchException(Envelope envelope, Exception e) {
@@ -181,31 +549,80 @@ public abstract class MessageBase extends ContainerBase implements MessagePipe {
     if (!HANDLED_QUEUES.add(System.identityHashCode(sourceQueue))) {
       throw new IllegalStateException("Source queue handled multiple times!");
     }
-    for (int i = 0; i < EXECUTION_THREADS; i++) {
-      String id = format("%s:%02d", queueIdentifier(), i);
+    // Count all the loops up front, so an early terminate marker is passed along to all of them.
+    activeLoops.addAndGet(minLoops);
+    for (int i = 0; i < minLoops; i++) {
+      startMessageLoop();
+    }
+    // Loops also check on dequeue, but if they're all blocked then something else needs to look.
+    if (maxLoops > minLoops) {
+      backlogMonitor = Executors.newSingleThreadScheduledExecutor();
+      backlogMonitor.scheduleWithFixedDelay(this::scaleForBacklog, BACKLOG_CHECK_MS,
+          BACKLOG_CHECK_MS, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  private void startMessageLoop() {
+    String id = format("%s:%02d", queueIdentifier(), loopIndex.getAndIncrement());
+    try {
       executor.submit(() -> messageLoop(id));
+    } catch (Exception e) {
+      activeLoops.decrementAndGet();
+      throw new RuntimeException("While starting message loop " + id, e);
+    }
+  }
+
+  /**
+   * Add another message loop if there is a backlog of messages that no idle loop is ready for.
+   */
+  private void scaleForBacklog() {
+    if (idleLoops.get() > 0 || sourceQueue.isEmpty() || executor.isShutdown()) {
+      return;
+    }
+    int loops = activeLoops.get();
+    if (loops < maxLoops && activeLoops.compareAndSet(loops, loops + 1)) {
+      debug("Scaling message loops to %d for backlog of %d", loops + 1, sourceQueue.size());
+      startMessageLoop();
     }
   }
 
+  /**
+   * Check if an idle loop should exit, which only applies to loops added beyond the base count.
+   */
+  private boolean retireIdleLoop() {
+    int loops = activeLoops.get();
+    return loops > minLoops && activeLoops.compareAndSet(loops, loops - 1);
+  }
+
   private void messageLoop(String id) {
     info("Starting message loop %s", id);
+    String ownedKey = null;
     while (true) {
       try {
         grabExecutionContext();
         Envelope envelope = null;
         try {
-          final Instant before = Instant.now();
-          Bundle bundle = extractBundle(getFromSourceQueue());
+          final long before = System.nanoTime();
+          Bundle bundle = getNextBundle(ownedKey);
+          ownedKey = ifNotNullGet(bundle, MessageBase::orderingKey);
           if (bundle == null) {
+            if (retireIdleLoop()) {
+              info("Retiring idle message loop %s", id);
+              return;
+            }
             continue;
           }
-          final Instant start = Instant.now();
-          long waiting = Duration.between(before, start).getSeconds();
-          debug("Processing waited %ds on message loop %s", waiting, id);
+          final long start = System.nanoTime();
+          debug("Processing waited %dus on message loop %s", NANOSECONDS.toMicros(start - before),
+              id);
           if (TERMINATE_MARKER.equals(bundle.message)) {
             info("Terminating message loop %s", id);
+            if (activeLoops.decrementAndGet() > 0) {
+              receiveTerminate(bundle);
+            }
             return;
           }
+          scaleForBacklog();
           envelope = bundle.envelope;
           debug("Processing %s %s/%s %s", this, envelope.subType, envelope.subFolder,
               envelope.transactionId);
@@ -213,8 +630,9 @@ public abstract class MessageBase extends ContainerBase implements MessagePipe {
             throw new RuntimeException("Exception due to test-induced error");
           }
           dispatcher.accept(bundle);
-          long seconds = Duration.between(start, Instant.now()).getSeconds();
-          debug("Processing took %ds for message loop %s", seconds, id);
+          processTime.recordSince(start);
+          debug("Processing took %dus for message loop %s",
+              NANOSECONDS.toMicros(System.nanoTime() - start), id);
         } catch (Exception e) {
           warn("Handling dispatch exception: " + friendlyStackTrace(e));
           handleDispatchException(envelope, e);
@@ -228,6 +646,7 @@ public abstract class MessageBase extends ContainerBase implements MessagePipe {
 
   private void shutdownExecutor() {
     debug("Shutdown of %s", this);
+    ifNotNullThen(backlogMonitor, ExecutorService::shutdown);
     executor.shutdown();
   }
 
@@ -239,16 +658,43 @@ public abstract class MessageBase extends ContainerBase implements MessagePipe {
     return format("%08x", Objects.hash(queue));
   }
 
-  private void receiveBundle(Bundle bundle) {
-    receiveBundle(stringify(bundle));
+  /**
+   * Queue a bundle that came in from outside the pipe, so it's processed by the message loops as
+   * if it had been received. Returns false if it was rejected because the queue is at capacity.
+   */
+  public boolean enqueueBundle(Bundle bundle) {
+    grabExecutionContext();
+    return receiveBundle(bundle);
   }
 
-  private void receiveBundle(String stringBundle) {
+  private boolean receiveBundle(Bundle bundle) {
     ensureSourceQueue();
-    pushQueueEntry(sourceQueue, stringBundle);
+    try {
+      if (offerQueueEntry(sourceQueue, makeQueueEntry(bundle))) {
+        receivedEntries.increment();
+        return true;
+      }
+    } catch (Exception e) {
+      throw new RuntimeException("While receiving bundle", e);
+    }
+    rejectedEntries.incrementAndGet();
+    debug("Rejected message for %s at capacity %d", queueIdentifier(), capacity);
+    return false;
   }
 
-  private void receiveException(Map<String, String> attributesMap, String messageString,
+  /**
+   * Queue a terminate marker, which is always queued (blocking if needed) regardless of policy.
+   */
+  private void receiveTerminate(Bundle bundle) {
+    ensureSourceQueue();
+    try {
+      sourceQueue.put(makeQueueEntry(bundle));
+    } catch (Exception e) {
+      throw new RuntimeException("While queueing terminate marker", e);
+    }
+  }
+
+  private boolean receiveException(Map<String, String> attributesMap, String messageString,
       Exception e, SubFolder forceFolder) {
     Bundle bundle = new Bundle();
     bundle.message = friendlyStackTrace(e);
@@ -256,7 +702,7 @@ public abstract class MessageBase extends ContainerBase implements MessagePipe {
     HashMap<String, String> mutableMap = new HashMap<>(attributesMap);
     bundle.attributesMap = mutableMap;
     ifNotNullThen(forceFolder, folder -> mutableMap.put(SUBFOLDER_PROPERTY_KEY, folder.value()));
-    receiveBundle(stringify(bundle));
+    return receiveBundle(bundle);
   }
 
   @Override
@@ -297,7 +743,7 @@ public abstract class MessageBase extends ContainerBase implements MessagePipe {
         throw new RuntimeException("Drain on active pipe");
       }
       debug("Polling on %s", this);
-      return ifNotNullGet(getFromSourceQueue(), MessageBase::extractBundle);
+      return getFromSourceQueue();
     } catch (Exception e) {
       throw new RuntimeException("While polling queue", e);
     }
@@ -305,9 +751,71 @@ public abstract class MessageBase extends ContainerBase implements MessagePipe {
 
   public abstract void publish(Bundle bundle);
 
+  protected int getQueueCapacity() {
+    return capacity;
+  }
+
+  /**
+   * Record the outcome of a publish operation that was started at the given System.nanoTime().
+   */
+  protected void recordPublish(long startNanos, boolean success) {
+    if (success) {
+      publishLatency.recordSince(startNanos);
+    } else {
+      publishErrors.increment();
+    }
+  }
+
+  public LatencyHistogram getPublishLatency() {
+    return publishLatency;
+  }
+
+  public long getPublishErrors() {
+    return publishErrors.sum();
+  }
+
+  /**
+   * Get a snapshot of the queue gauges for this pipe, for monitoring behavior under load.
+   */
+  public QueueStats getQueueStats() {
+    int depth = ofNullable(sourceQueue).map(BlockingQueue::size).orElse(0);
+    return new QueueStats(depth, deferredEntries.get(), capacity, droppedEntries.get(),
+        rejectedEntries.get());
+  }
+
+  @Override
+  public void writeMetrics(MetricsWriter metrics) {
+    QueueStats stats = getQueueStats();
+    metrics.counter("pipe_received_total", "Messages received by the pipe", receivedEntries.sum());
+    metrics.gauge("pipe_queue_depth", "Messages waiting in the source queue", stats.depth());
+    metrics.gauge("pipe_queue_deferred", "Messages held back for per-device ordering",
+        stats.deferred());
+    metrics.counter("pipe_dropped_total", "Messages dropped by the overflow policy",
+        stats.dropped());
+    metrics.counter("pipe_rejected_total", "Messages rejected at queue capacity",
+        stats.rejected());
+    metrics.gauge("pipe_message_loops", "Active message processing loops", activeLoops.get());
+    metrics.latency("pipe_queue_wait_seconds", "Time messages spent queued before processing",
+        queueWait);
+    laneWait.forEach((lane, histogram) -> metrics.latency("pipe_lane_wait_seconds",
+        "Time messages spent queued before processing, by traffic lane", histogram,
+        "lane", lane.name().toLowerCase()));
+    if (sourceQueue instanceof LaneQueue<QueueEntry> lanes) {
+      for (Lane lane : Lane.values()) {
+        metrics.gauge("pipe_lane_depth", "Messages waiting in the source queue, by traffic lane",
+            lanes.laneSize(lane), "lane", lane.name().toLowerCase());
+      }
+    }
+    metrics.latency("pipe_process_seconds", "Time taken to process a message", processTime);
+    metrics.latency("pipe_publish_seconds", "Time taken to publish a message", publishLatency);
+    metrics.counter("pipe_publish_errors_total", "Failed message publishes", getPublishErrors());
+    ifNotNullThen(replayer, r -> r.writeMetrics(metrics));
+  }
+
   @Override
   public void shutdown() {
     try {
+      ifNotNullThen(replayer, TraceReplayer::shutdown);
       terminateHandlers();
       awaitShutdown();
     } catch (Exception e) {
@@ -337,6 +845,20 @@ public abstract class MessageBase extends ContainerBase implements MessagePipe {
     public Map<String, String> attributesMap;
     public String payload;
 
+    /**
+     * Set when the message was freshly materialized by the receiving pipe (rather than handed
+     * over by an in-process producer), so it can go to a handler without a defensive copy.
+     */
+    @JsonIgnore
+    public boolean materialized;
+
+    /**
+     * Set when the bundle was forwarded here from another shard, so that it's always processed
+     * locally rather than being forwarded again.
+     */
+    @JsonIgnore
+    public boolean forwarded;
+
     public Bundle() {
       this.envelope = new Envelope();
     }
@@ -370,8 +892,45 @@ public abstract class MessageBase extends ContainerBase implements MessagePipe {
     }
   }
 
-  record QueueEntry(String context, String message) {
+  /**
+   * Entry in a message queue. Holds either a serialized string form of the bundle, or (for
+   * in-process queues) the bundle object itself, which avoids a stringify/parse pair per hop.
+   * Also keeps the traffic lane and ordering key of the bundle (so they're available without
+   * parsing), and the System.nanoTime() when it was queued, for measuring queue wait time.
+   */
+  record QueueEntry(long context, String message, Bundle bundle, Lane lane, String key,
+      long queuedNanos) {
+
+    QueueEntry(long context, String message, Bundle source) {
+      this(context, message, null, laneFor(source), orderingKey(source), System.nanoTime());
+    }
 
+    QueueEntry(long context, Bundle bundle) {
+      this(context, null, bundle, laneFor(bundle), orderingKey(bundle), System.nanoTime());
+    }
+
+    Bundle extractBundle() {
+      return ofNullable(bundle).orElseGet(() -> MessageBase.extractBundle(message));
+    }
+
+    boolean isTerminateMarker() {
+      return TERMINATE_MARKER.equals(extractBundle().message);
+    }
+  }
+
+  /**
+   * Queue gauges: current depth of the source queue, messages held back for per-device ordering,
+   * configured capacity (0 for unbounded), and counts of dropped and rejected messages.
+   */
+  public record QueueStats(int depth, int deferred, int capacity, long dropped, long rejected) {
+  }
+
+  /**
+   * Force queue entries to be serialized to strings, rather than passing bundle objects directly.
+   */
+  @VisibleForTesting
+  void setSerializeEntries(boolean serialize) {
+    serializeEntries = serialize;
   }
 
   @TestOnly
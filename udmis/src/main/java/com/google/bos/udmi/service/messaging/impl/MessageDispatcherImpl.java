@@ -3,6 +3,7 @@ package com.google.bos.udmi.service.messaging.impl;
 import static com.google.common.base.Preconditions.checkState;
 import static com.google.udmi.util.GeneralUtils.deepCopy;
 import static com.google.udmi.util.JsonUtil.convertToStrict;
+import static com.google.udmi.util.JsonUtil.safeSleep;
 import static com.google.udmi.util.JsonUtil.stringify;
 import static com.google.udmi.util.JsonUtil.toMap;
 import static java.lang.String.format;
@@ -12,10 +13,12 @@ import com.google.bos.udmi.service.messaging.ConfigUpdate;
 import com.google.bos.udmi.service.messaging.MessageContinuation;
 import com.google.bos.udmi.service.messaging.MessageDispatcher;
 import com.google.bos.udmi.service.messaging.MessagePipe;
+import com.google.bos.udmi.service.messaging.PreparedMessage;
 import com.google.bos.udmi.service.messaging.StateUpdate;
 import com.google.bos.udmi.service.messaging.impl.MessageBase.Bundle;
 import com.google.bos.udmi.service.messaging.impl.MessageBase.BundleException;
 import com.google.bos.udmi.service.pod.ContainerBase;
+import com.google.bos.udmi.service.pod.MetricsWriter;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.BiMap;
 import com.google.common.collect.HashBiMap;
@@ -25,14 +28,15 @@ import java.time.Instant;
 import java.util.AbstractMap.SimpleEntry;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
+import java.util.function.Predicate;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.jetbrains.annotations.TestOnly;
@@ -57,6 +61,7 @@ public class MessageDispatcherImpl extends ContainerBase implements MessageDispa
   private static final Map<Class<?>, SimpleEntry<SubType, SubFolder>> CLASS_TYPES = new HashMap<>();
   private static final BiMap<String, Class<?>> TYPE_CLASSES = HashBiMap.create();
   private static final long HANDLER_TIMEOUT_MS = 2000;
+  private static final long HANDLER_POLL_MS = 10;
 
   static {
     Arrays.stream(SubType.values()).forEach(type -> Arrays.stream(SubFolder.values())
@@ -68,9 +73,10 @@ public class MessageDispatcherImpl extends ContainerBase implements MessageDispa
   private final MessagePipe messagePipe;
   private final Map<Object, Envelope> messageEnvelopes = new ConcurrentHashMap<>();
   private final Map<Class<?>, Consumer<Object>> handlers = new ConcurrentHashMap<>();
-  private final Map<Class<?>, AtomicInteger> handlerCounts = new ConcurrentHashMap<>();
+  private final Map<Class<?>, HandlerStats> handlerStats = new ConcurrentHashMap<>();
   private final String projectId;
   private final ThreadLocal<Envelope> threadEnvelope = new ThreadLocal<>();
+  private Predicate<Bundle> bundleFilter;
 
   /**
    * Create a new instance of the message dispatcher.
@@ -89,6 +95,17 @@ public class MessageDispatcherImpl extends ContainerBase implements MessageDispa
     }
   }
 
+  /**
+   * Check if a bundle message was already materialized by the receiving pipe, in which case it's
+   * a private copy that can be used as-is: either as the handler type, or as a map because it
+   * didn't strictly conform to it. Messages handed over directly by an in-process producer are
+   * always converted, so that producer and handler never share the same object.
+   */
+  private static boolean isMaterialized(Bundle bundle, Class<?> handlerType) {
+    return bundle.materialized
+        && (handlerType.isInstance(bundle.message) || bundle.message instanceof Map);
+  }
+
   private static String getMapKey(SubType subType, SubFolder subFolder) {
     SubType useType = Optional.ofNullable(subType).orElse(SubType.EVENT);
     return format("%s/%s", useType, subFolder);
@@ -152,17 +169,22 @@ public class MessageDispatcherImpl extends ContainerBase implements MessageDispa
   }
 
   private void executeHandler(Class<?> handlerType, Object messageObject) {
-    handlers.get(handlerType).accept(messageObject);
-    synchronized (handlerCounts) {
-      handlerCounts.computeIfAbsent(handlerType, key -> new AtomicInteger()).incrementAndGet();
-      handlerCounts.notify();
+    HandlerStats stats = handlerStats.computeIfAbsent(handlerType, key -> new HandlerStats());
+    long startNanos = System.nanoTime();
+    boolean success = false;
+    try {
+      handlers.get(handlerType).accept(messageObject);
+      success = true;
+    } finally {
+      stats.record(startNanos, success);
     }
   }
 
   /**
    * Process a received message bundle.
    */
-  private void processMessage(Bundle bundle) {
+  @VisibleForTesting
+  void processMessage(Bundle bundle) {
     Envelope envelope = Preconditions.checkNotNull(bundle.envelope, "bundle envelope is null");
     Object message = bundle.message;
     if (bundle.payload != null) {
@@ -175,7 +197,8 @@ public class MessageDispatcherImpl extends ContainerBase implements MessageDispa
         notice("Defaulting messages of type/folder " + key.getName());
         return handlers.getOrDefault(DEFAULT_CLASS, this::devNullHandler);
       });
-      Object messageObject = isException ? message : convertStrictOrObject(handlerType, message);
+      Object messageObject = isException || isMaterialized(bundle, handlerType) ? message
+          : convertStrictOrObject(handlerType, message);
       if (messageObject instanceof Map) {
         handlerType = Object.class;
       }
@@ -186,11 +209,32 @@ public class MessageDispatcherImpl extends ContainerBase implements MessageDispa
     }
   }
 
+  private void receiveBundle(Bundle bundle) {
+    if (bundle.forwarded || bundleFilter == null || !bundleFilter.test(bundle)) {
+      processMessage(bundle);
+    }
+  }
+
   @Override
   public void activate() {
-    Consumer<Bundle> processMessage = this::processMessage;
-    info(format("%s activating %s with %08x", this, messagePipe, Objects.hash(processMessage)));
-    messagePipe.activate(processMessage);
+    Consumer<Bundle> receiveBundle = this::receiveBundle;
+    info(format("%s activating %s with %08x", this, messagePipe, Objects.hash(receiveBundle)));
+    messagePipe.activate(receiveBundle);
+  }
+
+  @Override
+  public void setBundleFilter(Predicate<Bundle> filter) {
+    checkState(!isActive(), "bundle filter set on active dispatcher");
+    bundleFilter = filter;
+  }
+
+  @Override
+  public void enqueueBundle(Bundle bundle) {
+    bundle.forwarded = true;
+    if (!((MessageBase) messagePipe).enqueueBundle(bundle)) {
+      warn("Dropped forwarded bundle for %s/%s at queue capacity",
+          bundle.envelope.deviceRegistryId, bundle.envelope.deviceId);
+    }
   }
 
   @TestOnly
@@ -232,15 +276,9 @@ public class MessageDispatcherImpl extends ContainerBase implements MessageDispa
    * Wait for a message of the given handler type to be processed. Primarily for testing.
    */
   public void waitForMessageProcessed(Class<?> clazz) {
-    synchronized (handlerCounts) {
-      try {
-        Instant endTime = Instant.now().plusMillis(HANDLER_TIMEOUT_MS);
-        do {
-          handlerCounts.wait(HANDLER_TIMEOUT_MS);
-        } while (getHandlerCount(clazz) == 0 && Instant.now().isBefore(endTime));
-      } catch (InterruptedException e) {
-        throw new RuntimeException("While waiting for handler count update", e);
-      }
+    Instant endTime = Instant.now().plusMillis(HANDLER_TIMEOUT_MS);
+    while (getHandlerCount(clazz) == 0 && Instant.now().isBefore(endTime)) {
+      safeSleep(HANDLER_POLL_MS);
     }
   }
 
@@ -289,7 +327,25 @@ public class MessageDispatcherImpl extends ContainerBase implements MessageDispa
 
   @Override
   public int getHandlerCount(Class<?> clazz) {
-    return handlerCounts.computeIfAbsent(clazz, key -> new AtomicInteger()).get();
+    HandlerStats stats = handlerStats.get(clazz);
+    return stats == null ? 0 : (int) stats.getCount();
+  }
+
+  @Override
+  public Map<Class<?>, HandlerStats> getHandlerStats() {
+    return Collections.unmodifiableMap(handlerStats);
+  }
+
+  @Override
+  public void writeMetrics(MetricsWriter metrics) {
+    handlerStats.forEach((clazz, stats) -> {
+      String handler = clazz.getSimpleName();
+      metrics.latency("handler_seconds", "Time taken by message handlers", stats.getLatency(),
+          "handler", handler);
+      metrics.counter("handler_errors_total", "Exceptions thrown by message handlers",
+          stats.getErrors(), "handler", handler);
+    });
+    messagePipe.writeMetrics(metrics);
   }
 
   @Override
@@ -314,7 +370,7 @@ public class MessageDispatcherImpl extends ContainerBase implements MessageDispa
       return bundle;
     }
 
-    if (!(message instanceof Map)) {
+    if (!(message instanceof Map) && !(message instanceof PreparedMessage)) {
       SimpleEntry<SubType, SubFolder> messageType = CLASS_TYPES.get(message.getClass());
       requireNonNull(messageType, "unknown message type for " + message.getClass());
       bundle.envelope.subType = messageType.getKey();
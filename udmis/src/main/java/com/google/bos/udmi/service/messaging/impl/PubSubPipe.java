@@ -6,15 +6,20 @@ import static com.google.udmi.util.GeneralUtils.friendlyStackTrace;
 import static com.google.udmi.util.GeneralUtils.ifNotNullGet;
 import static com.google.udmi.util.GeneralUtils.ifNotNullThen;
 import static com.google.udmi.util.GeneralUtils.ifNullThen;
+import static com.google.udmi.util.JsonUtil.OBJECT_MAPPER;
 import static com.google.udmi.util.JsonUtil.getTimestamp;
 import static com.google.udmi.util.JsonUtil.stringify;
-import static com.google.udmi.util.JsonUtil.toMap;
 import static java.lang.String.format;
 import static java.time.Instant.ofEpochSecond;
+import static java.util.Optional.ofNullable;
 
 import com.google.api.core.ApiFuture;
+import com.google.api.core.ApiFutureCallback;
+import com.google.api.core.ApiFutures;
 import com.google.api.core.ApiService.Listener;
 import com.google.api.core.ApiService.State;
+import com.google.api.gax.batching.BatchingSettings;
+import com.google.api.gax.batching.FlowControlSettings;
 import com.google.api.gax.core.NoCredentialsProvider;
 import com.google.api.gax.grpc.GrpcTransportChannel;
 import com.google.api.gax.rpc.FixedTransportChannelProvider;
@@ -25,6 +30,7 @@ import com.google.cloud.pubsub.v1.MessageReceiver;
 import com.google.cloud.pubsub.v1.Publisher;
 import com.google.cloud.pubsub.v1.Subscriber;
 import com.google.cloud.pubsub.v1.SubscriptionAdminClient;
+import com.google.common.util.concurrent.MoreExecutors;
 import com.google.protobuf.ByteString;
 import com.google.pubsub.v1.ProjectSubscriptionName;
 import com.google.pubsub.v1.ProjectTopicName;
@@ -36,11 +42,10 @@ import java.time.Duration;
 import java.time.Instant;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Optional;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
-import java.util.stream.Collectors;
 import org.jetbrains.annotations.NotNull;
 import udmi.schema.EndpointConfiguration;
 import udmi.schema.Envelope;
@@ -54,15 +59,26 @@ public class PubSubPipe extends MessageBase implements MessageReceiver {
   public static final String EMULATOR_HOST = System.getenv(EMULATOR_HOST_ENV);
   public static final String GCP_HOST = "gcp";
   public static final String PS_TXN_PREFIX = "PS:";
+  // Batching defaults for async mode, same as the PubSub client library defaults.
+  private static final long DEFAULT_BATCH_SIZE = 100;
+  private static final long DEFAULT_BATCH_BYTES = 1000;
+  private static final long DEFAULT_BATCH_DELAY_MS = 1;
+  private static final long PUBLISHER_TERMINATION_SEC = 10;
   private final Subscriber subscriber;
   private final Publisher publisher;
   private final String projectId;
+  private final EndpointConfiguration config;
+  private final boolean asyncPublish;
 
   /**
    * Create a new instance based off the configuration.
    */
   public PubSubPipe(EndpointConfiguration configuration) {
+    super(configuration);
     try {
+      config = configuration;
+      asyncPublish = configuration.batch_size != null || configuration.batch_bytes != null
+          || configuration.batch_delay_ms != null;
       projectId = variableSubstitution(configuration.hostname,
           "no project id defined in configuration as 'hostname'");
       publisher = ifNotNullGet(variableSubstitution(configuration.send_id), this::getPublisher);
@@ -121,6 +137,10 @@ public class PubSubPipe extends MessageBase implements MessageReceiver {
     subscriber.startAsync();
   }
 
+  /**
+   * Publish a bundle. In async mode (when any batching parameters are configured) this doesn't
+   * wait for the result, so publish errors are only reported (logged and counted) by the callback.
+   */
   @Override
   public void publish(Bundle bundle) {
     if (publisher == null) {
@@ -128,34 +148,67 @@ public class PubSubPipe extends MessageBase implements MessageReceiver {
       return;
     }
     try {
+      final long startNanos = System.nanoTime();
       Envelope envelope = Optional.ofNullable(bundle.envelope).orElse(new Envelope());
-      Map<String, String> stringMap = toMap(envelope).entrySet().stream()
-          .collect(Collectors.toMap(Entry::getKey, entry -> (String) entry.getValue()));
+      Map<String, String> stringMap = OBJECT_MAPPER.convertValue(envelope, ATTRIBUTES_TYPE);
       PubsubMessage message = PubsubMessage.newBuilder()
           .putAllAttributes(stringMap)
           .setData(ByteString.copyFromUtf8(stringify(bundle.message)))
           .build();
       ApiFuture<String> publish = publisher.publish(message);
+      if (asyncPublish) {
+        ApiFutures.addCallback(publish, new ApiFutureCallback<>() {
+          @Override
+          public void onFailure(Throwable t) {
+            recordPublish(startNanos, false);
+            error("Failed publishing to %s: %s", publisher.getTopicNameString(),
+                friendlyStackTrace(t));
+          }
+
+          @Override
+          public void onSuccess(String publishedId) {
+            recordPublish(startNanos, true);
+            debugPublished(stringMap, publishedId);
+          }
+        }, MoreExecutors.directExecutor());
+        return;
+      }
       String publishedId = publish.get();
-      debug(format("Published PubSub %s/%s to %s as %s", stringMap.get(SUBTYPE_PROPERTY_KEY),
-          stringMap.get(SUBFOLDER_PROPERTY_KEY), publisher.getTopicNameString(),
-          PS_TXN_PREFIX + publishedId));
+      recordPublish(startNanos, true);
+      debugPublished(stringMap, publishedId);
     } catch (Exception e) {
+      recordPublish(0, false);
       throw new RuntimeException("While publishing bundle to " + publisher.getTopicNameString(), e);
     }
   }
 
+  private void debugPublished(Map<String, String> stringMap, String publishedId) {
+    debug(format("Published PubSub %s/%s to %s as %s", stringMap.get(SUBTYPE_PROPERTY_KEY),
+        stringMap.get(SUBFOLDER_PROPERTY_KEY), publisher.getTopicNameString(),
+        PS_TXN_PREFIX + publishedId));
+  }
+
   @Override
   public void receiveMessage(PubsubMessage message, AckReplyConsumer reply) {
     final Instant start = Instant.now();
     Map<String, String> attributesMap = new HashMap<>(message.getAttributesMap());
-    // Ack first to prevent a recurring loop of processing a faulty message.
-    reply.ack();
     String messageId = message.getMessageId();
     attributesMap.computeIfAbsent("publishTime",
         key -> getTimestamp(ofEpochSecond(message.getPublishTime().getSeconds())));
     attributesMap.computeIfAbsent(Common.TRANSACTION_KEY, key -> PS_TXN_PREFIX + messageId);
-    receiveMessage(attributesMap, message.getData().toStringUtf8());
+    // Ack anything that was queued (even faulty messages, to prevent a recurring loop of processing
+    // them), but nack if the queue is full so that PubSub will redeliver it later. Acking happens
+    // once the message is queued, not after it's been processed.
+    boolean queued = true;
+    try {
+      queued = receiveMessage(attributesMap, message.getData().toStringUtf8());
+    } finally {
+      if (queued) {
+        reply.ack();
+      } else {
+        reply.nack();
+      }
+    }
     Instant end = Instant.now();
     long seconds = Duration.between(start, end).getSeconds();
     if (seconds > 1) {
@@ -163,16 +216,39 @@ public class PubSubPipe extends MessageBase implements MessageReceiver {
     }
   }
 
+  /**
+   * Shut down the pipe. The message loops are terminated first, since they might still publish
+   * through this pipe, and then the publisher is shut down, which sends any outstanding batches.
+   */
   @Override
   public void shutdown() {
-    subscriber.stopAsync().awaitTerminated();
-    super.shutdown();
+    ifNotNullThen(subscriber, s -> s.stopAsync().awaitTerminated());
+    try {
+      super.shutdown();
+    } finally {
+      ifNotNullThen(publisher, this::shutdownPublisher);
+    }
+  }
+
+  private void shutdownPublisher(Publisher toShutdown) {
+    try {
+      toShutdown.shutdown();
+      if (!toShutdown.awaitTermination(PUBLISHER_TERMINATION_SEC, TimeUnit.SECONDS)) {
+        warn("Publisher for %s did not terminate, outstanding messages may be lost",
+            toShutdown.getTopicNameString());
+      }
+    } catch (Exception e) {
+      throw new RuntimeException("While shutting down publisher", e);
+    }
   }
 
   Publisher getPublisher(String topicName) {
     try {
       ProjectTopicName projectTopicName = ProjectTopicName.of(projectId, topicName);
       Publisher.Builder builder = Publisher.newBuilder(projectTopicName);
+      if (asyncPublish) {
+        builder.setBatchingSettings(getBatchingSettings());
+      }
       String emu = getEmulatorHost();
       ifNotNullThen(emu, host -> builder.setChannelProvider(getTransportChannelProvider(host)));
       ifNotNullThen(emu, host -> builder.setCredentialsProvider(NoCredentialsProvider.create()));
@@ -183,6 +259,19 @@ public class PubSubPipe extends MessageBase implements MessageReceiver {
     }
   }
 
+  private BatchingSettings getBatchingSettings() {
+    long batchSize = ofNullable(config.batch_size).map(Long::valueOf).orElse(DEFAULT_BATCH_SIZE);
+    long batchBytes = ofNullable(config.batch_bytes).map(Long::valueOf)
+        .orElse(DEFAULT_BATCH_BYTES);
+    long batchDelay = ofNullable(config.batch_delay_ms).map(Long::valueOf)
+        .orElse(DEFAULT_BATCH_DELAY_MS);
+    return BatchingSettings.newBuilder()
+        .setElementCountThreshold(batchSize)
+        .setRequestByteThreshold(batchBytes)
+        .setDelayThreshold(org.threeten.bp.Duration.ofMillis(batchDelay))
+        .build();
+  }
+
   Subscriber getSubscriber(String subName) {
     try {
       ProjectSubscriptionName subscriptionName = ProjectSubscriptionName.of(projectId, subName);
@@ -192,6 +281,14 @@ public class PubSubPipe extends MessageBase implements MessageReceiver {
       ifNotNullThen(emu, host -> builder.setChannelProvider(getTransportChannelProvider(host)));
       ifNotNullThen(emu, host -> builder.setCredentialsProvider(NoCredentialsProvider.create()));
       builder.setParallelPullCount(EXECUTION_THREADS);
+      int capacity = getQueueCapacity();
+      if (capacity > 0) {
+        // Messages are acked as soon as they're queued, so this doesn't bound the local backlog
+        // (the queue capacity does that). It limits how many more messages the client holds
+        // while receivers are blocked waiting for space in the queue.
+        builder.setFlowControlSettings(FlowControlSettings.newBuilder()
+            .setMaxOutstandingElementCount((long) capacity).build());
+      }
       Subscriber built = builder.build();
       info(format("Subscriber %s:%s", Optional.ofNullable(emu).orElse(GCP_HOST), subscriptionName));
       built.addListener(new Listener() {
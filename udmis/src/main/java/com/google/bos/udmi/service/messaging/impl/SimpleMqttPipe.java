@@ -4,11 +4,11 @@ import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.udmi.util.GeneralUtils.friendlyStackTrace;
 import static com.google.udmi.util.GeneralUtils.ifNotNullThen;
 import static com.google.udmi.util.GeneralUtils.ifTrueThen;
+import static com.google.udmi.util.JsonUtil.OBJECT_MAPPER;
 import static com.google.udmi.util.JsonUtil.stringify;
-import static com.google.udmi.util.JsonUtil.toMap;
-import static com.google.udmi.util.JsonUtil.toStringMap;
 import static java.lang.String.format;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import com.google.bos.udmi.service.messaging.MessagePipe;
 import java.util.Map;
 import java.util.Optional;
@@ -50,6 +50,7 @@ public class SimpleMqttPipe extends MessageBase {
    * Create new pipe instance for the given config.
    */
   public SimpleMqttPipe(EndpointConfiguration config) {
+    super(config);
     namespace = config.hostname;
     endpoint = config;
     mqttClient = createMqttClient();
@@ -195,11 +196,10 @@ public class SimpleMqttPipe extends MessageBase {
     @Override
     public void messageArrived(String topic, MqttMessage message) {
       try {
-        String mqttPayload = new String(message.getPayload());
-        Map<String, Object> stringObjectMap = toMap(mqttPayload);
-        Map<String, String> envelopeMap = toStringMap(stringObjectMap.get("envelope"));
-        Map<String, Object> messageMap = toMap(stringObjectMap.get("message"));
-        receiveMessage(envelopeMap, messageMap);
+        JsonNode bundleTree = OBJECT_MAPPER.readTree(message.getPayload());
+        Map<String, String> envelopeMap =
+            OBJECT_MAPPER.convertValue(bundleTree.get("envelope"), ATTRIBUTES_TYPE);
+        receiveMessage(envelopeMap, bundleTree.path("message"));
       } catch (Exception e) {
         error("Exception receiving message on %s: %s", clientId, friendlyStackTrace(e));
       }
@@ -8,19 +8,19 @@ import static com.google.udmi.util.GeneralUtils.ifNotNullThen;
 import static com.google.udmi.util.JsonUtil.asMap;
 import static com.google.udmi.util.JsonUtil.getTimestamp;
 import static com.google.udmi.util.JsonUtil.stringify;
+import static com.google.udmi.util.JsonUtil.toStringMap;
 import static com.google.udmi.util.JsonUtil.writeFile;
 import static java.lang.String.format;
 import static java.util.Optional.ofNullable;
 
 import com.google.bos.udmi.service.messaging.MessagePipe;
+import com.google.bos.udmi.service.messaging.impl.TraceReplayer.Replay;
 import com.google.common.collect.ImmutableMap;
 import com.google.udmi.util.Common;
 import com.google.udmi.util.JsonUtil;
 import java.io.File;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicInteger;
 import org.jetbrains.annotations.Nullable;
 import udmi.schema.EndpointConfiguration;
@@ -51,7 +51,8 @@ public class TraceMessagePipe extends MessageBase {
    * Create a trace replay pipe for the given configuration.
    */
   public TraceMessagePipe(EndpointConfiguration config) {
-    ifNotNullThen(config.recv_id, this::playbackEngine);
+    super(config);
+    ifNotNullThen(config.recv_id, recvId -> playbackEngine(recvId, config.replay_speed));
     ifNotNullThen(config.send_id, this::traceOutHandler);
   }
 
@@ -59,15 +60,15 @@ public class TraceMessagePipe extends MessageBase {
     return new TraceMessagePipe(config);
   }
 
-  private void consumeTrace(File file) {
-    try {
-      Map<String, Object> traceBundle = asMap(file);
-      Envelope envelope = makeEnvelope(traceBundle);
-      Map<String, Object> message = asMap(decodeBase64((String) traceBundle.get("data")));
-      receiveMessage(envelope, message);
-    } catch (Exception e) {
-      e.printStackTrace();
-    }
+  /**
+   * Decode a trace file, leaving the message itself as a string so that it's only parsed once (on
+   * receipt by the pipe).
+   */
+  private Replay decodeTrace(File file) {
+    Map<String, Object> traceBundle = asMap(file);
+    Envelope envelope = makeEnvelope(traceBundle);
+    String message = decodeBase64((String) traceBundle.get("data"));
+    return new Replay(toStringMap(envelope), message, envelope.publishTime);
   }
 
   @Nullable
@@ -94,14 +95,9 @@ public class TraceMessagePipe extends MessageBase {
     }
   }
 
-  private void playbackEngine(String recvId) {
+  private void playbackEngine(String recvId, Double replaySpeed) {
     debug("Playback trace messages from " + new File(recvId).getAbsolutePath());
-    DirectoryTraverser traceIn = new DirectoryTraverser(recvId);
-    ExecutorService playback = Executors.newSingleThreadExecutor();
-    playback.submit(() -> {
-      traceIn.stream().forEach(this::consumeTrace);
-      terminateHandlers();
-    });
+    startReplay(new DirectoryTraverser(recvId), this::decodeTrace, replaySpeed);
   }
 
   private void traceOutHandler(String sendId) {
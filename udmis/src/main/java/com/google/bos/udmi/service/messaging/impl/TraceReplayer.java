@@ -0,0 +1,191 @@
+package com.google.bos.udmi.service.messaging.impl;
+
+import static com.google.udmi.util.GeneralUtils.friendlyStackTrace;
+import static java.lang.String.format;
+import static java.util.Optional.ofNullable;
+
+import com.google.bos.udmi.service.pod.ContainerBase;
+import com.google.bos.udmi.service.pod.MetricsWriter;
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.Date;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Replay engine for trace files. Files are read and decoded in parallel, up to a bounded window
+ * ahead of the replay point, but are always delivered in file order, so the messages for any one
+ * device are replayed in their original order. With no speed set, replay runs as fast as the
+ * receiver takes messages; otherwise it's paced by message publish time, at real-time for a speed
+ * of 1 or at a multiple of real-time for other values. Messages without a publish time are never
+ * delayed.
+ */
+public class TraceReplayer extends ContainerBase {
+
+  private static final int PREFETCH_PER_THREAD = 16;
+  private static final double NANOS_PER_MILLI = 1_000_000.0;
+  private static final double NANOS_PER_SECOND = 1_000_000_000.0;
+
+  private final Function<File, Replay> decoder;
+  private final Consumer<Replay> receiver;
+  private final double speed;
+  private final int window;
+  private final ExecutorService decoders;
+  private final ExecutorService playback;
+  private final LongAdder replayed = new LongAdder();
+  private final LongAdder errors = new LongAdder();
+  private final AtomicLong lagNanos = new AtomicLong();
+  private volatile long startNanos;
+  private volatile long endNanos;
+  private long basePublishMs;
+  private long baseNanos;
+
+  /**
+   * Create a replayer that decodes files with the given decoder, and hands the results to the
+   * receiver (always from a single thread, in file order). A decoder can return null to skip a
+   * file.
+   */
+  TraceReplayer(Function<File, Replay> decoder, Consumer<Replay> receiver, Double speed) {
+    this.decoder = decoder;
+    this.receiver = receiver;
+    this.speed = ofNullable(speed).orElse(0.0);
+    int parallelism = Runtime.getRuntime().availableProcessors();
+    window = parallelism * PREFETCH_PER_THREAD;
+    decoders = Executors.newFixedThreadPool(parallelism);
+    playback = Executors.newSingleThreadExecutor();
+  }
+
+  /**
+   * Start replaying the given files, calling the completion callback when done.
+   */
+  void start(Iterator<File> files, Runnable onComplete) {
+    debug("Starting replay at speed %s with prefetch window %d", speed, window);
+    playback.execute(() -> {
+      startNanos = System.nanoTime();
+      try {
+        replay(files);
+      } catch (InterruptedException e) {
+        warn("Replay interrupted after %d messages", replayed.sum());
+      } finally {
+        endNanos = System.nanoTime();
+        decoders.shutdownNow();
+        info("Replay complete: %s", this);
+        onComplete.run();
+      }
+    });
+    playback.shutdown();
+  }
+
+  private void replay(Iterator<File> files) throws InterruptedException {
+    Deque<Future<Replay>> pending = new ArrayDeque<>();
+    while (files.hasNext() || !pending.isEmpty()) {
+      while (files.hasNext() && pending.size() < window) {
+        File file = files.next();
+        pending.add(decoders.submit(() -> decoder.apply(file)));
+      }
+      deliver(pending.remove());
+    }
+  }
+
+  private void deliver(Future<Replay> future) throws InterruptedException {
+    final Replay replay;
+    try {
+      replay = future.get();
+    } catch (ExecutionException e) {
+      errors.increment();
+      error("Replay decode failed: " + friendlyStackTrace(e.getCause()));
+      return;
+    }
+    if (replay == null) {
+      return;
+    }
+    pace(replay.publishTime());
+    try {
+      receiver.accept(replay);
+      replayed.increment();
+    } catch (Exception e) {
+      errors.increment();
+      error("Replay receive failed: " + friendlyStackTrace(e));
+    }
+  }
+
+  /**
+   * Wait until the scheduled replay time for a message. The first paced message anchors the
+   * schedule, and later ones are offset from it by the difference in publish time (scaled by
+   * speed). Messages that are already late are delivered immediately, with the lag recorded.
+   */
+  private void pace(Date publishTime) throws InterruptedException {
+    if (speed <= 0 || publishTime == null) {
+      return;
+    }
+    long publishMs = publishTime.getTime();
+    if (baseNanos == 0) {
+      basePublishMs = publishMs;
+      baseNanos = System.nanoTime();
+      return;
+    }
+    long targetNanos = baseNanos + (long) ((publishMs - basePublishMs) * NANOS_PER_MILLI / speed);
+    long waitNanos = targetNanos - System.nanoTime();
+    lagNanos.set(Math.max(0, -waitNanos));
+    if (waitNanos > 0) {
+      TimeUnit.NANOSECONDS.sleep(waitNanos);
+    }
+  }
+
+  long getReplayed() {
+    return replayed.sum();
+  }
+
+  long getErrors() {
+    return errors.sum();
+  }
+
+  /**
+   * Get the replay rate in messages per second, either overall (when complete) or so far.
+   */
+  double getRate() {
+    long start = startNanos;
+    if (start == 0) {
+      return 0;
+    }
+    long end = endNanos == 0 ? System.nanoTime() : endNanos;
+    return replayed.sum() * NANOS_PER_SECOND / Math.max(1, end - start);
+  }
+
+  @Override
+  public void writeMetrics(MetricsWriter metrics) {
+    metrics.counter("replay_messages_total", "Messages replayed from traces", getReplayed());
+    metrics.counter("replay_errors_total", "Trace messages that failed to replay", getErrors());
+    metrics.gauge("replay_rate", "Trace replay rate in messages per second", getRate());
+    metrics.gauge("replay_lag_seconds", "How far replay is behind the paced schedule",
+        lagNanos.get() / NANOS_PER_SECOND);
+  }
+
+  @Override
+  public void shutdown() {
+    playback.shutdownNow();
+    decoders.shutdownNow();
+  }
+
+  @Override
+  public String toString() {
+    return format("replayed=%d errors=%d rate=%.1f/s lag=%.3fs", getReplayed(), getErrors(),
+        getRate(), lagNanos.get() / NANOS_PER_SECOND);
+  }
+
+  /**
+   * A decoded trace message, ready to be received by a pipe.
+   */
+  record Replay(Map<String, String> attributes, String message, Date publishTime) {
+  }
+}
@@ -7,8 +7,8 @@ import static java.util.Objects.requireNonNull;
 import static java.util.Optional.ofNullable;
 
 import com.google.bos.udmi.service.core.ComponentName;
-import com.google.udmi.util.JsonUtil;
-import java.io.PrintStream;
+import com.google.bos.udmi.service.pod.LogWriter.LogLine;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.regex.MatchResult;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -20,8 +20,8 @@ import udmi.schema.PodConfiguration;
 
 /**
  * Baseline functions that are useful for any other component. No real functionally, rather
- * convenience and abstraction to keep the main component code more clear.
- * TODO: Implement facilities for other loggers, including structured-to-cloud.
+ * convenience and abstraction to keep the main component code more clear. Log levels are checked
+ * before any message formatting is done, so disabled levels are (nearly) free.
  */
 public abstract class ContainerBase {
 
@@ -30,9 +30,15 @@ public abstract class ContainerBase {
   public static final Integer FUNCTIONS_VERSION_MAX = 11;
   public static final String EMPTY_JSON = "{}";
   public static final String REFLECT_BASE = "UDMI-REFLECT";
-  private static final ThreadLocal<String> executionContext = new ThreadLocal<>();
+  public static final long NO_EXECUTION_CONTEXT = -1;
+  private static final long EXECUTION_CONTEXT_BITS = 0x100000000L;
+  private static final ThreadLocal<long[]> executionContext =
+      ThreadLocal.withInitial(() -> new long[]{NO_EXECUTION_CONTEXT});
   private static final Pattern VARIABLE_PATTERN = Pattern.compile("\\$\\{([A-Z_]+)\\}");
+  private static final Level DEFAULT_LOG_LEVEL = Level.DEBUG;
   private static BasePodConfiguration basePodConfig = new BasePodConfiguration();
+  private static volatile Level logLevel = DEFAULT_LOG_LEVEL;
+  private static volatile LogWriter logWriter = new LogWriter(0, null);
   protected static String reflectRegistry = REFLECT_BASE;
   protected final PodConfiguration podConfiguration;
 
@@ -52,6 +58,7 @@ public abstract class ContainerBase {
     podConfiguration = config;
     basePodConfig = ofNullable(podConfiguration.base).orElseGet(BasePodConfiguration::new);
     reflectRegistry = getReflectRegistry();
+    configureLogging();
     info("Configured with reflect registry " + reflectRegistry);
   }
 
@@ -63,6 +70,28 @@ public abstract class ContainerBase {
   static void resetForTest() {
     basePodConfig = null;
     reflectRegistry = null;
+    logLevel = DEFAULT_LOG_LEVEL;
+    closeLogWriter();
+  }
+
+  /**
+   * Set the minimum level of log messages that will be output. Can be changed at any time.
+   */
+  public static void setLogLevel(Level level) {
+    logLevel = requireNonNull(level, "log level");
+  }
+
+  public static boolean isLoggable(Level level) {
+    return level.value() >= logLevel.value();
+  }
+
+  /**
+   * Write out any buffered log messages, and revert to synchronous logging.
+   */
+  public static void closeLogWriter() {
+    LogWriter previous = logWriter;
+    logWriter = new LogWriter(0, null);
+    previous.close();
   }
 
   /**
@@ -77,10 +106,26 @@ public abstract class ContainerBase {
     }
   }
 
-  protected synchronized String grabExecutionContext() {
-    String previous = getExecutionContext();
-    String context = format("%08x", (long) (Math.random() * 0x100000000L));
-    setExecutionContext(context);
+  /**
+   * Format an execution context id for output. Only done when actually needed (e.g. when a log
+   * line is written), so the ids themselves can be passed around as plain numbers.
+   */
+  public static String formatExecutionContext(long context) {
+    if (context == NO_EXECUTION_CONTEXT) {
+      return INITIAL_EXECUTION_CONTEXT;
+    }
+    return Long.toHexString(context | EXECUTION_CONTEXT_BITS).substring(1);
+  }
+
+  /**
+   * Start a new execution context for the current thread, returning the previous one. This is
+   * strictly thread-local (no shared state), so it's cheap enough to call for every message.
+   */
+  protected long grabExecutionContext() {
+    long[] current = executionContext.get();
+    long previous = current[0];
+    current[0] = ThreadLocalRandom.current().nextLong(EXECUTION_CONTEXT_BITS);
+    trace("Starting execution context %s", formatExecutionContext(current[0]));
     return previous;
   }
 
@@ -99,16 +144,30 @@ public abstract class ContainerBase {
     return out;
   }
 
-  private String getExecutionContext() {
-    if (executionContext.get() == null) {
-      executionContext.set(INITIAL_EXECUTION_CONTEXT);
-    }
-    return executionContext.get();
+  private long getExecutionContext() {
+    return executionContext.get()[0];
+  }
+
+  protected void setExecutionContext(long newContext) {
+    executionContext.get()[0] = newContext;
+    trace("Setting execution context %s", formatExecutionContext(newContext));
   }
 
-  protected void setExecutionContext(String newContext) {
-    trace("Setting execution context %s", newContext);
-    executionContext.set(newContext);
+  private void configureLogging() {
+    String level = variableSubstitution(basePodConfig.log_level);
+    if (level != null && !level.isEmpty()) {
+      try {
+        setLogLevel(Level.valueOf(level.toUpperCase()));
+      } catch (IllegalArgumentException e) {
+        warn("Ignoring unknown log level %s, keeping %s", level, logLevel);
+      }
+    }
+    String logFormat = variableSubstitution(basePodConfig.log_format);
+    int bufferSize = ofNullable(basePodConfig.log_buffer).orElse(0);
+    LogWriter previous = logWriter;
+    logWriter = new LogWriter(bufferSize, logFormat);
+    previous.close();
+    debug("Logging at level %s with format %s and buffer %d", logLevel, logFormat, bufferSize);
   }
 
   @NotNull
@@ -127,17 +186,19 @@ public abstract class ContainerBase {
   }
 
   private void output(Level level, String message) {
-    PrintStream printStream = level.value() >= Level.WARNING.value() ? System.err : System.out;
-    printStream.printf("%s %s %s: %s %s%n", JsonUtil.getTimestamp(), getExecutionContext(),
-        level.name().charAt(0), getSimpleName(), message);
-    printStream.flush();
+    if (isLoggable(level)) {
+      logWriter.write(new LogLine(System.currentTimeMillis(), getExecutionContext(), level,
+          getSimpleName(), message));
+    }
   }
 
   public void activate() {
   }
 
   public void debug(String format, Object... args) {
-    debug(format(format, args));
+    if (isLoggable(Level.DEBUG)) {
+      debug(format(format, args));
+    }
   }
 
   public void debug(String message) {
@@ -145,7 +206,9 @@ public abstract class ContainerBase {
   }
 
   public void error(String format, Object... args) {
-    error(format(format, args));
+    if (isLoggable(Level.ERROR)) {
+      error(format(format, args));
+    }
   }
 
   public void error(String message) {
@@ -153,7 +216,9 @@ public abstract class ContainerBase {
   }
 
   public void info(String format, Object... args) {
-    info(format(format, args));
+    if (isLoggable(Level.INFO)) {
+      info(format(format, args));
+    }
   }
 
   public void info(String message) {
@@ -167,12 +232,24 @@ public abstract class ContainerBase {
   public void shutdown() {
   }
 
+  /**
+   * Write out the metrics for this component, for the pod metrics endpoint. By default, a
+   * component has no metrics.
+   */
+  public void writeMetrics(MetricsWriter metrics) {
+  }
+
   public void trace(String message) {
-    // TODO: Make this dynamic and/or structured logging.
+    output(Level.TRACE, message);
   }
 
+  /**
+   * Log a trace message, only formatting the arguments if trace logging is enabled.
+   */
   public void trace(String format, Object... args) {
-    trace(format(format, args));
+    if (isLoggable(Level.TRACE)) {
+      trace(format(format, args));
+    }
   }
 
   public void warn(String message) {
@@ -180,6 +257,8 @@ public abstract class ContainerBase {
   }
 
   public void warn(String format, Object... args) {
-    warn(format(format, args));
+    if (isLoggable(Level.WARNING)) {
+      warn(format(format, args));
+    }
   }
 }
@@ -0,0 +1,178 @@
+package com.google.bos.udmi.service.pod;
+
+import static com.google.bos.udmi.service.pod.ContainerBase.formatExecutionContext;
+import static java.lang.String.format;
+
+import com.google.udmi.util.CleanDateFormat;
+import com.google.udmi.util.JsonUtil;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import udmi.schema.Level;
+
+/**
+ * Writes formatted log lines to the output streams. With a non-zero buffer size, lines are put on
+ * a fixed-size ring buffer and formatted/written by a background thread, so the logging thread
+ * only pays for the enqueue. When the buffer is full lower-level lines are dropped (and counted),
+ * while warnings and errors wait for the writer to make room, so they are never lost and stay in
+ * order behind the lines already buffered.
+ */
+class LogWriter {
+
+  static final String JSON_FORMAT = "json";
+  private static final int MAX_BATCH = 1024;
+  private static final long CLOSE_TIMEOUT_MS = 10000;
+
+  private final PrintStream out;
+  private final PrintStream err;
+  private final boolean json;
+  private final BlockingQueue<LogLine> buffer;
+  private final LongAdder dropped = new LongAdder();
+  private final Thread writerThread;
+  private volatile boolean running;
+
+  LogWriter(int bufferSize, String logFormat) {
+    this(bufferSize, logFormat, System.out, System.err);
+  }
+
+  LogWriter(int bufferSize, String logFormat, PrintStream out, PrintStream err) {
+    this.out = out;
+    this.err = err;
+    json = JSON_FORMAT.equals(logFormat);
+    if (bufferSize > 0) {
+      buffer = new ArrayBlockingQueue<>(bufferSize);
+      running = true;
+      writerThread = new Thread(this::writerLoop, "log-writer");
+      writerThread.setDaemon(true);
+      writerThread.start();
+    } else {
+      buffer = null;
+      writerThread = null;
+    }
+  }
+
+  /**
+   * Write out a log line, either directly or through the ring buffer.
+   */
+  void write(LogLine line) {
+    if (buffer == null || !running) {
+      emit(line);
+      flush();
+    } else if (!buffer.offer(line)) {
+      if (line.level().value() >= Level.WARNING.value()) {
+        writeBlocking(line);
+      } else {
+        dropped.increment();
+      }
+    }
+  }
+
+  /**
+   * Queue a line behind the ones already buffered, falling back to writing it directly (out of
+   * order) if the writer doesn't make room in time.
+   */
+  private void writeBlocking(LogLine line) {
+    try {
+      if (buffer.offer(line, CLOSE_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+        return;
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    emit(line);
+    flush();
+  }
+
+  long getDropped() {
+    return dropped.sum();
+  }
+
+  private void writerLoop() {
+    List<LogLine> batch = new ArrayList<>();
+    while (running || !buffer.isEmpty()) {
+      try {
+        LogLine first = buffer.poll(CLOSE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        if (first == null) {
+          continue;
+        }
+        batch.add(first);
+        buffer.drainTo(batch, MAX_BATCH);
+        batch.forEach(this::emit);
+        flush();
+      } catch (InterruptedException e) {
+        running = false;
+      } catch (Exception e) {
+        err.println("Log writer exception: " + e);
+      } finally {
+        batch.clear();
+      }
+    }
+  }
+
+  /**
+   * Stop the background writer (if any), after writing out everything that was buffered. Any
+   * subsequent lines are written synchronously.
+   */
+  void close() {
+    if (writerThread == null) {
+      return;
+    }
+    running = false;
+    try {
+      writerThread.interrupt();
+      writerThread.join(CLOSE_TIMEOUT_MS);
+    } catch (InterruptedException e) {
+      throw new RuntimeException("While closing log writer", e);
+    }
+    List<LogLine> remaining = new ArrayList<>();
+    buffer.drainTo(remaining);
+    remaining.forEach(this::emit);
+    long droppedLines = getDropped();
+    if (droppedLines > 0) {
+      err.printf("Log writer dropped %d lines%n", droppedLines);
+    }
+    flush();
+  }
+
+  private void emit(LogLine line) {
+    PrintStream printStream = line.level().value() >= Level.WARNING.value() ? err : out;
+    printStream.println(json ? formatJson(line) : formatText(line));
+  }
+
+  private void flush() {
+    out.flush();
+    err.flush();
+  }
+
+  private static String getTimestamp(LogLine line) {
+    return JsonUtil.getTimestamp(CleanDateFormat.cleanDate(new Date(line.timeMs())));
+  }
+
+  private static String formatText(LogLine line) {
+    return format("%s %s %s: %s %s", getTimestamp(line), formatExecutionContext(line.context()),
+        line.level().name().charAt(0), line.component(), line.message());
+  }
+
+  private static String formatJson(LogLine line) {
+    Map<String, Object> entry = new LinkedHashMap<>();
+    entry.put("timestamp", getTimestamp(line));
+    entry.put("severity", line.level().name());
+    entry.put("context", formatExecutionContext(line.context()));
+    entry.put("component", line.component());
+    entry.put("message", line.message());
+    return JsonUtil.stringifyTerse(entry);
+  }
+
+  /**
+   * A single (unformatted) log line, captured at the time of logging.
+   */
+  record LogLine(long timeMs, long context, Level level, String component, String message) {
+  }
+}
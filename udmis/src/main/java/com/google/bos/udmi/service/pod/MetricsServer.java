@@ -0,0 +1,69 @@
+package com.google.bos.udmi.service.pod;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+/**
+ * Minimal HTTP server that serves pod metrics in Prometheus text format. Metrics are collected
+ * fresh for every request, on a single server thread, so scrapes never pile up on the pod.
+ */
+class MetricsServer {
+
+  static final String METRICS_PATH = "/metrics";
+  private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+  private static final int HTTP_OK = 200;
+  private static final int HTTP_ERROR = 500;
+
+  private final HttpServer server;
+  private final Supplier<String> collector;
+
+  MetricsServer(int port, Supplier<String> collector) {
+    this.collector = collector;
+    try {
+      server = HttpServer.create(new InetSocketAddress(port), 0);
+      server.createContext(METRICS_PATH, this::handle);
+      server.setExecutor(Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "metrics-server");
+        thread.setDaemon(true);
+        return thread;
+      }));
+    } catch (Exception e) {
+      throw new RuntimeException("While creating metrics server on port " + port, e);
+    }
+  }
+
+  void start() {
+    server.start();
+  }
+
+  void stop() {
+    server.stop(0);
+  }
+
+  int getPort() {
+    return server.getAddress().getPort();
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    int status = HTTP_OK;
+    String body;
+    try {
+      body = collector.get();
+    } catch (Exception e) {
+      status = HTTP_ERROR;
+      body = "Error collecting metrics: " + e.getMessage();
+    }
+    byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+    exchange.sendResponseHeaders(status, bytes.length);
+    try (OutputStream output = exchange.getResponseBody()) {
+      output.write(bytes);
+    }
+  }
+}
@@ -0,0 +1,120 @@
+package com.google.bos.udmi.service.pod;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.lang.String.format;
+
+import com.google.udmi.util.LatencyHistogram;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Collects metric samples from pod components and renders them in the Prometheus text exposition
+ * format. Samples for the same metric name are grouped together (as the format requires), no matter
+ * which component they came from. Labels are given as alternating name/value pairs, and a writer
+ * can be scoped with labels that then apply to everything written through it.
+ */
+public class MetricsWriter {
+
+  public static final String METRIC_PREFIX = "udmis_";
+  private static final double[] QUANTILES = {0.5, 0.9, 0.99};
+  private static final double MICROS_PER_SECOND = 1_000_000.0;
+
+  private final Map<String, Family> families;
+  private final String[] scope;
+
+  public MetricsWriter() {
+    this(new LinkedHashMap<>(), new String[0]);
+  }
+
+  private MetricsWriter(Map<String, Family> families, String[] scope) {
+    this.families = families;
+    this.scope = scope;
+  }
+
+  private static String escape(String value) {
+    return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+  }
+
+  private static String formatValue(double value) {
+    return value == Math.rint(value) && !Double.isInfinite(value)
+        ? Long.toString((long) value) : Double.toString(value);
+  }
+
+  /**
+   * Get a writer that adds the given labels to everything written through it.
+   */
+  public MetricsWriter withLabels(String... labels) {
+    return new MetricsWriter(families, join(scope, labels));
+  }
+
+  public void counter(String name, String help, double value, String... labels) {
+    sample(name, "counter", help, "", join(scope, labels), value);
+  }
+
+  public void gauge(String name, String help, double value, String... labels) {
+    sample(name, "gauge", help, "", join(scope, labels), value);
+  }
+
+  /**
+   * Write a latency histogram (which is kept in microseconds) as a summary in seconds.
+   */
+  public void latency(String name, String help, LatencyHistogram histogram, String... labels) {
+    String[] allLabels = join(scope, labels);
+    for (double quantile : QUANTILES) {
+      sample(name, "summary", help, "", join(allLabels, "quantile", Double.toString(quantile)),
+          histogram.getQuantile(quantile) / MICROS_PER_SECOND);
+    }
+    sample(name, "summary", help, "_sum", allLabels, histogram.getTotal() / MICROS_PER_SECOND);
+    sample(name, "summary", help, "_count", allLabels, histogram.getCount());
+  }
+
+  private String[] join(String[] base, String... more) {
+    checkArgument(more.length % 2 == 0, "labels must be name/value pairs");
+    String[] joined = Arrays.copyOf(base, base.length + more.length);
+    System.arraycopy(more, 0, joined, base.length, more.length);
+    return joined;
+  }
+
+  private synchronized void sample(String name, String type, String help, String suffix,
+      String[] labels, double value) {
+    String fullName = METRIC_PREFIX + name;
+    Family family = families.computeIfAbsent(fullName, key -> new Family(type, help));
+    checkArgument(family.type.equals(type), "metric %s is already a %s", fullName, family.type);
+    String labelString = IntStream.range(0, labels.length / 2)
+        .mapToObj(i -> format("%s=\"%s\"", labels[i * 2], escape(labels[i * 2 + 1])))
+        .collect(Collectors.joining(","));
+    family.samples.add(format("%s%s%s %s", fullName, suffix,
+        labelString.isEmpty() ? "" : "{" + labelString + "}", formatValue(value)));
+  }
+
+  /**
+   * Render all the collected samples in Prometheus text format.
+   */
+  @Override
+  public synchronized String toString() {
+    StringBuilder builder = new StringBuilder();
+    families.forEach((name, family) -> {
+      builder.append(format("# HELP %s %s\n", name, family.help));
+      builder.append(format("# TYPE %s %s\n", name, family.type));
+      family.samples.forEach(sample -> builder.append(sample).append('\n'));
+    });
+    return builder.toString();
+  }
+
+  private static class Family {
+
+    final String type;
+    final String help;
+    final List<String> samples = new ArrayList<>();
+
+    Family(String type, String help) {
+      this.type = type;
+      this.help = help;
+    }
+  }
+}
@@ -50,6 +50,7 @@ public class UdmiServicePod extends ContainerBase {
       TargetProcessor.class, ReflectProcessor.class, StateProcessor.class);
   private static final Map<String, Class<? extends ProcessorBase>> PROCESSORS =
       PROCESSOR_CLASSES.stream().collect(Collectors.toMap(ContainerBase::getName, clazz -> clazz));
+  private MetricsServer metricsServer;
 
   /**
    * Core pod to instantiate all the other components as necessary based on configuration.
@@ -125,6 +126,22 @@ public class UdmiServicePod extends ContainerBase {
     }
   }
 
+  /**
+   * Collect the metrics from all the registered components, labeled by component name, in
+   * Prometheus text format.
+   */
+  public static String collectMetrics() {
+    MetricsWriter metrics = new MetricsWriter();
+    COMPONENT_MAP.forEach((name, component) -> {
+      try {
+        component.writeMetrics(metrics.withLabels("component", name));
+      } catch (Exception e) {
+        component.error("Error writing metrics for %s: %s", name, friendlyStackTrace(e));
+      }
+    });
+    return metrics.toString();
+  }
+
   @SuppressWarnings("unchecked")
   public static <T> T maybeGetComponent(String name) {
     return ifNotNullGet(name, x -> (T) COMPONENT_MAP.get(name));
@@ -194,6 +211,17 @@ public class UdmiServicePod extends ContainerBase {
       throw new RuntimeException("While activating pod", e);
     }
     notice("Finished activation of container components, created " + absolutePath);
+    startMetricsServer();
+  }
+
+  private void startMetricsServer() {
+    Integer metricsPort = ifNotNullGet(podConfiguration.base, base -> base.metrics_port);
+    if (metricsPort == null || metricsPort <= 0) {
+      return;
+    }
+    metricsServer = new MetricsServer(metricsPort, UdmiServicePod::collectMetrics);
+    metricsServer.start();
+    notice(format("Serving metrics on port %d at %s", metricsPort, MetricsServer.METRICS_PATH));
   }
 
   public PodConfiguration getPodConfiguration() {
@@ -206,8 +234,10 @@ public class UdmiServicePod extends ContainerBase {
   @Override
   public void shutdown() {
     notice("Starting shutdown of container components");
+    ifNotNullThen(metricsServer, MetricsServer::stop);
     forAllComponents(ContainerBase::shutdown);
     notice("Finished shutdown of container components");
     super.shutdown();
+    closeLogWriter();
   }
 }
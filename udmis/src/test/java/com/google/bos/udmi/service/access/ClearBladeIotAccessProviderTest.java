@@ -13,6 +13,7 @@ import com.google.bos.udmi.service.messaging.impl.MessageTestCore;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.jetbrains.annotations.NotNull;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
@@ -22,7 +23,9 @@ import udmi.schema.IotAccess;
 
 class ClearBladeIotAccessProviderTest extends MessageTestCore {
 
+  private static final int PAGE_COUNT = 5;
   private final DeviceManagerClient mockClient = mock(DeviceManagerClient.class);
+  private final AtomicInteger pagesListed = new AtomicInteger();
 
   @NotNull
   private ClearBladeIotAccessProvider getProvider() {
@@ -60,6 +63,30 @@ class ClearBladeIotAccessProviderTest extends MessageTestCore {
     assertTrue(cloudModel.device_ids.containsKey(TEST_DEVICE), "listed device name");
   }
 
+  @Test
+  void listDevicePages() {
+    ClearBladeIotAccessProvider provider = getProvider();
+    when(mockClient.listDevices(Mockito.any(DevicesListRequest.class))).thenAnswer(
+        this::makePagedListResponse);
+    CloudModel cloudModel = provider.listDevices(TEST_REGISTRY);
+    assertEquals(PAGE_COUNT, cloudModel.device_ids.size(), "number of listed devices");
+    assertTrue(cloudModel.device_ids.containsKey(TEST_DEVICE + (PAGE_COUNT - 1)),
+        "last page device");
+  }
+
+  private DevicesListResponse makePagedListResponse(InvocationOnMock invocation) {
+    String request = invocation.getArgument(0).toString();
+    int page = pagesListed.getAndIncrement();
+    DevicesListResponse devicesListResponse = DevicesListResponse.Builder.newBuilder().build();
+    Device device = Device.newBuilder()
+        .setName(request + "/" + TEST_DEVICE + page)
+        .setId(TEST_DEVICE + page)
+        .build();
+    devicesListResponse.setDevicesList(ImmutableList.of(device));
+    devicesListResponse.setNextPageToken(page + 1 < PAGE_COUNT ? Integer.toString(page + 1) : null);
+    return devicesListResponse;
+  }
+
   private DevicesListResponse makeDevicesListResponse(InvocationOnMock invocation) {
     String request = invocation.getArgument(0).toString();
     assertTrue(request.endsWith(TEST_REGISTRY));
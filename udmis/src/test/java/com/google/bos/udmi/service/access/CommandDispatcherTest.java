@@ -0,0 +1,102 @@
+package com.google.bos.udmi.service.access;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.google.bos.udmi.service.access.CommandDispatcher.Command;
+import com.google.bos.udmi.service.access.CommandDispatcher.CommandStats;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import org.junit.jupiter.api.Test;
+import udmi.schema.Envelope.SubFolder;
+
+/**
+ * Tests for the asynchronous command dispatcher.
+ */
+class CommandDispatcherTest {
+
+  private static final String TEST_REGISTRY = "test-registry";
+  private static final int TARGET_COUNT = 4;
+  private static final int COMMAND_COUNT = 100;
+  private static final int PARALLELISM = 2;
+  private static final int QUEUE_CAPACITY = 10;
+
+  private final Map<String, List<String>> sent = new ConcurrentHashMap<>();
+
+  private boolean recordCommand(Command command) {
+    sent.computeIfAbsent(command.deviceId(), key -> new ArrayList<>()).add(command.message());
+    return true;
+  }
+
+  private Command makeCommand(String deviceId, int index) {
+    return new Command(TEST_REGISTRY, deviceId, SubFolder.UDMI, Integer.toString(index), null,
+        System.nanoTime());
+  }
+
+  @Test
+  void orderedPerTarget() {
+    CommandDispatcher dispatcher =
+        new CommandDispatcher(this::recordCommand, PARALLELISM, COMMAND_COUNT);
+    for (int i = 0; i < COMMAND_COUNT; i++) {
+      for (int target = 0; target < TARGET_COUNT; target++) {
+        dispatcher.submit(makeCommand("device-" + target, i));
+      }
+    }
+    dispatcher.shutdown();
+
+    assertEquals(TARGET_COUNT, sent.size(), "number of targets");
+    sent.values().forEach(messages -> {
+      assertEquals(COMMAND_COUNT, messages.size(), "commands per target");
+      for (int i = 0; i < COMMAND_COUNT; i++) {
+        assertEquals(Integer.toString(i), messages.get(i), "command order");
+      }
+    });
+    CommandStats stats = dispatcher.getStats().get(TEST_REGISTRY + "/device-0");
+    assertEquals(COMMAND_COUNT, stats.getSent(), "sent commands");
+    assertEquals(COMMAND_COUNT, stats.getLatency().getCount(), "latency samples");
+    assertEquals(0, stats.getQueued(), "queued commands");
+  }
+
+  @Test
+  void dropsWhenFull() throws InterruptedException {
+    CountDownLatch release = new CountDownLatch(1);
+    CountDownLatch blocked = new CountDownLatch(1);
+    CommandDispatcher dispatcher = new CommandDispatcher(command -> {
+      blocked.countDown();
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+        throw new RuntimeException(e);
+      }
+      return !command.message().equals("0");
+    }, 1, QUEUE_CAPACITY);
+
+    // First command is taken by the (blocked) worker, then the queue fills up.
+    dispatcher.submit(makeCommand("device", 0));
+    blocked.await();
+    for (int i = 1; i <= QUEUE_CAPACITY * 2; i++) {
+      dispatcher.submit(makeCommand("device", i));
+    }
+    CommandStats stats = dispatcher.getStats().get(TEST_REGISTRY + "/device");
+    assertEquals(QUEUE_CAPACITY, stats.getQueued(), "queued commands");
+    assertEquals(QUEUE_CAPACITY, stats.getDropped(), "dropped on full queue");
+
+    release.countDown();
+    dispatcher.shutdown();
+    assertEquals(QUEUE_CAPACITY, stats.getSent(), "sent commands");
+    assertEquals(QUEUE_CAPACITY + 1, stats.getDropped(), "dropped including sender drop");
+    assertEquals(0, stats.getErrors(), "command errors");
+  }
+
+  @Test
+  void synchronousErrors() {
+    CommandDispatcher dispatcher = new CommandDispatcher(command -> {
+      throw new RuntimeException("send failed");
+    }, 0, QUEUE_CAPACITY);
+    dispatcher.submit(makeCommand("device", 0));
+    assertEquals(1, dispatcher.getStats().get(TEST_REGISTRY + "/device").getErrors(),
+        "command errors");
+  }
+}
@@ -3,11 +3,16 @@ package com.google.bos.udmi.service.access;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
 import com.google.common.collect.ImmutableMap;
+import java.util.Map.Entry;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.junit.jupiter.api.Test;
 import udmi.schema.IotAccess;
 
 class IotAccessBaseTest {
 
+  private static final String TEST_REGISTRY = "cache-registry";
+  private static final String TEST_DEVICE = "cache-device";
+
   @Test
   public void emptyOptions() {
     IotAccess access = new IotAccess();
@@ -24,4 +29,28 @@ class IotAccessBaseTest {
         ImmutableMap.of("enable", true, "foo", "bar", "x", "");
     assertEquals(expected, localIotAccessProvider.options, "parsed options object");
   }
-}
\ No newline at end of file
+
+  @Test
+  public void configCacheWriteThrough() {
+    AtomicInteger fetches = new AtomicInteger();
+    LocalIotAccessProvider provider = new LocalIotAccessProvider(new IotAccess()) {
+      @Override
+      public Entry<Long, String> fetchConfig(String registryId, String deviceId) {
+        fetches.incrementAndGet();
+        return super.fetchConfig(registryId, deviceId);
+      }
+    };
+
+    provider.modifyConfig(TEST_REGISTRY, TEST_DEVICE, previous -> "A");
+    assertEquals(1, fetches.get(), "initial config fetches");
+
+    provider.modifyConfig(TEST_REGISTRY, TEST_DEVICE, previous -> previous + "B");
+    assertEquals(1, fetches.get(), "config fetches after cached update");
+
+    // Update behind the back of the cache, so the cached version is stale.
+    provider.updateConfig(TEST_REGISTRY, TEST_DEVICE, "X", null);
+    String updated = provider.modifyConfig(TEST_REGISTRY, TEST_DEVICE, previous -> previous + "C");
+    assertEquals("XC", updated, "config updated from stale cache");
+    assertEquals(2, fetches.get(), "config fetches after stale cache");
+  }
+}
@@ -0,0 +1,120 @@
+package com.google.bos.udmi.service.core;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.google.bos.udmi.service.access.LocalIotAccessProvider;
+import java.util.Map.Entry;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+import udmi.schema.IotAccess;
+
+/**
+ * Tests for coalescing device config writes.
+ */
+class ConfigCoalescerTest {
+
+  private static final String TEST_REGISTRY = "coalesce-registry";
+  private static final String TEST_DEVICE = "coalesce-device";
+  private static final long WINDOW_MS = 200;
+  private static final long TIMEOUT_SEC = 5;
+
+  @Test
+  void coalescedWrites() throws Exception {
+    AtomicInteger updates = new AtomicInteger();
+    LocalIotAccessProvider provider = new LocalIotAccessProvider(new IotAccess()) {
+      @Override
+      protected Entry<Long, String> updateConfig(String registryId, String deviceId,
+          String config, Long version) {
+        updates.incrementAndGet();
+        return super.updateConfig(registryId, deviceId, config, version);
+      }
+    };
+    ConfigCoalescer coalescer = new ConfigCoalescer(provider, WINDOW_MS);
+
+    CompletableFuture<String> first =
+        coalescer.modifyConfig(TEST_REGISTRY, TEST_DEVICE, previous -> "A");
+    CompletableFuture<String> second =
+        coalescer.modifyConfig(TEST_REGISTRY, TEST_DEVICE, previous -> previous + "B");
+    CompletableFuture<String> unchanged =
+        coalescer.modifyConfig(TEST_REGISTRY, TEST_DEVICE, previous -> null);
+
+    assertEquals("AB", first.get(TIMEOUT_SEC, TimeUnit.SECONDS), "first written config");
+    assertEquals("AB", second.get(TIMEOUT_SEC, TimeUnit.SECONDS), "second written config");
+    assertNull(unchanged.get(TIMEOUT_SEC, TimeUnit.SECONDS), "unchanged config");
+    assertEquals(1, updates.get(), "config updates");
+    coalescer.shutdown();
+  }
+
+  @Test
+  void serializedFlushes() throws Exception {
+    String deviceId = "coalesce-serial-device";
+    AtomicInteger active = new AtomicInteger();
+    AtomicInteger maxActive = new AtomicInteger();
+    AtomicInteger updates = new AtomicInteger();
+    CountDownLatch entered = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    LocalIotAccessProvider provider = new LocalIotAccessProvider(new IotAccess()) {
+      @Override
+      protected Entry<Long, String> updateConfig(String registryId, String deviceId,
+          String config, Long version) {
+        maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+        try {
+          updates.incrementAndGet();
+          entered.countDown();
+          release.await(TIMEOUT_SEC, TimeUnit.SECONDS);
+          return super.updateConfig(registryId, deviceId, config, version);
+        } catch (InterruptedException e) {
+          throw new RuntimeException("Interrupted update", e);
+        } finally {
+          active.decrementAndGet();
+        }
+      }
+    };
+    ConfigCoalescer coalescer = new ConfigCoalescer(provider, WINDOW_MS);
+
+    CompletableFuture<String> first =
+        coalescer.modifyConfig(TEST_REGISTRY, deviceId, previous -> "A");
+    assertTrue(entered.await(TIMEOUT_SEC, TimeUnit.SECONDS), "first update started");
+    CompletableFuture<String> second =
+        coalescer.modifyConfig(TEST_REGISTRY, deviceId, previous -> previous + "B");
+
+    // Well past the window, but the second flush must wait for the first write to finish.
+    Thread.sleep(WINDOW_MS * 3);
+    assertEquals(1, updates.get(), "updates while first write in flight");
+    release.countDown();
+
+    assertEquals("A", first.get(TIMEOUT_SEC, TimeUnit.SECONDS), "first written config");
+    assertEquals("AB", second.get(TIMEOUT_SEC, TimeUnit.SECONDS), "second written config");
+    assertEquals(2, updates.get(), "config updates");
+    assertEquals(1, maxActive.get(), "maximum concurrent updates");
+    coalescer.shutdown();
+  }
+
+  @Test
+  void rejectedAfterShutdown() {
+    ConfigCoalescer coalescer =
+        new ConfigCoalescer(new LocalIotAccessProvider(new IotAccess()), WINDOW_MS);
+    coalescer.shutdown();
+
+    CompletableFuture<String> first =
+        coalescer.modifyConfig(TEST_REGISTRY, TEST_DEVICE, previous -> "A");
+    CompletableFuture<String> second =
+        coalescer.modifyConfig(TEST_REGISTRY, TEST_DEVICE, previous -> "B");
+
+    ExecutionException firstError = assertThrows(ExecutionException.class,
+        () -> first.get(TIMEOUT_SEC, TimeUnit.SECONDS));
+    assertInstanceOf(RejectedExecutionException.class, firstError.getCause());
+    ExecutionException secondError = assertThrows(ExecutionException.class,
+        () -> second.get(TIMEOUT_SEC, TimeUnit.SECONDS));
+    assertInstanceOf(RejectedExecutionException.class, secondError.getCause());
+  }
+}
@@ -0,0 +1,108 @@
+package com.google.bos.udmi.service.core;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.google.bos.udmi.service.messaging.impl.LocalMessagePipe;
+import com.google.bos.udmi.service.messaging.impl.MessageBase.Bundle;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import udmi.schema.EndpointConfiguration;
+import udmi.schema.EndpointConfiguration.Protocol;
+import udmi.schema.Envelope;
+import udmi.schema.Envelope.SubFolder;
+import udmi.schema.Envelope.SubType;
+import udmi.schema.PointsetEvent;
+
+/**
+ * Tests for sharded processing over a distributor, with two pods cross-wired through local pipes.
+ */
+class DistributorPipeTest {
+
+  private static final String SHARD_NAMESPACE = "shards";
+  private static final String TEST_FLOW = "target";
+  private static final String TEST_REGISTRY = "shard-registry";
+  private static final int DEVICE_COUNT = 100;
+  private static final long CONVERGE_TIMEOUT_MS = 5000;
+  private static final long CONVERGE_POLL_MS = 10;
+
+  private final Set<String> forwardedToB = ConcurrentHashMap.newKeySet();
+
+  private static DistributorPipe makeShard(String recvId, String sendId) {
+    EndpointConfiguration config = new EndpointConfiguration();
+    config.protocol = Protocol.LOCAL;
+    config.hostname = SHARD_NAMESPACE;
+    config.recv_id = recvId;
+    config.send_id = sendId;
+    config.shard_heartbeat_sec = 1;
+    return new DistributorPipe(config);
+  }
+
+  private static Bundle makeBundle(String deviceId) {
+    Envelope envelope = new Envelope();
+    envelope.deviceRegistryId = TEST_REGISTRY;
+    envelope.deviceId = deviceId;
+    envelope.subType = SubType.EVENT;
+    envelope.subFolder = SubFolder.POINTSET;
+    return new Bundle(envelope, new PointsetEvent());
+  }
+
+  private static void awaitCondition(BooleanSupplier condition, String description)
+      throws InterruptedException {
+    long end = System.currentTimeMillis() + CONVERGE_TIMEOUT_MS;
+    while (!condition.getAsBoolean() && System.currentTimeMillis() < end) {
+      Thread.sleep(CONVERGE_POLL_MS);
+    }
+    assertTrue(condition.getAsBoolean(), description);
+  }
+
+  @AfterEach
+  public void resetForTest() {
+    LocalMessagePipe.resetForTestStatic();
+  }
+
+  @Test
+  void shardedForwarding() throws InterruptedException {
+    DistributorPipe shardA = makeShard("shard_a", "shard_b");
+    DistributorPipe shardB = makeShard("shard_b", "shard_a");
+    shardB.registerShardTarget(TEST_FLOW, bundle -> forwardedToB.add(bundle.envelope.deviceId));
+    shardA.activate();
+    shardB.activate();
+
+    awaitCondition(() -> shardA.getShardRing().getMembers().size() == 2
+        && shardB.getShardRing().getMembers().size() == 2, "shard rings converged");
+
+    List<String> devices = IntStream.range(0, DEVICE_COUNT).mapToObj(index -> "device-" + index)
+        .collect(Collectors.toList());
+    Set<String> localToA = new HashSet<>();
+    devices.forEach(device -> {
+      String key = TEST_REGISTRY + "/" + device;
+      String owner = shardA.getShardRing().ownerOf(key);
+      assertEquals(owner, shardB.getShardRing().ownerOf(key), "agreed owner of " + key);
+      boolean forwarded = shardA.forwardForeign(TEST_FLOW, makeBundle(device));
+      assertEquals(owner.equals(shardB.getClientId()), forwarded, "forwarding of " + key);
+      if (!forwarded) {
+        localToA.add(device);
+      }
+    });
+
+    int expectedForwards = DEVICE_COUNT - localToA.size();
+    assertTrue(expectedForwards > 0 && !localToA.isEmpty(), "devices split across shards");
+    awaitCondition(() -> forwardedToB.size() == expectedForwards, "forwarded messages received");
+    assertTrue(localToA.stream().noneMatch(forwardedToB::contains), "no device on both shards");
+
+    shardB.shutdown();
+    awaitCondition(() -> shardA.getShardRing().getMembers().size() == 1, "shard left");
+    devices.forEach(device -> assertFalse(shardA.forwardForeign(TEST_FLOW, makeBundle(device)),
+        "forwarding after rebalance " + device));
+    shardA.shutdown();
+  }
+}
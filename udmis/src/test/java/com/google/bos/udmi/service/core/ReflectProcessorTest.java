@@ -7,6 +7,7 @@ import static com.google.udmi.util.JsonUtil.convertToStrict;
 import static com.google.udmi.util.JsonUtil.stringify;
 import static com.google.udmi.util.JsonUtil.toMap;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.ArgumentMatchers.notNull;
@@ -136,7 +137,7 @@ public class ReflectProcessorTest extends ProcessorTestBase {
 
     ArgumentCaptor<String> commandCaptor = ArgumentCaptor.forClass(String.class);
     verify(provider, times(1)).sendCommand(anyString(), anyString(), eq(SubFolder.UDMI),
-        commandCaptor.capture());
+        commandCaptor.capture(), any());
     List<String> allValues = commandCaptor.getAllValues();
     assertEquals(1, allValues.size(), "Expected one sent commands");
     Envelope errorEnvelope = JsonUtil.fromStringStrict(Envelope.class, allValues.get(0));
@@ -156,7 +157,7 @@ public class ReflectProcessorTest extends ProcessorTestBase {
 
     ArgumentCaptor<String> commandCaptor = ArgumentCaptor.forClass(String.class);
     verify(provider, times(1)).sendCommand(eq(TEST_REGISTRY), eq(TEST_DEVICE), eq(SubFolder.UDMI),
-        commandCaptor.capture());
+        commandCaptor.capture(), any());
     Envelope envelope = JsonUtil.fromStringStrict(Envelope.class, commandCaptor.getValue());
     assertEquals(transactionId, envelope.transactionId);
   }
@@ -0,0 +1,81 @@
+package com.google.bos.udmi.service.core;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for the consistent-hash shard ring.
+ */
+class ShardRingTest {
+
+  private static final int KEY_COUNT = 6000;
+  private static final List<String> SHARDS = List.of("shard-a", "shard-b", "shard-c");
+  private static final String NEW_SHARD = "shard-d";
+  private static final double MIN_SHARE = 0.2;
+  private static final double MAX_MOVED = 0.35;
+
+  private static List<String> makeKeys() {
+    return IntStream.range(0, KEY_COUNT).mapToObj(index -> "registry/device-" + index)
+        .collect(Collectors.toList());
+  }
+
+  private static Map<String, String> owners(ShardRing ring, List<String> keys) {
+    Map<String, String> owners = new HashMap<>();
+    keys.forEach(key -> owners.put(key, ring.ownerOf(key)));
+    return owners;
+  }
+
+  private static ShardRing makeRing() {
+    ShardRing ring = new ShardRing();
+    SHARDS.forEach(ring::add);
+    return ring;
+  }
+
+  @Test
+  void emptyRing() {
+    assertNull(new ShardRing().ownerOf("registry/device"), "owner with no shards");
+  }
+
+  @Test
+  void balancedOwnership() {
+    Map<String, Long> counts = owners(makeRing(), makeKeys()).values().stream()
+        .collect(Collectors.groupingBy(owner -> owner, Collectors.counting()));
+    assertEquals(SHARDS.size(), counts.size(), "owning shards");
+    counts.forEach((shard, count) -> assertTrue(count > KEY_COUNT * MIN_SHARE,
+        "keys owned by " + shard + ": " + count));
+  }
+
+  @Test
+  void minimalRebalance() {
+    ShardRing ring = makeRing();
+    List<String> keys = makeKeys();
+    Map<String, String> before = owners(ring, keys);
+
+    assertTrue(ring.add(NEW_SHARD), "new shard added");
+    Map<String, String> joined = owners(ring, keys);
+    long moved = keys.stream().filter(key -> !before.get(key).equals(joined.get(key))).count();
+    keys.stream().filter(key -> !before.get(key).equals(joined.get(key))).forEach(
+        key -> assertEquals(NEW_SHARD, joined.get(key), "moved key owner " + key));
+    assertTrue(moved > 0 && moved < KEY_COUNT * MAX_MOVED, "keys moved on join: " + moved);
+
+    assertTrue(ring.remove(NEW_SHARD), "new shard removed");
+    assertEquals(before, owners(ring, keys), "owners after leave");
+  }
+
+  @Test
+  void membership() {
+    ShardRing ring = makeRing();
+    assertFalse(ring.add(SHARDS.get(0)), "duplicate add");
+    assertFalse(ring.remove(NEW_SHARD), "remove of non-member");
+    assertEquals(SHARDS.size(), ring.getMembers().size(), "member count");
+  }
+}
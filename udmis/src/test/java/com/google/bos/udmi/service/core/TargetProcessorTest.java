@@ -4,6 +4,7 @@ import static com.google.bos.udmi.service.pod.ContainerBase.REFLECT_BASE;
 import static com.google.udmi.util.JsonUtil.toMap;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -73,7 +74,7 @@ class TargetProcessorTest extends ProcessorTestBase {
 
     ArgumentCaptor<String> commandCaptor = ArgumentCaptor.forClass(String.class);
     verify(provider, times(1)).sendCommand(eq(REFLECT_BASE),
-        eq(TEST_REGISTRY), eq(SubFolder.UDMI), commandCaptor.capture());
+        eq(TEST_REGISTRY), eq(SubFolder.UDMI), commandCaptor.capture(), any());
     verifyCommand(commandCaptor, true);
   }
 
@@ -94,7 +95,7 @@ class TargetProcessorTest extends ProcessorTestBase {
 
     ArgumentCaptor<String> commandCaptor = ArgumentCaptor.forClass(String.class);
     verify(provider, times(1)).sendCommand(eq(REFLECT_BASE),
-        eq(TEST_REGISTRY), eq(SubFolder.UDMI), commandCaptor.capture());
+        eq(TEST_REGISTRY), eq(SubFolder.UDMI), commandCaptor.capture(), any());
     verifyCommand(commandCaptor, false);
   }
 
@@ -0,0 +1,19 @@
+package com.google.bos.udmi.service.messaging.impl;
+
+import udmi.schema.EndpointConfiguration;
+
+/**
+ * Tests for PubSub message pipe using asynchronous (batched) publishing.
+ */
+public class AsyncPubSubPipeTest extends PubSubPipeTest {
+
+  private static final int TEST_BATCH_SIZE = 10;
+  private static final int TEST_BATCH_DELAY_MS = 10;
+
+  @Override
+  protected void augmentConfig(EndpointConfiguration configuration) {
+    super.augmentConfig(configuration);
+    configuration.batch_size = TEST_BATCH_SIZE;
+    configuration.batch_delay_ms = TEST_BATCH_DELAY_MS;
+  }
+}
@@ -15,6 +15,7 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Set;
@@ -35,6 +36,7 @@ class FileMessagePipeTest extends MessageTestCore {
   private static final String TRACE_OUT = "out/test.trace/";
   private static final String TEST_REGISTRY = "TEST_REGISTRY";
   private static final String TEST_PROJECT = "TEST_PROJECT";
+  private static final String FIRST_DEVICE = "AHU-1";
   private static final String DEVICE_ONE = "one";
   private static final String DEVICE_TWO = "two";
   private static final String TEST_POINT = "test_point";
@@ -47,7 +49,7 @@ class FileMessagePipeTest extends MessageTestCore {
   public static final File TRACES_TWO = new File(DEVICES_BASE, DEVICE_TWO);
   public static final File TRACES_ONE = new File(DEVICES_BASE, DEVICE_ONE);
 
-  private final List<Bundle> consumed = new ArrayList<>();
+  private final List<Bundle> consumed = Collections.synchronizedList(new ArrayList<>());
 
   private EndpointConfiguration getTraceInConfig() {
     EndpointConfiguration endpointConfiguration = new EndpointConfiguration();
@@ -119,8 +121,11 @@ class FileMessagePipeTest extends MessageTestCore {
             .map(bundle -> bundle.envelope.deviceId).collect(Collectors.toSet());
     assertEquals(4, devices.size(), "expected devices in trace");
 
-    assertEquals(SubFolder.SYSTEM, consumed.get(1).envelope.subFolder, "expecting system event");
-    SystemEvent systemEvent = JsonUtil.convertTo(SystemEvent.class, consumed.get(1).message);
+    // Replay order is only guaranteed per device, so look at the messages for the first device.
+    List<Bundle> firstDevice =
+        consumed.stream().filter(bundle -> FIRST_DEVICE.equals(bundle.envelope.deviceId)).toList();
+    assertEquals(SubFolder.SYSTEM, firstDevice.get(1).envelope.subFolder, "expecting system event");
+    SystemEvent systemEvent = JsonUtil.convertTo(SystemEvent.class, firstDevice.get(1).message);
     assertEquals("device.testing", systemEvent.logentries.get(0).category,
         "log entry category for second message");
   }
@@ -0,0 +1,96 @@
+package com.google.bos.udmi.service.messaging.impl;
+
+import static com.google.bos.udmi.service.messaging.impl.LaneQueue.CONTROL_RUN;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.google.bos.udmi.service.messaging.impl.LaneQueue.Lane;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for the control/telemetry lane queue.
+ */
+class LaneQueueTest {
+
+  private static final int CAPACITY = 4;
+  private static final int RESERVE = 1;
+  private static final long POLL_TIMEOUT_MS = 100;
+
+  private static LaneQueue<String> newQueue(int capacity, int reserve) {
+    return new LaneQueue<>(capacity, reserve,
+        entry -> entry.startsWith("c") ? Lane.CONTROL : Lane.TELEMETRY);
+  }
+
+  private static List<String> drain(LaneQueue<String> queue) {
+    List<String> drained = new ArrayList<>();
+    queue.drainTo(drained);
+    return drained;
+  }
+
+  @Test
+  void controlFirst() {
+    LaneQueue<String> queue = newQueue(0, RESERVE);
+    List.of("t1", "t2", "c1", "t3", "c2").forEach(queue::add);
+
+    assertEquals(2, queue.laneSize(Lane.CONTROL), "control lane size");
+    assertEquals(3, queue.laneSize(Lane.TELEMETRY), "telemetry lane size");
+    assertEquals(List.of("c1", "c2", "t1", "t2", "t3"), drain(queue), "dequeue order");
+  }
+
+  @Test
+  void noStarvation() {
+    LaneQueue<String> queue = newQueue(0, RESERVE);
+    for (int i = 0; i < CONTROL_RUN * 2 + 2; i++) {
+      queue.add("c" + i);
+    }
+    List.of("t0", "t1", "t2").forEach(queue::add);
+
+    List<String> drained = drain(queue);
+    assertEquals("t0", drained.get(CONTROL_RUN), "first telemetry turn");
+    assertEquals("t1", drained.get(CONTROL_RUN * 2 + 1), "second telemetry turn");
+    assertEquals("t2", drained.get(drained.size() - 1), "last telemetry turn");
+  }
+
+  @Test
+  void reservedCapacity() {
+    LaneQueue<String> queue = newQueue(CAPACITY, RESERVE);
+    for (int i = 0; i < CAPACITY - RESERVE; i++) {
+      assertTrue(queue.offer("t" + i), "telemetry offer " + i);
+    }
+    assertFalse(queue.offer("tx"), "telemetry offer into reserve");
+    assertTrue(queue.offer("c0"), "control offer into reserve");
+    assertFalse(queue.offer("cx"), "control offer at capacity");
+    assertEquals(0, queue.remainingCapacity(), "remaining capacity");
+  }
+
+  @Test
+  void dropOldest() {
+    LaneQueue<String> queue = newQueue(CAPACITY, RESERVE);
+    List.of("c0", "t0", "c1").forEach(queue::add);
+    assertEquals("t0", queue.pollOldestFor("c2"), "telemetry dropped first");
+    assertNull(queue.pollOldestFor("t1"), "telemetry can't displace control");
+    assertEquals("c0", queue.pollOldestFor("c2"), "oldest control dropped");
+  }
+
+  @Test
+  void blockingHandoff() throws Exception {
+    LaneQueue<String> queue = newQueue(CAPACITY, RESERVE);
+    assertNull(queue.poll(POLL_TIMEOUT_MS, TimeUnit.MILLISECONDS), "empty poll");
+
+    CompletableFuture<String> taken = CompletableFuture.supplyAsync(() -> {
+      try {
+        return queue.take();
+      } catch (InterruptedException e) {
+        throw new RuntimeException(e);
+      }
+    });
+    queue.put("c0");
+    assertEquals("c0", taken.get(POLL_TIMEOUT_MS * 10, TimeUnit.MILLISECONDS), "taken entry");
+  }
+}
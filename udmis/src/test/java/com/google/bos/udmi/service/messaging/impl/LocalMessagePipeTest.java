@@ -6,18 +6,42 @@ import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import com.google.bos.udmi.service.messaging.StateUpdate;
 import com.google.bos.udmi.service.messaging.impl.MessageBase.Bundle;
+import com.google.bos.udmi.service.messaging.impl.MessageBase.QueueStats;
 import com.google.udmi.util.JsonUtil;
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import org.junit.jupiter.api.Test;
 import udmi.schema.EndpointConfiguration;
+import udmi.schema.EndpointConfiguration.Overflow;
 import udmi.schema.EndpointConfiguration.Protocol;
+import udmi.schema.Envelope;
+import udmi.schema.Envelope.SubFolder;
+import udmi.schema.Envelope.SubType;
+import udmi.schema.PointsetEvent;
 
 /**
  * Tests for LocalMessagePipe.
  */
 public class LocalMessagePipeTest extends MessagePipeTestBase {
 
+  private static final int SCALING_THREADS_MAX = 4;
+  private static final long SCALING_TIMEOUT_SEC = 5;
+  private static final int ORDERING_DEVICES = 4;
+  private static final int ORDERING_MESSAGES = 50;
+  private static final int BACKLOG_MESSAGES = 5;
+  // Well under the one second source queue poll time.
+  private static final long BACKLOG_DRAIN_MS = 500;
+  private static final int QUEUE_CAPACITY = 2;
+  private static final int OVERFLOW_MESSAGES = 5;
+  private static final String POINTSET_MESSAGE =
+      "{\"version\": \"" + TEST_VERSION + "\", \"points\": {}}";
+  private static final String NONCONFORMING_MESSAGE = "{\"not_a_pointset_field\": true}";
+
   private Map<String, Object> testSend(Object message) {
     getTestDispatcher().publish(message);
     List<Bundle> bundles = getReverseDispatcher().drain();
@@ -51,6 +75,178 @@ public class LocalMessagePipeTest extends MessagePipeTestBase {
     assertEquals(TEST_VERSION, message.get("version"));
   }
 
+  /**
+   * Test that a backlog of blocked messages causes the pipe to scale up its message loops.
+   */
+  @Test
+  void backlogScaling() throws InterruptedException {
+    EndpointConfiguration receiveConfig = getMessageConfig(true);
+    receiveConfig.threads = 1;
+    receiveConfig.threads_max = SCALING_THREADS_MAX;
+    LocalMessagePipe receiver = new LocalMessagePipe(receiveConfig);
+    CountDownLatch inFlight = new CountDownLatch(SCALING_THREADS_MAX);
+    CountDownLatch release = new CountDownLatch(1);
+    receiver.activate(bundle -> {
+      try {
+        inFlight.countDown();
+        release.await();
+      } catch (InterruptedException e) {
+        throw new RuntimeException("Interrupted handler", e);
+      }
+    });
+    LocalMessagePipe sender = new LocalMessagePipe(getMessageConfig(false));
+    for (int i = 0; i < SCALING_THREADS_MAX; i++) {
+      sender.publish(new Bundle(MessagePipeTestBase.makeTestEnvelope(), new StateUpdate()));
+    }
+    boolean scaled = inFlight.await(SCALING_TIMEOUT_SEC, TimeUnit.SECONDS);
+    release.countDown();
+    receiver.shutdown();
+    assertTrue(scaled, "expected concurrent message loops");
+  }
+
+  /**
+   * Test that messages for the same device are processed in order, even with multiple loops.
+   */
+  @Test
+  void perDeviceOrdering() throws InterruptedException {
+    Map<String, List<Integer>> processed = new ConcurrentHashMap<>();
+    CountDownLatch done = new CountDownLatch(ORDERING_DEVICES * ORDERING_MESSAGES);
+    LocalMessagePipe receiver = new LocalMessagePipe(getMessageConfig(true));
+    receiver.activate(bundle -> {
+      // Vary the processing time so that unordered handling would show up as out-of-order.
+      JsonUtil.safeSleep(Integer.parseInt(bundle.envelope.transactionId) % 3);
+      processed.computeIfAbsent(bundle.envelope.deviceId, key -> new ArrayList<>())
+          .add(Integer.parseInt(bundle.envelope.transactionId));
+      done.countDown();
+    });
+    LocalMessagePipe sender = new LocalMessagePipe(getMessageConfig(false));
+    for (int i = 0; i < ORDERING_MESSAGES; i++) {
+      for (int device = 0; device < ORDERING_DEVICES; device++) {
+        Bundle bundle = new Bundle(MessagePipeTestBase.makeTestEnvelope(), new StateUpdate());
+        bundle.envelope.deviceId = "device-" + device;
+        bundle.envelope.transactionId = Integer.toString(i);
+        sender.publish(bundle);
+      }
+    }
+    boolean completed = done.await(SCALING_TIMEOUT_SEC, TimeUnit.SECONDS);
+    receiver.shutdown();
+    assertTrue(completed, "expected all messages processed");
+    assertEquals(ORDERING_DEVICES, processed.size(), "processed devices");
+    processed.forEach((device, order) -> {
+      for (int i = 0; i < ORDERING_MESSAGES; i++) {
+        assertEquals(i, order.get(i), "message order for " + device);
+      }
+    });
+  }
+
+  /**
+   * Test that a device backlog drains as soon as its owner is ready, rather than waiting behind
+   * another loop that is idle polling the (empty) source queue.
+   */
+  @Test
+  void backlogDrainsWithoutPollDelay() throws InterruptedException {
+    EndpointConfiguration receiveConfig = getMessageConfig(true);
+    receiveConfig.threads = 2;
+    LocalMessagePipe receiver = new LocalMessagePipe(receiveConfig);
+    CountDownLatch release = new CountDownLatch(1);
+    CountDownLatch done = new CountDownLatch(BACKLOG_MESSAGES);
+    receiver.activate(bundle -> {
+      try {
+        if ("0".equals(bundle.envelope.transactionId)) {
+          release.await();
+        }
+        done.countDown();
+      } catch (InterruptedException e) {
+        throw new RuntimeException("Interrupted handler", e);
+      }
+    });
+    LocalMessagePipe sender = new LocalMessagePipe(getMessageConfig(false));
+    for (int i = 0; i < BACKLOG_MESSAGES; i++) {
+      Bundle bundle = new Bundle(MessagePipeTestBase.makeTestEnvelope(), new StateUpdate());
+      bundle.envelope.transactionId = Integer.toString(i);
+      sender.publish(bundle);
+    }
+    // Wait for the other loop to defer the rest behind the first message, and go back to polling.
+    Instant deadline = Instant.now().plusSeconds(SCALING_TIMEOUT_SEC);
+    while (receiver.getQueueStats().deferred() < BACKLOG_MESSAGES - 1
+        && Instant.now().isBefore(deadline)) {
+      JsonUtil.safeSleep(10);
+    }
+    assertEquals(BACKLOG_MESSAGES - 1, receiver.getQueueStats().deferred(), "deferred messages");
+    release.countDown();
+    boolean drained = done.await(BACKLOG_DRAIN_MS, TimeUnit.MILLISECONDS);
+    receiver.shutdown();
+    assertTrue(drained, "expected device backlog to drain promptly");
+  }
+
+  private EndpointConfiguration getBoundedConfig(boolean reversed, Overflow overflow) {
+    EndpointConfiguration config = getMessageConfig(reversed);
+    config.capacity = QUEUE_CAPACITY;
+    config.overflow = overflow;
+    return config;
+  }
+
+  /**
+   * Test that a full queue drops the oldest messages with the drop_oldest policy.
+   */
+  @Test
+  void boundedDropOldest() {
+    LocalMessagePipe receiver = new LocalMessagePipe(getBoundedConfig(true, Overflow.DROP_OLDEST));
+    LocalMessagePipe sender = new LocalMessagePipe(getBoundedConfig(false, Overflow.DROP_OLDEST));
+    for (int i = 0; i < OVERFLOW_MESSAGES; i++) {
+      Bundle bundle = new Bundle(MessagePipeTestBase.makeTestEnvelope(), new StateUpdate());
+      bundle.envelope.transactionId = Integer.toString(i);
+      sender.publish(bundle);
+    }
+    QueueStats stats = receiver.getQueueStats();
+    assertEquals(QUEUE_CAPACITY, stats.depth(), "queue depth");
+    assertEquals(QUEUE_CAPACITY, stats.capacity(), "queue capacity");
+    assertEquals(OVERFLOW_MESSAGES - QUEUE_CAPACITY, sender.getQueueStats().dropped(),
+        "dropped messages");
+    for (int i = OVERFLOW_MESSAGES - QUEUE_CAPACITY; i < OVERFLOW_MESSAGES; i++) {
+      assertEquals(Integer.toString(i), receiver.poll().envelope.transactionId, "received message");
+    }
+  }
+
+  /**
+   * Test that a full queue rejects new messages with the nack policy.
+   */
+  @Test
+  void boundedNack() {
+    LocalMessagePipe receiver = new LocalMessagePipe(getBoundedConfig(true, Overflow.NACK));
+    LocalMessagePipe sender = new LocalMessagePipe(getBoundedConfig(false, Overflow.NACK));
+    for (int i = 0; i < QUEUE_CAPACITY; i++) {
+      sender.publish(new Bundle(MessagePipeTestBase.makeTestEnvelope(), new StateUpdate()));
+    }
+    Bundle overflow = new Bundle(MessagePipeTestBase.makeTestEnvelope(), new StateUpdate());
+    assertThrows(RuntimeException.class, () -> sender.publish(overflow));
+    assertEquals(1, sender.getQueueStats().rejected(), "rejected messages");
+    assertEquals(QUEUE_CAPACITY, receiver.getQueueStats().depth(), "queue depth");
+  }
+
+  /**
+   * Test that a received message is materialized directly as its schema class when it strictly
+   * conforms, and as a generic map when it doesn't.
+   */
+  @Test
+  void receiveMaterialized() {
+    LocalMessagePipe receiver = new LocalMessagePipe(getMessageConfig(true));
+    Envelope envelope = MessagePipeTestBase.makeTestEnvelope();
+    envelope.subType = SubType.EVENT;
+    envelope.subFolder = SubFolder.POINTSET;
+
+    receiver.receiveMessage(JsonUtil.toStringMap(envelope), POINTSET_MESSAGE);
+    Bundle typed = receiver.poll();
+    assertTrue(typed.materialized, "message materialized on receipt");
+    assertTrue(typed.message instanceof PointsetEvent, "expected pointset event");
+    assertEquals(TEST_VERSION, ((PointsetEvent) typed.message).version, "message version");
+
+    receiver.receiveMessage(JsonUtil.toStringMap(envelope), NONCONFORMING_MESSAGE);
+    Bundle untyped = receiver.poll();
+    assertTrue(untyped.materialized, "message materialized on receipt");
+    assertTrue(untyped.message instanceof Map, "expected generic map");
+  }
+
   /**
    * Test that publishing an unexpected type of object results in an appropriate exception.
    */
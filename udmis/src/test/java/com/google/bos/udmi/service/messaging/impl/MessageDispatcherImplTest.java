@@ -6,10 +6,15 @@ import static com.google.bos.udmi.service.messaging.impl.MessagePipeTestBase.TES
 import static com.google.bos.udmi.service.messaging.impl.MessagePipeTestBase.makeTestEnvelope;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
 import com.google.bos.udmi.service.core.ProcessorTestBase;
 import com.google.bos.udmi.service.messaging.MessageDispatcher;
+import com.google.bos.udmi.service.messaging.MessageDispatcher.HandlerStats;
+import com.google.bos.udmi.service.messaging.impl.MessageBase.Bundle;
 import com.google.udmi.util.JsonUtil;
 import java.util.ArrayList;
 import java.util.List;
@@ -22,6 +27,9 @@ import org.junit.jupiter.api.Test;
 import udmi.schema.DiscoveryConfig;
 import udmi.schema.EndpointConfiguration;
 import udmi.schema.EndpointConfiguration.Protocol;
+import udmi.schema.Envelope;
+import udmi.schema.Envelope.SubFolder;
+import udmi.schema.Envelope.SubType;
 import udmi.schema.GatewayConfig;
 import udmi.schema.LocalnetModel;
 import udmi.schema.PointsetEvent;
@@ -81,6 +89,51 @@ public class MessageDispatcherImplTest {
     assertEquals(2, devNullCapture.size());
   }
 
+  @Test
+  public void handlerStats() {
+    MessageDispatcherImpl dispatcher = new TestingDispatcher();
+    dispatcher.registerHandler(GatewayConfig.class, message -> {
+      throw new RuntimeException("handler failure");
+    });
+    dispatcher.registerHandler(DiscoveryConfig.class, message -> {
+    });
+    getReversedDispatcher().publish(new GatewayConfig());
+    getReversedDispatcher().publish(new DiscoveryConfig());
+    getReversedDispatcher().publish(new DiscoveryConfig());
+    dispatcher.activate();
+    JsonUtil.safeSleep(ProcessorTestBase.ASYNC_PROCESSING_DELAY_MS);
+
+    HandlerStats gatewayStats = dispatcher.getHandlerStats().get(GatewayConfig.class);
+    assertEquals(1, gatewayStats.getCount(), "GatewayConfig count");
+    assertEquals(1, gatewayStats.getErrors(), "GatewayConfig errors");
+    HandlerStats discoveryStats = dispatcher.getHandlerStats().get(DiscoveryConfig.class);
+    assertEquals(2, discoveryStats.getCount(), "DiscoveryConfig count");
+    assertEquals(0, discoveryStats.getErrors(), "DiscoveryConfig errors");
+    assertEquals(2, discoveryStats.getLatency().getCount(), "DiscoveryConfig latency count");
+    assertNull(dispatcher.getHandlerStats().get(LocalnetModel.class), "LocalnetModel stats");
+  }
+
+  @Test
+  public void materializedHandoff() {
+    MessageDispatcherImpl dispatcher = new TestingDispatcher();
+    List<PointsetEvent> handled = new ArrayList<>();
+    dispatcher.registerHandler(PointsetEvent.class, handled::add);
+    Envelope envelope = makeTestEnvelope();
+    envelope.subType = SubType.EVENT;
+    envelope.subFolder = SubFolder.POINTSET;
+
+    // Messages from an in-process producer are copied, but freshly received ones are used as-is.
+    Bundle produced = new Bundle(envelope, new PointsetEvent());
+    dispatcher.processMessage(produced);
+    Bundle received = new Bundle(envelope, new PointsetEvent());
+    received.materialized = true;
+    dispatcher.processMessage(received);
+
+    assertEquals(2, handled.size(), "handled messages");
+    assertNotSame(produced.message, handled.get(0), "produced message copied");
+    assertSame(received.message, handled.get(1), "received message handed off");
+  }
+
   class TestingDispatcher extends MessageDispatcherImpl {
 
     public TestingDispatcher() {
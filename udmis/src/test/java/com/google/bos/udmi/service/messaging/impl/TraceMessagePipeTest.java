@@ -14,6 +14,7 @@ import com.google.bos.udmi.service.messaging.impl.MessageBase.Bundle;
 import com.google.udmi.util.JsonUtil;
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -39,7 +40,7 @@ public class TraceMessagePipeTest {
   private static final String DEVICE_TWO = "two";
   private static final String VALUE_ONE = "value1";
   private static final String VALUE_TWO = "value2";
-  private final List<Bundle> consumed = new ArrayList<>();
+  private final List<Bundle> consumed = Collections.synchronizedList(new ArrayList<>());
 
   @SuppressWarnings("unchecked")
   private Map<String, String> extractMessage(Bundle bundle) {
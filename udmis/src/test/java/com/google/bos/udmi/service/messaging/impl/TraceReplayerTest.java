@@ -0,0 +1,107 @@
+package com.google.bos.udmi.service.messaging.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.google.bos.udmi.service.messaging.impl.TraceReplayer.Replay;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for the trace replay engine.
+ */
+class TraceReplayerTest {
+
+  private static final int FILE_COUNT = 200;
+  private static final int PACED_COUNT = 5;
+  private static final long PUBLISH_INTERVAL_MS = 100;
+  private static final long HOUR_MS = TimeUnit.HOURS.toMillis(1);
+  private static final double REPLAY_SPEED = 4.0;
+  private static final long COMPLETION_TIMEOUT_SEC = 5;
+  private static final String BAD_FILE = "13";
+
+  private final List<String> received = new ArrayList<>();
+  private final CountDownLatch complete = new CountDownLatch(1);
+
+  private static List<File> makeFiles(int count) {
+    return IntStream.range(0, count).mapToObj(index -> new File(Integer.toString(index)))
+        .collect(Collectors.toList());
+  }
+
+  private static Replay slowDecode(File file) {
+    try {
+      Thread.sleep(ThreadLocalRandom.current().nextInt(3));
+    } catch (InterruptedException e) {
+      throw new RuntimeException(e);
+    }
+    return new Replay(Map.of(), file.getName(), null);
+  }
+
+  private static Function<File, Replay> timedDecoder(long intervalMs) {
+    return file -> new Replay(Map.of(), file.getName(),
+        new Date(Integer.parseInt(file.getName()) * intervalMs));
+  }
+
+  private TraceReplayer replay(List<File> files, Function<File, Replay> decoder, Double speed)
+      throws InterruptedException {
+    TraceReplayer replayer =
+        new TraceReplayer(decoder, replay -> received.add(replay.message()), speed);
+    replayer.start(files.iterator(), complete::countDown);
+    assertTrue(complete.await(COMPLETION_TIMEOUT_SEC, TimeUnit.SECONDS), "replay complete");
+    return replayer;
+  }
+
+  @Test
+  void orderedDelivery() throws InterruptedException {
+    List<File> files = makeFiles(FILE_COUNT);
+    TraceReplayer replayer = replay(files, TraceReplayerTest::slowDecode, null);
+
+    assertEquals(files.stream().map(File::getName).toList(), received, "replay order");
+    assertEquals(FILE_COUNT, replayer.getReplayed(), "replayed count");
+    assertEquals(0, replayer.getErrors(), "replay errors");
+    assertTrue(replayer.getRate() > 0, "replay rate");
+  }
+
+  @Test
+  void decodeErrors() throws InterruptedException {
+    List<File> files = makeFiles(FILE_COUNT);
+    TraceReplayer replayer = replay(files, file -> {
+      if (file.getName().equals(BAD_FILE)) {
+        throw new IllegalStateException("bad trace file");
+      }
+      return slowDecode(file);
+    }, null);
+
+    assertEquals(FILE_COUNT - 1, received.size(), "replayed messages");
+    assertEquals(FILE_COUNT - 1, replayer.getReplayed(), "replayed count");
+    assertEquals(1, replayer.getErrors(), "replay errors");
+  }
+
+  @Test
+  void pacedReplay() throws InterruptedException {
+    long startTime = System.currentTimeMillis();
+    replay(makeFiles(PACED_COUNT), timedDecoder(PUBLISH_INTERVAL_MS), REPLAY_SPEED);
+    long elapsed = System.currentTimeMillis() - startTime;
+
+    long expected = (long) ((PACED_COUNT - 1) * PUBLISH_INTERVAL_MS / REPLAY_SPEED);
+    assertTrue(elapsed >= expected, "paced replay took " + elapsed + "ms, expected " + expected);
+    assertEquals(PACED_COUNT, received.size(), "replayed messages");
+  }
+
+  @Test
+  void unpacedReplay() throws InterruptedException {
+    // Hours between messages, so this would never complete in time if it were paced.
+    replay(makeFiles(PACED_COUNT), timedDecoder(HOUR_MS), null);
+    assertEquals(PACED_COUNT, received.size(), "replayed messages");
+  }
+}
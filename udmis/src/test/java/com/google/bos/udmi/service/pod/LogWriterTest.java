@@ -0,0 +1,113 @@
+package com.google.bos.udmi.service.pod;
+
+import static com.google.udmi.util.JsonUtil.toMap;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.google.bos.udmi.service.pod.LogWriter.LogLine;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.Map;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import udmi.schema.BasePodConfiguration;
+import udmi.schema.Level;
+import udmi.schema.PodConfiguration;
+
+/**
+ * Tests for the log writer and log level handling.
+ */
+class LogWriterTest {
+
+  private static final int BUFFER_SIZE = 100;
+  private static final int LINE_COUNT = 10;
+  private static final long TEST_CONTEXT = 0xabcd1234L;
+
+  private final ByteArrayOutputStream outBytes = new ByteArrayOutputStream();
+  private final ByteArrayOutputStream errBytes = new ByteArrayOutputStream();
+
+  private LogWriter getWriter(int bufferSize, String logFormat) {
+    return new LogWriter(bufferSize, logFormat, new PrintStream(outBytes),
+        new PrintStream(errBytes));
+  }
+
+  private LogLine getLine(Level level, String message) {
+    return new LogLine(System.currentTimeMillis(), TEST_CONTEXT, level, "TestComponent", message);
+  }
+
+  @AfterEach
+  void resetLevel() {
+    ContainerBase.setLogLevel(Level.DEBUG);
+  }
+
+  @Test
+  void asyncJsonOutput() {
+    LogWriter writer = getWriter(BUFFER_SIZE, LogWriter.JSON_FORMAT);
+    for (int i = 0; i < LINE_COUNT; i++) {
+      writer.write(getLine(Level.INFO, "message " + i));
+    }
+    writer.write(getLine(Level.ERROR, "failure"));
+    writer.close();
+
+    String[] lines = outBytes.toString().split("\n");
+    assertEquals(LINE_COUNT, lines.length, "output lines");
+    Map<String, Object> first = toMap(lines[0]);
+    assertEquals("INFO", first.get("severity"), "first line severity");
+    assertEquals("message 0", first.get("message"), "first line message");
+    assertEquals("abcd1234", first.get("context"), "first line context");
+    assertEquals("TestComponent", first.get("component"), "first line component");
+    assertEquals("message 9", toMap(lines[LINE_COUNT - 1]).get("message"), "last line message");
+    assertEquals("failure", toMap(errBytes.toString().trim()).get("message"), "error message");
+    assertEquals(0, writer.getDropped(), "dropped lines");
+  }
+
+  @Test
+  void syncTextOutput() {
+    LogWriter writer = getWriter(0, null);
+    writer.write(getLine(Level.DEBUG, "hello"));
+    assertTrue(outBytes.toString().trim().endsWith(" abcd1234 D: TestComponent hello"),
+        "text log line");
+    writer.close();
+  }
+
+  @Test
+  void levelGating() {
+    ContainerBase.setLogLevel(Level.INFO);
+    assertFalse(ContainerBase.isLoggable(Level.DEBUG), "debug loggable");
+    assertTrue(ContainerBase.isLoggable(Level.INFO), "info loggable");
+    ContainerBase.setLogLevel(Level.TRACE);
+    assertTrue(ContainerBase.isLoggable(Level.TRACE), "trace loggable");
+  }
+
+  @Test
+  void unknownLevelIgnored() {
+    ContainerBase.setLogLevel(Level.INFO);
+    PodConfiguration config = new PodConfiguration();
+    config.base = new BasePodConfiguration();
+    config.base.log_level = "warn";
+    try {
+      new ContainerBase(config) {
+      };
+      assertTrue(ContainerBase.isLoggable(Level.INFO), "info loggable");
+      assertFalse(ContainerBase.isLoggable(Level.DEBUG), "debug loggable");
+    } finally {
+      ContainerBase.resetForTest();
+    }
+  }
+
+  @Test
+  void overflowWarningKeepsOrder() {
+    LogWriter writer = getWriter(1, null);
+    for (int i = 0; i < LINE_COUNT; i++) {
+      writer.write(getLine(Level.WARNING, "warning " + i));
+    }
+    writer.close();
+
+    String[] lines = errBytes.toString().split("\n");
+    assertEquals(LINE_COUNT, lines.length, "warning lines");
+    for (int i = 0; i < LINE_COUNT; i++) {
+      assertTrue(lines[i].endsWith(" warning " + i), "warning line " + i);
+    }
+  }
+}
@@ -0,0 +1,80 @@
+package com.google.bos.udmi.service.pod;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.google.udmi.util.LatencyHistogram;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for metrics collection and serving.
+ */
+class MetricsWriterTest {
+
+  private static final int SAMPLE_COUNT = 100;
+  private static final long SAMPLE_MICROS = 250;
+
+  @Test
+  void groupedOutput() {
+    MetricsWriter metrics = new MetricsWriter();
+    metrics.withLabels("component", "state").counter("received_total", "Received", 10);
+    metrics.withLabels("component", "target").gauge("depth", "Depth", 3, "pipe", "a\"b");
+    metrics.withLabels("component", "target").counter("received_total", "Received", 20);
+
+    List<String> lines = Arrays.asList(metrics.toString().split("\n"));
+    assertEquals(List.of(
+        "# HELP udmis_received_total Received",
+        "# TYPE udmis_received_total counter",
+        "udmis_received_total{component=\"state\"} 10",
+        "udmis_received_total{component=\"target\"} 20",
+        "# HELP udmis_depth Depth",
+        "# TYPE udmis_depth gauge",
+        "udmis_depth{component=\"target\",pipe=\"a\\\"b\"} 3"), lines, "metrics output");
+  }
+
+  @Test
+  void latencySummary() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (int i = 0; i < SAMPLE_COUNT; i++) {
+      histogram.record(SAMPLE_MICROS);
+    }
+    MetricsWriter metrics = new MetricsWriter();
+    metrics.latency("handler_seconds", "Handler time", histogram, "handler", "Test");
+
+    String output = metrics.toString();
+    assertTrue(output.contains("# TYPE udmis_handler_seconds summary\n"), "summary type");
+    assertTrue(output.contains("udmis_handler_seconds_count{handler=\"Test\"} 100\n"),
+        "summary count");
+    assertTrue(output.contains("udmis_handler_seconds_sum{handler=\"Test\"} 0.025\n"),
+        "summary sum");
+    String quantilePrefix = "udmis_handler_seconds{handler=\"Test\",quantile=\"0.99\"} ";
+    String quantileLine = Arrays.stream(output.split("\n"))
+        .filter(line -> line.startsWith(quantilePrefix)).findFirst().orElseThrow();
+    double quantile = Double.parseDouble(quantileLine.substring(quantilePrefix.length()));
+    assertEquals(SAMPLE_MICROS / 1e6, quantile, SAMPLE_MICROS / 1e7, "sub-millisecond quantile");
+  }
+
+  @Test
+  void serveMetrics() throws Exception {
+    MetricsServer server = new MetricsServer(0, () -> "udmis_test 1\n");
+    server.start();
+    try {
+      URL url = new URL("http://localhost:" + server.getPort() + MetricsServer.METRICS_PATH);
+      HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+      assertEquals(200, connection.getResponseCode(), "response code");
+      assertTrue(connection.getContentType().startsWith("text/plain"), "content type");
+      try (InputStream input = connection.getInputStream()) {
+        assertEquals("udmis_test 1\n", new String(input.readAllBytes(), StandardCharsets.UTF_8),
+            "response body");
+      }
+    } finally {
+      server.stop();
+    }
+  }
+}
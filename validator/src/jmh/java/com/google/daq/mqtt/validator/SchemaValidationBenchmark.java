@@ -0,0 +1,88 @@
+package com.google.daq.mqtt.validator;
+
+import static com.google.udmi.util.JsonUtil.OBJECT_MAPPER;
+import static java.lang.String.format;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.github.fge.jsonschema.core.exceptions.ProcessingException;
+import com.github.fge.jsonschema.core.load.configuration.LoadingConfiguration;
+import com.github.fge.jsonschema.core.report.ProcessingReport;
+import com.github.fge.jsonschema.main.JsonSchema;
+import com.github.fge.jsonschema.main.JsonSchemaFactory;
+import com.google.udmi.util.JsonUtil;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Schema validation of a message, with the full schema validator versus the compiled fast path
+ * (which falls back to the full validator for messages it doesn't pass). Both include the
+ * conversion of the message map to a tree, as done for every message by the validator. Payloads
+ * are from the schema tests; the errors payload measures the cost of the fallback.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SchemaValidationBenchmark {
+
+  private static final File SCHEMA_ROOT = new File("../schema");
+  private static final String SCHEMA_PAYLOADS = "../tests/schemas/%s.json";
+  private static final String FILE_URL_PREFIX = "file:";
+
+  @Param({"event_pointset/example", "event_pointset/smartprimus", "event_pointset/errors",
+      "state/example", "state/gateway", "event_system/example"})
+  public String payload;
+
+  private JsonSchema schema;
+  private CompiledSchema compiled;
+  private Map<String, Object> message;
+
+  private static JsonSchema loadSchema(File schemaFile) throws Exception {
+    return JsonSchemaFactory.newBuilder()
+        .setLoadingConfiguration(LoadingConfiguration.newBuilder()
+            .addScheme("file", source -> Files.newInputStream(new File(SCHEMA_ROOT,
+                source.toString().substring(FILE_URL_PREFIX.length())).toPath()))
+            .freeze())
+        .freeze()
+        .getJsonSchema(OBJECT_MAPPER.readTree(schemaFile));
+  }
+
+  /**
+   * Load the schema, in both forms, and the payload message.
+   */
+  @Setup(Level.Trial)
+  public void setup() throws Exception {
+    String schemaName = payload.substring(0, payload.indexOf('/'));
+    File schemaFile = new File(SCHEMA_ROOT, schemaName + ".json");
+    schema = loadSchema(schemaFile);
+    compiled = CompiledSchema.compile(SCHEMA_ROOT, schemaFile);
+    message = JsonUtil.loadMap(new File(format(SCHEMA_PAYLOADS, payload)));
+  }
+
+  @Benchmark
+  public ProcessingReport fullValidator() throws ProcessingException {
+    return schema.validate(OBJECT_MAPPER.valueToTree(message), true);
+  }
+
+  @Benchmark
+  public Object compiledFastPath() throws ProcessingException {
+    JsonNode jsonNode = OBJECT_MAPPER.valueToTree(message);
+    return compiled.conforms(jsonNode) ? jsonNode : schema.validate(jsonNode, true);
+  }
+}
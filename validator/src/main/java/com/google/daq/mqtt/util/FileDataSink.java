@@ -7,8 +7,7 @@ import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.databind.util.ISO8601DateFormat;
 import com.google.daq.mqtt.validator.Validator.MessageBundle;
 import java.io.File;
-import java.io.PrintWriter;
-import java.nio.file.Files;
+import java.nio.charset.StandardCharsets;
 import java.util.Map;
 import java.util.TreeMap;
 
@@ -29,14 +28,17 @@ public class FileDataSink implements MessagePublisher {
           .setSerializationInclusion(Include.NON_NULL);
   private final File reportFile;
   private final File outBaseDir;
+  private final OutputFileWriter outputWriter;
 
   /**
    * New instance.
    *
-   * @param outBaseDir directory root for output files
+   * @param outBaseDir   directory root for output files
+   * @param outputWriter writer for the output files
    */
-  public FileDataSink(File outBaseDir) {
+  public FileDataSink(File outBaseDir, OutputFileWriter outputWriter) {
     this.outBaseDir = outBaseDir;
+    this.outputWriter = outputWriter;
     reportFile = new File(outBaseDir, REPORT_JSON_FILENAME);
     System.err.println("Generating report file in " + reportFile.getAbsolutePath());
     reportFile.delete();
@@ -49,12 +51,8 @@ public class FileDataSink implements MessagePublisher {
     if (outFile == null) {
       return null;
     }
-    System.err.println("Updating " + outFile.getAbsolutePath());
-    try (PrintWriter out = new PrintWriter(Files.newOutputStream(outFile.toPath()))) {
-      out.println(data);
-    } catch (Exception e) {
-      throw new RuntimeException("While writing output file " + outFile.getAbsolutePath(), e);
-    }
+    // Results are written in the background, with only the latest for each file kept.
+    outputWriter.write(outFile, (data + System.lineSeparator()).getBytes(StandardCharsets.UTF_8));
     return null;
   }
 
@@ -69,7 +67,6 @@ public class FileDataSink implements MessagePublisher {
 
   private File getOutputFile(String deviceId, String subType, String subFolder, String suffix) {
     File deviceDir = getDeviceDir(deviceId);
-    deviceDir.mkdirs();
     String folderSuffix = (subFolder == null || "update".equals(subFolder)) ? "" : "_" + subFolder;
     return new File(deviceDir, String.format("%s%s.%s", subType, folderSuffix, suffix));
   }
@@ -95,6 +92,7 @@ public class FileDataSink implements MessagePublisher {
 
   @Override
   public void close() {
+    outputWriter.flush();
   }
 
   @Override
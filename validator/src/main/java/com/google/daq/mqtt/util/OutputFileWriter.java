@@ -0,0 +1,193 @@
+package com.google.daq.mqtt.util;
+
+import static com.google.udmi.util.GeneralUtils.friendlyStackTrace;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Writer for output files that does the file I/O in batches on a background thread, so it doesn't
+ * hold up message processing. Pending writes are keyed by file: writing a file again before it's
+ * hit the disk replaces the pending contents, so only the last write wins. The number of pending
+ * files is bounded, and once it's full, writes of new files block until the writer catches up.
+ * Until it's started, and after it's closed, files are written synchronously by the caller.
+ */
+public class OutputFileWriter {
+
+  private static final double NANOS_PER_MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+  private final String name;
+  private final int capacity;
+  private final Map<File, PendingWrite> pending = new LinkedHashMap<>();
+  private final AtomicLong filesWritten = new AtomicLong();
+  private final AtomicLong writesCoalesced = new AtomicLong();
+  private final AtomicLong writeErrors = new AtomicLong();
+  private final AtomicLong totalLatencyNanos = new AtomicLong();
+  private final AtomicLong maxLatencyNanos = new AtomicLong();
+  private Thread writerThread;
+  private boolean writing;
+
+  /**
+   * New instance.
+   *
+   * @param name     name of the writer, for the background thread and stats
+   * @param capacity maximum number of files pending before writes block
+   */
+  public OutputFileWriter(String name, int capacity) {
+    this.name = name;
+    this.capacity = capacity;
+  }
+
+  /**
+   * Start writing files on a background thread.
+   */
+  public synchronized void start() {
+    if (writerThread == null) {
+      writerThread = new Thread(this::writeLoop, name);
+      writerThread.setDaemon(true);
+      writerThread.start();
+    }
+  }
+
+  /**
+   * Write the contents to the given file, creating its directory as needed.
+   */
+  public void write(File file, byte[] contents) {
+    PendingWrite write = new PendingWrite(contents, System.nanoTime());
+    synchronized (this) {
+      while (writerThread != null && pending.size() >= capacity && !pending.containsKey(file)) {
+        waitForWriter();
+      }
+      if (writerThread != null) {
+        if (pending.put(file, write) != null) {
+          writesCoalesced.incrementAndGet();
+        }
+        notifyAll();
+        return;
+      }
+    }
+    writeFile(file, write);
+  }
+
+  /**
+   * Wait until everything written so far is on disk.
+   */
+  public synchronized void flush() {
+    while (writing || !pending.isEmpty()) {
+      waitForWriter();
+    }
+  }
+
+  /**
+   * Flush any pending files and stop the background thread. Later writes are done synchronously.
+   */
+  public void close() {
+    Thread stopping;
+    synchronized (this) {
+      flush();
+      stopping = writerThread;
+      writerThread = null;
+      notifyAll();
+    }
+    if (stopping != null) {
+      try {
+        stopping.join();
+      } catch (InterruptedException e) {
+        throw new RuntimeException("While waiting for output writer " + name, e);
+      }
+      System.err.println(getStats());
+    }
+  }
+
+  public long getFilesWritten() {
+    return filesWritten.get();
+  }
+
+  public long getWritesCoalesced() {
+    return writesCoalesced.get();
+  }
+
+  public long getWriteErrors() {
+    return writeErrors.get();
+  }
+
+  /**
+   * Get the mean latency from a write request until its file is on disk.
+   */
+  public double getMeanLatencyMs() {
+    long files = filesWritten.get() + writeErrors.get();
+    return files == 0 ? 0 : totalLatencyNanos.get() / NANOS_PER_MS / files;
+  }
+
+  /**
+   * Get the maximum latency from a write request until its file is on disk.
+   */
+  public double getMaxLatencyMs() {
+    return maxLatencyNanos.get() / NANOS_PER_MS;
+  }
+
+  /**
+   * Get a one-line summary of the writer counters.
+   */
+  public String getStats() {
+    return String.format("Output writer %s: %d files written, %d coalesced, %d errors, "
+            + "latency mean %.2fms max %.2fms", name, getFilesWritten(), getWritesCoalesced(),
+        getWriteErrors(), getMeanLatencyMs(), getMaxLatencyMs());
+  }
+
+  private void waitForWriter() {
+    try {
+      wait();
+    } catch (InterruptedException e) {
+      throw new RuntimeException("While waiting for output writer " + name, e);
+    }
+  }
+
+  private void writeLoop() {
+    while (true) {
+      Map<File, PendingWrite> batch;
+      synchronized (this) {
+        while (pending.isEmpty() && writerThread == Thread.currentThread()) {
+          waitForWriter();
+        }
+        if (pending.isEmpty()) {
+          return;
+        }
+        batch = new LinkedHashMap<>(pending);
+        pending.clear();
+        writing = true;
+        notifyAll();
+      }
+      try {
+        batch.forEach(this::writeFile);
+      } finally {
+        synchronized (this) {
+          writing = false;
+          notifyAll();
+        }
+      }
+    }
+  }
+
+  private void writeFile(File file, PendingWrite write) {
+    try {
+      file.getParentFile().mkdirs();
+      Files.write(file.toPath(), write.contents);
+      filesWritten.incrementAndGet();
+    } catch (Exception e) {
+      writeErrors.incrementAndGet();
+      System.err.printf("Error writing output file %s: %s%n", file.getAbsolutePath(),
+          friendlyStackTrace(e));
+    }
+    long latency = System.nanoTime() - write.requested;
+    totalLatencyNanos.addAndGet(latency);
+    maxLatencyNanos.accumulateAndGet(latency, Math::max);
+  }
+
+  private record PendingWrite(byte[] contents, long requested) {
+  }
+}
@@ -0,0 +1,625 @@
+package com.google.daq.mqtt.validator;
+
+import static com.google.udmi.util.GeneralUtils.ifNotNullThen;
+import static com.google.udmi.util.JsonUtil.OBJECT_MAPPER;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import java.io.File;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.AbstractMap.SimpleEntry;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Precompiled validation plan for a JSON schema, used as a fast path in front of the full schema
+ * validator. The checks split into structural ones (types, required and allowed properties), which
+ * only depend on the shape of a message, and value-level ones (patterns, formats, enums, ranges).
+ * The first time a message shape is seen, the structural checks are run and the value-level checks
+ * that apply to it are collected, and cached against a hash of the shape. Messages with a known
+ * shape, like the stream of pointset events from one device, then only get the value-level checks.
+ *
+ * <p>The plan only ever says whether a message definitely conforms: anything it rejects, or can't
+ * evaluate exactly, should go through the full validator, which also produces the error report.
+ * Schemas that use keywords the plan doesn't handle aren't compiled at all.
+ */
+class CompiledSchema {
+
+  static final int MAX_SHAPES = 1024;
+  private static final String FILE_REF_PREFIX = "file:";
+  private static final String DATE_TIME_FORMAT = "date-time";
+  private static final Set<String> UNSUPPORTED_KEYWORDS = ImmutableSet.of("additionalItems",
+      "allOf", "anyOf", "dependencies", "exclusiveMaximum", "exclusiveMinimum", "maxItems",
+      "minItems", "minLength", "minProperties", "not", "uniqueItems");
+  private static final Set<String> INEXACT_KEYWORDS = ImmutableSet.of("$ref", "format");
+  private static final Pattern DATE_TIME_PATTERN = Pattern.compile(
+      "^(\\d{4})-(\\d{2})-(\\d{2})T(\\d{2}):(\\d{2}):(\\d{2})"
+          + "(\\.\\d{1,12})?(Z|[+-]\\d{2}:\\d{2})$");
+  private static final HashFunction SHAPE_HASH = Hashing.murmur3_128();
+  // Distinct instance (not the shared empty list) that's compared by identity.
+  private static final List<ValueCheck> STRUCTURE_FAILED = Collections.unmodifiableList(
+      new ArrayList<>());
+
+  private final Rule root;
+  private final Map<HashCode, List<ValueCheck>> shapes = new ConcurrentHashMap<>();
+
+  private CompiledSchema(Rule root) {
+    this.root = root;
+  }
+
+  /**
+   * Compile the given schema file, resolving file references relative to the schema root. Returns
+   * null if the schema uses keywords that aren't supported by the fast path.
+   */
+  static CompiledSchema compile(File schemaRoot, File schemaFile) {
+    try {
+      Compiler compiler = new Compiler(schemaRoot);
+      return new CompiledSchema(compiler.compileFile(schemaFile.getName()));
+    } catch (NotCompilableException e) {
+      return null;
+    } catch (Exception e) {
+      throw new RuntimeException("While compiling schema " + schemaFile.getAbsolutePath(), e);
+    }
+  }
+
+  /**
+   * Check if the given message definitely conforms to the schema. A false result means the
+   * message needs the full validator to tell.
+   */
+  boolean conforms(JsonNode message) {
+    HashCode shape = shapeHash(message);
+    if (shape == null) {
+      return false;
+    }
+    List<ValueCheck> checks = shapes.get(shape);
+    if (checks == null) {
+      List<ValueCheck> collected = new ArrayList<>();
+      checks = checkStructure(root, message, new ArrayList<>(), collected)
+          ? ImmutableList.copyOf(collected) : STRUCTURE_FAILED;
+      if (shapes.size() >= MAX_SHAPES) {
+        shapes.clear();
+      }
+      shapes.put(shape, checks);
+    }
+    if (checks == STRUCTURE_FAILED) {
+      return false;
+    }
+    for (ValueCheck check : checks) {
+      if (!check.test(message)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  int getShapeCount() {
+    return shapes.size();
+  }
+
+  /**
+   * Hash the structure of a message (field names, array sizes, and value types) but not the
+   * values themselves. Returns null if the message contains anything other than plain JSON.
+   */
+  private static HashCode shapeHash(JsonNode message) {
+    Hasher hasher = SHAPE_HASH.newHasher();
+    return hashShape(message, hasher) ? hasher.hash() : null;
+  }
+
+  private static boolean hashShape(JsonNode node, Hasher hasher) {
+    JsonType type = JsonType.of(node);
+    if (type == null) {
+      return false;
+    }
+    hasher.putInt(type.ordinal());
+    if (type == JsonType.OBJECT) {
+      hasher.putInt(node.size());
+      Iterator<Entry<String, JsonNode>> fields = node.fields();
+      while (fields.hasNext()) {
+        Entry<String, JsonNode> field = fields.next();
+        hasher.putInt(field.getKey().length()).putUnencodedChars(field.getKey());
+        if (!hashShape(field.getValue(), hasher)) {
+          return false;
+        }
+      }
+    } else if (type == JsonType.ARRAY) {
+      hasher.putInt(node.size());
+      for (JsonNode element : node) {
+        if (!hashShape(element, hasher)) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Run the structural checks for a node, collecting the value-level checks to run on it (and
+   * its children) along the way.
+   */
+  private static boolean checkStructure(Rule rule, JsonNode node, List<Object> path,
+      List<ValueCheck> checks) {
+    JsonType type = JsonType.of(node);
+    if (rule.types != null && !(rule.types.contains(type)
+        || type == JsonType.INTEGER && rule.types.contains(JsonType.NUMBER))) {
+      return false;
+    }
+    if (rule.hasValueChecks()) {
+      checks.add(new ValueCheck(path.toArray(), rule));
+    }
+    if (type == JsonType.OBJECT) {
+      return checkObject(rule, node, path, checks);
+    }
+    if (type == JsonType.ARRAY && rule.items != null) {
+      for (int i = 0; i < node.size(); i++) {
+        path.add(i);
+        boolean passed = checkStructure(rule.items, node.get(i), path, checks);
+        path.remove(path.size() - 1);
+        if (!passed) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  private static boolean checkObject(Rule rule, JsonNode node, List<Object> path,
+      List<ValueCheck> checks) {
+    if (rule.maxProperties != null && node.size() > rule.maxProperties) {
+      return false;
+    }
+    for (String required : rule.required) {
+      if (!node.has(required)) {
+        return false;
+      }
+    }
+    Iterator<Entry<String, JsonNode>> fields = node.fields();
+    while (fields.hasNext()) {
+      Entry<String, JsonNode> field = fields.next();
+      String name = field.getKey();
+      List<Rule> matched = new ArrayList<>();
+      ifNotNullThen(rule.properties.get(name), matched::add);
+      for (Entry<Pattern, Rule> pattern : rule.patternProperties) {
+        if (pattern.getKey().matcher(name).find()) {
+          matched.add(pattern.getValue());
+        }
+      }
+      if (matched.isEmpty()) {
+        if (!rule.additionalAllowed) {
+          return false;
+        }
+        ifNotNullThen(rule.additionalProperties, matched::add);
+      }
+      path.add(name);
+      for (Rule fieldRule : matched) {
+        if (!checkStructure(fieldRule, field.getValue(), path, checks)) {
+          return false;
+        }
+      }
+      path.remove(path.size() - 1);
+    }
+    return true;
+  }
+
+  /**
+   * Fully check a node against a rule, both structure and values, without using the shape cache.
+   */
+  private static boolean checkNode(Rule rule, JsonNode node) {
+    List<ValueCheck> checks = new ArrayList<>();
+    if (!checkStructure(rule, node, new ArrayList<>(), checks)) {
+      return false;
+    }
+    return checks.stream().allMatch(check -> check.test(node));
+  }
+
+  private static boolean checkValues(Rule rule, JsonNode node) {
+    if (rule.enumValues != null && rule.enumValues.stream().noneMatch(
+        value -> value.equals(node) || isNumericallyEqual(value, node))) {
+      return false;
+    }
+    if (node.isTextual()) {
+      String text = node.textValue();
+      if (rule.maxLength != null && text.codePointCount(0, text.length()) > rule.maxLength) {
+        return false;
+      }
+      if (rule.pattern != null && !rule.pattern.matcher(text).find()) {
+        return false;
+      }
+      if (rule.dateTime && !isDateTime(text)) {
+        return false;
+      }
+    }
+    if (node.isNumber() && !checkNumber(rule, node)) {
+      return false;
+    }
+    if (rule.oneOf != null) {
+      return rule.oneOf.stream().filter(branch -> checkNode(branch, node)).count() == 1;
+    }
+    return true;
+  }
+
+  private static boolean checkNumber(Rule rule, JsonNode node) {
+    try {
+      BigDecimal value = node.decimalValue();
+      return (rule.minimum == null || value.compareTo(rule.minimum) >= 0)
+          && (rule.maximum == null || value.compareTo(rule.maximum) <= 0)
+          && (rule.multipleOf == null || value.remainder(rule.multipleOf).signum() == 0);
+    } catch (NumberFormatException e) {
+      return false;
+    }
+  }
+
+  private static boolean isNumericallyEqual(JsonNode value, JsonNode node) {
+    return value.isNumber() && node.isNumber()
+        && value.decimalValue().compareTo(node.decimalValue()) == 0;
+  }
+
+  /**
+   * Check for an RFC 3339 date-time, with an optional fraction of up to 12 digits and either a Z
+   * or numeric offset. Anything unusual is rejected and left for the full validator to judge.
+   */
+  private static boolean isDateTime(String text) {
+    Matcher matcher = DATE_TIME_PATTERN.matcher(text);
+    if (!matcher.matches()) {
+      return false;
+    }
+    try {
+      LocalDateTime.of(Integer.parseInt(matcher.group(1)), Integer.parseInt(matcher.group(2)),
+          Integer.parseInt(matcher.group(3)), Integer.parseInt(matcher.group(4)),
+          Integer.parseInt(matcher.group(5)), Integer.parseInt(matcher.group(6)));
+      String offset = matcher.group(8);
+      if (!offset.equals("Z")) {
+        ZoneOffset.of(offset);
+      }
+      return true;
+    } catch (Exception e) {
+      return false;
+    }
+  }
+
+  /**
+   * Instance types, as distinguished by the schema type keyword.
+   */
+  private enum JsonType {
+    OBJECT("object"),
+    ARRAY("array"),
+    STRING("string"),
+    INTEGER("integer"),
+    NUMBER("number"),
+    BOOLEAN("boolean"),
+    NULL("null");
+
+    private final String value;
+
+    JsonType(String value) {
+      this.value = value;
+    }
+
+    static JsonType fromValue(String value) {
+      for (JsonType type : values()) {
+        if (type.value.equals(value)) {
+          return type;
+        }
+      }
+      throw new NotCompilableException("Unknown type " + value);
+    }
+
+    static JsonType of(JsonNode node) {
+      switch (node.getNodeType()) {
+        case OBJECT:
+          return OBJECT;
+        case ARRAY:
+          return ARRAY;
+        case STRING:
+          return STRING;
+        case NUMBER:
+          return node.isIntegralNumber() ? INTEGER : NUMBER;
+        case BOOLEAN:
+          return BOOLEAN;
+        case NULL:
+          return NULL;
+        default:
+          return null;
+      }
+    }
+  }
+
+  /**
+   * Compiled form of one schema (sub)tree. Fields are filled in by the compiler, and never
+   * changed after that. Rules can be shared, or cyclic, through references.
+   */
+  private static class Rule {
+
+    Set<JsonType> types;
+    Map<String, Rule> properties = new HashMap<>();
+    List<Entry<Pattern, Rule>> patternProperties = new ArrayList<>();
+    boolean additionalAllowed = true;
+    Rule additionalProperties;
+    List<String> required = ImmutableList.of();
+    Integer maxProperties;
+    Rule items;
+    List<JsonNode> enumValues;
+    Pattern pattern;
+    boolean dateTime;
+    Integer maxLength;
+    BigDecimal minimum;
+    BigDecimal maximum;
+    BigDecimal multipleOf;
+    List<Rule> oneOf;
+
+    boolean hasValueChecks() {
+      return enumValues != null || pattern != null || dateTime || maxLength != null
+          || minimum != null || maximum != null || multipleOf != null || oneOf != null;
+    }
+  }
+
+  /**
+   * Value-level checks for the node at a given path in a message.
+   */
+  private static class ValueCheck {
+
+    private final Object[] path;
+    private final Rule rule;
+
+    ValueCheck(Object[] path, Rule rule) {
+      this.path = path;
+      this.rule = rule;
+    }
+
+    boolean test(JsonNode message) {
+      JsonNode node = message;
+      for (Object element : path) {
+        node = element instanceof Integer index ? node.get(index) : node.get((String) element);
+        if (node == null) {
+          return false;
+        }
+      }
+      return checkValues(rule, node);
+    }
+  }
+
+  /**
+   * Compiler from schema JSON to rules. Each reference target is compiled once, so shared and
+   * recursive references end up pointing at the same rule.
+   */
+  private static class Compiler {
+
+    private final File schemaRoot;
+    private final Map<String, JsonNode> documents = new HashMap<>();
+    private final Map<String, Rule> refs = new HashMap<>();
+    private final Set<String> chained = new HashSet<>();
+
+    Compiler(File schemaRoot) {
+      this.schemaRoot = schemaRoot;
+    }
+
+    Rule compileFile(String fileName) throws Exception {
+      return compileRef(FILE_REF_PREFIX + fileName);
+    }
+
+    /**
+     * Compile a reference to a file, optionally with a JSON pointer into it.
+     */
+    private Rule compileRef(String ref) throws Exception {
+      if (!ref.startsWith(FILE_REF_PREFIX)) {
+        throw new NotCompilableException("Unsupported reference " + ref);
+      }
+      String[] parts = ref.substring(FILE_REF_PREFIX.length()).split("#", 2);
+      String pointer = parts.length > 1 ? parts[1] : "";
+      String key = parts[0] + "#" + pointer;
+      Rule rule = refs.get(key);
+      if (rule == null) {
+        JsonNode schema = getDocument(parts[0]).at(pointer);
+        if (schema.isMissingNode()) {
+          throw new NotCompilableException("Unresolved reference " + ref);
+        }
+        if (schema.has("$ref")) {
+          if (!chained.add(key)) {
+            throw new NotCompilableException("Reference cycle " + ref);
+          }
+          rule = compileRef(schema.get("$ref").asText());
+          refs.put(key, rule);
+        } else {
+          rule = new Rule();
+          refs.put(key, rule);
+          compileInto(rule, schema, false);
+        }
+      }
+      return rule;
+    }
+
+    private JsonNode getDocument(String fileName) throws Exception {
+      JsonNode document = documents.get(fileName);
+      if (document == null) {
+        document = OBJECT_MAPPER.readTree(new File(schemaRoot, fileName));
+        documents.put(fileName, document);
+      }
+      return document;
+    }
+
+    private Rule compile(JsonNode schema, boolean exact) throws Exception {
+      if (schema.has("$ref")) {
+        // Anything alongside a reference is ignored by the validator, so do the same here.
+        if (exact) {
+          throw new NotCompilableException("Reference in exact context");
+        }
+        return compileRef(schema.get("$ref").asText());
+      }
+      Rule rule = new Rule();
+      compileInto(rule, schema, exact);
+      return rule;
+    }
+
+    /**
+     * Compile a schema into the given rule. In an exact context (the branches of a oneOf, where
+     * a false negative could turn into a false positive) only exactly-evaluated keywords are
+     * allowed.
+     */
+    private void compileInto(Rule rule, JsonNode schema, boolean exact) throws Exception {
+      if (!schema.isObject()) {
+        throw new NotCompilableException("Non-object schema");
+      }
+      Iterator<String> keywords = schema.fieldNames();
+      while (keywords.hasNext()) {
+        String keyword = keywords.next();
+        if (UNSUPPORTED_KEYWORDS.contains(keyword)
+            || exact && INEXACT_KEYWORDS.contains(keyword)) {
+          throw new NotCompilableException("Unsupported keyword " + keyword);
+        }
+      }
+      compileKeywords(rule, schema, exact);
+    }
+
+    private void compileKeywords(Rule rule, JsonNode schema, boolean exact) throws Exception {
+      JsonNode type = schema.get("type");
+      if (type != null) {
+        List<JsonType> types = new ArrayList<>();
+        if (type.isArray()) {
+          type.forEach(entry -> types.add(JsonType.fromValue(entry.asText())));
+        } else {
+          types.add(JsonType.fromValue(type.asText()));
+        }
+        rule.types = ImmutableSet.copyOf(types);
+      }
+      JsonNode properties = schema.get("properties");
+      if (properties != null) {
+        Iterator<Entry<String, JsonNode>> fields = properties.fields();
+        while (fields.hasNext()) {
+          Entry<String, JsonNode> field = fields.next();
+          rule.properties.put(field.getKey(), compile(field.getValue(), exact));
+        }
+      }
+      JsonNode patternProperties = schema.get("patternProperties");
+      if (patternProperties != null) {
+        Iterator<Entry<String, JsonNode>> fields = patternProperties.fields();
+        while (fields.hasNext()) {
+          Entry<String, JsonNode> field = fields.next();
+          rule.patternProperties.add(new SimpleEntry<>(compilePattern(field.getKey()),
+              compile(field.getValue(), exact)));
+        }
+      }
+      JsonNode additional = schema.get("additionalProperties");
+      if (additional != null) {
+        if (additional.isBoolean()) {
+          rule.additionalAllowed = additional.booleanValue();
+        } else {
+          rule.additionalProperties = compile(additional, exact);
+        }
+      }
+      JsonNode required = schema.get("required");
+      if (required != null) {
+        List<String> names = new ArrayList<>();
+        required.forEach(name -> names.add(name.asText()));
+        rule.required = ImmutableList.copyOf(names);
+      }
+      if (schema.has("maxProperties")) {
+        rule.maxProperties = schema.get("maxProperties").intValue();
+      }
+      JsonNode items = schema.get("items");
+      if (items != null) {
+        if (!items.isObject()) {
+          throw new NotCompilableException("Tuple items");
+        }
+        rule.items = compile(items, exact);
+      }
+      compileValueKeywords(rule, schema, exact);
+    }
+
+    private void compileValueKeywords(Rule rule, JsonNode schema, boolean exact)
+        throws Exception {
+      JsonNode enumValues = schema.get("enum");
+      if (enumValues != null) {
+        List<JsonNode> values = new ArrayList<>();
+        enumValues.forEach(values::add);
+        rule.enumValues = ImmutableList.copyOf(values);
+      }
+      if (schema.has("pattern")) {
+        rule.pattern = compilePattern(schema.get("pattern").asText());
+      }
+      // Other formats aren't checked by the plan, so their schemas aren't compiled.
+      JsonNode format = schema.get("format");
+      if (format != null) {
+        if (!DATE_TIME_FORMAT.equals(format.asText())) {
+          throw new NotCompilableException("Unsupported format " + format.asText());
+        }
+        rule.dateTime = true;
+      }
+      if (schema.has("maxLength")) {
+        rule.maxLength = schema.get("maxLength").intValue();
+      }
+      rule.minimum = ifNumber(schema.get("minimum"));
+      rule.maximum = ifNumber(schema.get("maximum"));
+      rule.multipleOf = ifNumber(schema.get("multipleOf"));
+      JsonNode oneOf = schema.get("oneOf");
+      if (oneOf != null) {
+        List<Rule> branches = new ArrayList<>();
+        for (JsonNode branch : oneOf) {
+          branches.add(compile(branch, true));
+        }
+        rule.oneOf = ImmutableList.copyOf(branches);
+      }
+    }
+
+    private static BigDecimal ifNumber(JsonNode node) {
+      return node == null ? null : node.decimalValue();
+    }
+
+    /**
+     * Compile a schema regex with ECMA semantics for {@code $}, which (unlike Java's) doesn't
+     * match before a trailing line terminator. Every unescaped {@code $} outside a character
+     * class is rewritten to {@code \z}. Nested classes are Java-only, so those are left to the
+     * full validator.
+     */
+    private static Pattern compilePattern(String regex) {
+      StringBuilder rewritten = new StringBuilder(regex.length());
+      boolean inClass = false;
+      for (int i = 0; i < regex.length(); i++) {
+        char c = regex.charAt(i);
+        if (c == '\\' && i + 1 < regex.length()) {
+          rewritten.append(c).append(regex.charAt(++i));
+          continue;
+        }
+        if (c == '[') {
+          if (inClass) {
+            throw new NotCompilableException("Nested character class in " + regex);
+          }
+          inClass = true;
+        } else if (c == ']') {
+          inClass = false;
+        } else if (c == '$' && !inClass) {
+          rewritten.append("\\z");
+          continue;
+        }
+        rewritten.append(c);
+      }
+      return Pattern.compile(rewritten.toString());
+    }
+  }
+
+  /**
+   * Signals a schema construct the fast path doesn't handle, so the schema is left to the full
+   * validator.
+   */
+  private static class NotCompilableException extends RuntimeException {
+
+    NotCompilableException(String message) {
+      super(message);
+    }
+  }
+}
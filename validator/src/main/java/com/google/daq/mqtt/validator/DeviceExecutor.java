@@ -0,0 +1,133 @@
+package com.google.daq.mqtt.validator;
+
+import static com.google.udmi.util.GeneralUtils.friendlyStackTrace;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Executor that runs tasks serially for each device, and in parallel across devices. Tasks are
+ * queued per device, and a bounded pool of workers each drains a batch of tasks for one device
+ * before yielding to others, so a device's tasks always run in submission order and never run
+ * concurrently with each other. The total backlog is bounded: once it's full, submit blocks until
+ * the workers catch up. With a parallelism of zero, tasks are run synchronously by the caller.
+ */
+class DeviceExecutor {
+
+  static final int BATCH_SIZE = 32;
+  private static final int BACKLOG_PER_WORKER = 1000;
+  private static final long SHUTDOWN_TIMEOUT_SEC = 60;
+
+  private final ExecutorService executor;
+  private final Semaphore backlog;
+  private final Map<String, Lane> lanes = new ConcurrentHashMap<>();
+
+  DeviceExecutor(int parallelism) {
+    executor = parallelism > 0 ? Executors.newFixedThreadPool(parallelism) : null;
+    backlog = new Semaphore(Math.max(parallelism, 1) * BACKLOG_PER_WORKER);
+  }
+
+  /**
+   * Submit a task to run for the given device, after any that were previously submitted for it.
+   */
+  void submit(String deviceId, Runnable task) {
+    if (executor == null || executor.isShutdown()) {
+      task.run();
+      return;
+    }
+    try {
+      backlog.acquire();
+    } catch (InterruptedException e) {
+      throw new RuntimeException("While waiting for device backlog", e);
+    }
+    Lane lane = lanes.computeIfAbsent(String.valueOf(deviceId), Lane::new);
+    lane.tasks.add(task);
+    schedule(lane);
+  }
+
+  /**
+   * Stop accepting new tasks, and wait for those already queued to complete.
+   */
+  void shutdown() {
+    if (executor == null) {
+      return;
+    }
+    executor.shutdown();
+    try {
+      executor.awaitTermination(SHUTDOWN_TIMEOUT_SEC, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      throw new RuntimeException("While waiting for device executor shutdown", e);
+    }
+    // Anything that was queued after the workers were done (racing with shutdown) is run inline.
+    lanes.values().forEach(this::drainAll);
+  }
+
+  private void schedule(Lane lane) {
+    if (lane.scheduled.compareAndSet(false, true)) {
+      try {
+        executor.execute(() -> drain(lane));
+      } catch (RejectedExecutionException e) {
+        lane.scheduled.set(false);
+        drainAll(lane);
+      }
+    }
+  }
+
+  private void drain(Lane lane) {
+    try {
+      synchronized (lane) {
+        for (int i = 0; i < BATCH_SIZE; i++) {
+          Runnable task = lane.tasks.poll();
+          if (task == null) {
+            break;
+          }
+          execute(lane, task);
+        }
+      }
+    } finally {
+      lane.scheduled.set(false);
+      if (!lane.tasks.isEmpty()) {
+        schedule(lane);
+      }
+    }
+  }
+
+  private void drainAll(Lane lane) {
+    // Locked against a worker that's still draining (after a shutdown timeout), to stay serial.
+    synchronized (lane) {
+      Runnable task;
+      while ((task = lane.tasks.poll()) != null) {
+        execute(lane, task);
+      }
+    }
+  }
+
+  private void execute(Lane lane, Runnable task) {
+    try {
+      task.run();
+    } catch (Exception e) {
+      System.err.printf("Error executing task for %s: %s%n", lane.deviceId, friendlyStackTrace(e));
+    } finally {
+      backlog.release();
+    }
+  }
+
+  private static class Lane {
+
+    final String deviceId;
+    final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    final AtomicBoolean scheduled = new AtomicBoolean();
+
+    Lane(String deviceId) {
+      this.deviceId = deviceId;
+    }
+  }
+}
@@ -15,13 +15,24 @@ import com.google.daq.mqtt.util.MessagePublisher;
 import com.google.daq.mqtt.validator.Validator.ErrorContainer;
 import com.google.daq.mqtt.validator.Validator.MessageBundle;
 import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.PriorityQueue;
 import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
@@ -43,20 +54,23 @@ public class MessageReadingClient implements MessagePublisher {
   private static final Pattern filenamePattern = Pattern.compile("[0-9]+_([a-z]+)_([a-z]+)\\.json");
   private static final String TRACE_FILE_SUFFIX = ".json";
   public static final String MSG_SOURCE = "msgSource";
+  static final int PREFETCH_DEPTH = 2;
+  private static final int PREFETCH_THREADS = Runtime.getRuntime().availableProcessors();
   private final File messageDir;
   private final String registryId;
-  private final Map<String, List<String>> deviceMessageLists = new HashMap<>();
-  private final Map<String, Map<String, Object>> deviceMessages = new HashMap<>();
-  private final Map<String, Map<String, String>> deviceAttributes = new HashMap<>();
-  private final Map<String, String> deviceNextTimestamp = new HashMap<>();
-  private final Map<String, String> deviceLastTimestamp = new HashMap<>();
+  private final PriorityQueue<DeviceStream> deviceStreams = new PriorityQueue<>(
+      Comparator.comparing((DeviceStream stream) -> stream.timestamp)
+          .thenComparing(stream -> stream.deviceId));
+  private final ExecutorService prefetcher =
+      Executors.newFixedThreadPool(PREFETCH_THREADS, getDaemonThreadFactory());
   private final List<OutputBundle> outputMessages = new ArrayList<>();
   int messageCount;
   private boolean isActive;
-  private String lastValidTimestamp;
 
   /**
-   * Create a new client.
+   * Create a new client. The first messages for every device are read (in parallel) up front, to
+   * determine the replay order, and after that each device's messages are read ahead of replay by
+   * a limited depth, so memory use doesn't depend on the length of the trace.
    *
    * @param registryId registry to use for attribute creation
    * @param dirStr     directory containing message trace
@@ -64,53 +78,42 @@ public class MessageReadingClient implements MessagePublisher {
   public MessageReadingClient(String registryId, String dirStr) {
     this.registryId = registryId;
     messageDir = new File(dirStr);
-    if (!messageDir.exists() || !messageDir.isDirectory()) {
-      throw new RuntimeException("Message directory not found " + messageDir.getAbsolutePath());
+    try {
+      if (!messageDir.exists() || !messageDir.isDirectory()) {
+        throw new RuntimeException("Message directory not found " + messageDir.getAbsolutePath());
+      }
+      File devicesDir = new File(messageDir, "devices");
+      List<DeviceStream> streams = Arrays.stream(Objects.requireNonNull(devicesDir.list()))
+          .map(DeviceStream::new)
+          .collect(Collectors.toList());
+      streams.forEach(DeviceStream::prefetch);
+      streams.stream().filter(DeviceStream::advance).forEach(deviceStreams::add);
+      updateActive();
+    } catch (RuntimeException e) {
+      prefetcher.shutdownNow();
+      throw e;
     }
-    File devicesDir = new File(messageDir, "devices");
-    Arrays.stream(Objects.requireNonNull(devicesDir.list())).forEach(this::prepDevice);
   }
 
-  private void prepDevice(String deviceId) {
-    File deviceDir = new File(messageDir, "devices/" + deviceId);
-    List<String> messages = Arrays.stream(Objects.requireNonNull(deviceDir.list()))
-        .filter(filename -> filename.endsWith(TRACE_FILE_SUFFIX))
-        .sorted()
-        .collect(Collectors.toList());
-    deviceMessageLists.put(deviceId, messages);
-    prepNextMessage(deviceId);
+  private static ThreadFactory getDaemonThreadFactory() {
+    return runnable -> {
+      Thread thread = Executors.defaultThreadFactory().newThread(runnable);
+      thread.setDaemon(true);
+      return thread;
+    };
   }
 
-  private void prepNextMessage(String deviceId) {
-    try {
-      if (deviceMessageLists.get(deviceId).isEmpty()) {
-        return;
-      }
-      String msgName = deviceMessageLists.get(deviceId).remove(0);
-      Map<String, Object> msgObj = getMessageObject(deviceId, msgName);
-      Map<String, String> attributes = makeAttributes(deviceId, msgName, msgObj);
-      deviceAttributes.put(deviceId, attributes);
-      deviceMessages.put(deviceId, msgObj);
-      if (!msgObj.containsKey("timestamp")) {
-        msgObj.put("timestamp", deviceLastTimestamp.get(deviceId));
-      }
-      String timestamp = Objects.requireNonNull((String) msgObj.get("timestamp"));
-      deviceNextTimestamp.put(deviceId, timestamp);
-    } finally {
-      isActive = !deviceMessages.isEmpty();
+  private void updateActive() {
+    isActive = !deviceStreams.isEmpty();
+    if (!isActive) {
+      prefetcher.shutdown();
     }
   }
 
-  private Map<String, Object> getMessageObject(String deviceId, String msgName) {
-    File deviceDir = new File(messageDir, "devices/" + deviceId);
-    File msgFile = new File(deviceDir, msgName);
-    try {
-      @SuppressWarnings("unchecked")
-      Map<String, Object> treeMap = OBJECT_MAPPER.readValue(msgFile, TreeMap.class);
-      return treeMap;
-    } catch (Exception e) {
-      return new ErrorContainer(e, "Reading from " + msgFile, lastValidTimestamp);
-    }
+  private Map<String, Object> readMessage(File msgFile) throws IOException {
+    @SuppressWarnings("unchecked")
+    Map<String, Object> treeMap = OBJECT_MAPPER.readValue(msgFile, TreeMap.class);
+    return treeMap;
   }
 
   private Map<String, String> makeAttributes(String deviceId, String msgName,
@@ -163,6 +166,7 @@ public class MessageReadingClient implements MessagePublisher {
   @Override
   public void close() {
     isActive = false;
+    prefetcher.shutdownNow();
   }
 
   @Override
@@ -177,33 +181,97 @@ public class MessageReadingClient implements MessagePublisher {
 
   @Override
   public Validator.MessageBundle takeNextMessage(QuerySpeed speed) {
-    final String deviceId = getNextDevice();
-    final Map<String, Object> message = deviceMessages.remove(deviceId);
-    final Map<String, String> attributes = deviceAttributes.remove(deviceId);
-    lastValidTimestamp = deviceNextTimestamp.remove(deviceId);
-    deviceLastTimestamp.put(deviceId, lastValidTimestamp);
-    prepNextMessage(deviceId);
+    DeviceStream stream = deviceStreams.remove();
+    final String deviceId = stream.deviceId;
+    final Map<String, Object> message = stream.message;
+    final Map<String, String> attributes = stream.attributes;
+    final String timestamp = stream.timestamp;
+    stream.lastTimestamp = timestamp;
+    if (stream.advance()) {
+      deviceStreams.add(stream);
+    }
+    updateActive();
     String messageName = attributes.get(MSG_SOURCE);
-    System.out.printf("Replay %s %s for %s%n", messageName, lastValidTimestamp, deviceId);
+    System.out.printf("Replay %s %s for %s%n", messageName, timestamp, deviceId);
     messageCount++;
     MessageBundle bundle = new MessageBundle();
     bundle.message = message;
     bundle.attributes = attributes;
-    bundle.timestamp = lastValidTimestamp;
+    bundle.timestamp = timestamp;
     return bundle;
   }
 
-  private String getNextDevice() {
-    String nextDevice = deviceNextTimestamp.keySet().iterator().next();
-    String nextTimestamp = deviceNextTimestamp.get(nextDevice);
-    for (String deviceId : deviceNextTimestamp.keySet()) {
-      String deviceTimestamp = deviceNextTimestamp.get(deviceId);
-      if (deviceTimestamp.compareTo(nextTimestamp) < 0) {
-        nextDevice = deviceId;
-        nextTimestamp = deviceTimestamp;
+  /**
+   * Stream of the messages for one device, in file order, with the head message ready to replay.
+   * Streams are merged by the timestamp of their head messages (ties broken by device id).
+   */
+  private class DeviceStream {
+
+    final String deviceId;
+    final File deviceDir;
+    final Iterator<String> msgNames;
+    final Deque<Prefetch> prefetched = new ArrayDeque<>();
+    String lastTimestamp;
+    Map<String, Object> message;
+    Map<String, String> attributes;
+    String timestamp;
+
+    DeviceStream(String deviceId) {
+      this.deviceId = deviceId;
+      deviceDir = new File(messageDir, "devices/" + deviceId);
+      msgNames = Arrays.stream(Objects.requireNonNull(deviceDir.list()))
+          .filter(filename -> filename.endsWith(TRACE_FILE_SUFFIX))
+          .sorted()
+          .iterator();
+    }
+
+    /**
+     * Start reading the next messages in the background, up to the prefetch depth.
+     */
+    void prefetch() {
+      while (prefetched.size() < PREFETCH_DEPTH && msgNames.hasNext()) {
+        String msgName = msgNames.next();
+        File msgFile = new File(deviceDir, msgName);
+        Future<Map<String, Object>> read = prefetcher.submit(() -> readMessage(msgFile));
+        prefetched.add(new Prefetch(msgName, msgFile, read));
       }
     }
-    return nextDevice;
+
+    /**
+     * Move on to the next message, returning false if there are no more.
+     */
+    boolean advance() {
+      Prefetch next = prefetched.poll();
+      if (next == null) {
+        message = null;
+        attributes = null;
+        timestamp = null;
+        return false;
+      }
+      prefetch();
+      Map<String, Object> msgObj = getMessageObject(next);
+      attributes = makeAttributes(deviceId, next.msgName, msgObj);
+      message = msgObj;
+      if (!msgObj.containsKey("timestamp")) {
+        msgObj.put("timestamp", lastTimestamp);
+      }
+      timestamp = Objects.requireNonNull((String) msgObj.get("timestamp"));
+      return true;
+    }
+
+    private Map<String, Object> getMessageObject(Prefetch prefetch) {
+      try {
+        return prefetch.message.get();
+      } catch (ExecutionException e) {
+        Exception cause = e.getCause() instanceof Exception ex ? ex : e;
+        return new ErrorContainer(cause, "Reading from " + prefetch.msgFile, lastTimestamp);
+      } catch (InterruptedException e) {
+        throw new RuntimeException("Interrupted reading " + prefetch.msgFile, e);
+      }
+    }
+  }
+
+  private record Prefetch(String msgName, File msgFile, Future<Map<String, Object>> message) {
   }
 
   static class OutputBundle {
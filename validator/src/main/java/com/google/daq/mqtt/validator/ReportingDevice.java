@@ -305,6 +305,23 @@ public class ReportingDevice {
     entries.removeIf(entry -> entry.timestamp.before(getThreshold(now)));
   }
 
+  /**
+   * Get when the reported status of this device will next change on its own, without any new
+   * messages, as its oldest error expires or it's no longer seen recently.
+   *
+   * @param now current instant
+   * @return instant of the next change, or null if there won't be one
+   */
+  public Instant getNextExpiry(Instant now) {
+    Date earliest = seenRecently(now) ? lastSeen : null;
+    for (Entry entry : entries) {
+      if (earliest == null || entry.timestamp.before(earliest)) {
+        earliest = entry.timestamp;
+      }
+    }
+    return earliest == null ? null : earliest.toInstant().plusSeconds(THRESHOLD_SEC);
+  }
+
   private Date getThreshold(Instant now) {
     return Date.from(now.minusSeconds(THRESHOLD_SEC));
   }
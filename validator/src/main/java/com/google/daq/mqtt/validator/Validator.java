@@ -53,11 +53,13 @@ import com.google.daq.mqtt.util.ExceptionMap.ErrorTree;
 import com.google.daq.mqtt.util.FileDataSink;
 import com.google.daq.mqtt.util.MessagePublisher;
 import com.google.daq.mqtt.util.MessagePublisher.QuerySpeed;
+import com.google.daq.mqtt.util.OutputFileWriter;
 import com.google.daq.mqtt.util.PubSubClient;
 import com.google.daq.mqtt.util.ValidationException;
 import com.google.udmi.util.Common;
 import com.google.udmi.util.GeneralUtils;
 import com.google.udmi.util.JsonUtil;
+import com.google.udmi.util.LatencyHistogram;
 import com.google.udmi.util.MessageUpgrader;
 import com.google.udmi.util.SiteModel;
 import java.io.File;
@@ -73,16 +75,19 @@ import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.MissingFormatArgumentException;
+import java.util.NavigableSet;
 import java.util.Scanner;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
@@ -91,6 +96,7 @@ import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 import java.util.stream.StreamSupport;
 import org.apache.commons.io.FileUtils;
+import org.jetbrains.annotations.TestOnly;
 import udmi.schema.Category;
 import udmi.schema.DeviceValidationEvent;
 import udmi.schema.Envelope.SubFolder;
@@ -153,14 +159,26 @@ public class Validator {
   private static final String POINTSET_SUBFOLDER = "pointset";
   private static final Date START_TIME = new Date();
   private static final int TIMESTAMP_JITTER_SEC = 60;
-  private final Map<String, ReportingDevice> reportingDevices = new TreeMap<>();
-  private final Set<String> extraDevices = new TreeSet<>();
-  private final Set<String> processedDevices = new TreeSet<>();
-  private final Set<String> base64Devices = new TreeSet<>();
-  private final Set<String> ignoredRegistries = new HashSet();
+  private static final int OUTPUT_BUFFER_FILES = 10000;
+  private final Map<String, ReportingDevice> reportingDevices = new ConcurrentHashMap<>();
+  private final Set<String> dirtyDevices = ConcurrentHashMap.newKeySet();
+  // Maintained validation report, only touched by the (synchronized) report generation.
+  private final Map<String, DeviceValidationEvent> deviceEvents = new TreeMap<>();
+  private final Set<String> correctDevices = new TreeSet<>();
+  private final Set<String> errorDevices = new TreeSet<>();
+  private final Map<String, Instant> deviceExpiries = new HashMap<>();
+  private final NavigableSet<DeviceExpiry> expiryQueue = new TreeSet<>(
+      Comparator.comparing(DeviceExpiry::at).thenComparing(DeviceExpiry::deviceId));
+  private final LatencyHistogram reportLatency = new LatencyHistogram();
+  private final Set<String> extraDevices = new ConcurrentSkipListSet<>();
+  private final Set<String> processedDevices = ConcurrentHashMap.newKeySet();
+  private final Set<String> base64Devices = new ConcurrentSkipListSet<>();
+  private final Set<String> ignoredRegistries = ConcurrentHashMap.newKeySet();
   private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
-  private final Map<String, AtomicInteger> deviceMessageIndex = new HashMap<>();
+  private final Map<String, AtomicInteger> deviceMessageIndex = new ConcurrentHashMap<>();
   private final List<MessagePublisher> dataSinks = new ArrayList<>();
+  private final OutputFileWriter outputWriter =
+      new OutputFileWriter("validator-output", OUTPUT_BUFFER_FILES);
   private final Set<String> targetDevices;
   private ImmutableSet<String> expectedDevices;
   private File outBaseDir;
@@ -169,6 +187,7 @@ public class Validator {
   private ExecutionConfiguration config;
   private MessagePublisher client;
   private Map<String, JsonSchema> schemaMap;
+  private Map<String, CompiledSchema> compiledSchemas;
   private File traceDir;
   private boolean simulatedMessages;
   private Instant mockNow = null;
@@ -373,7 +392,7 @@ public class Validator {
 
     outBaseDir = new File(baseDir, "out");
     outBaseDir.mkdirs();
-    dataSinks.add(new FileDataSink(outBaseDir));
+    dataSinks.add(new FileDataSink(outBaseDir, outputWriter));
   }
 
   private ExecutionConfiguration resolveSiteConfig(ExecutionConfiguration config, String siteDir) {
@@ -410,6 +429,7 @@ public class Validator {
           reportingDevice.addError(e, Category.VALIDATION_DEVICE_SCHEMA, "loading device");
         }
         reportingDevices.put(device, reportingDevice);
+        dirtyDevices.add(device);
       }
       System.err.println("Loaded " + reportingDevices.size() + " expected devices");
     } catch (Exception e) {
@@ -438,6 +458,7 @@ public class Validator {
           "Schema directory/file not found: " + schemaFile.getAbsolutePath());
     }
     schemaMap = getSchemaMap();
+    compiledSchemas = getCompiledSchemas();
   }
 
   private Map<String, JsonSchema> getSchemaMap() {
@@ -455,6 +476,19 @@ public class Validator {
     return schemaMap;
   }
 
+  private Map<String, CompiledSchema> getCompiledSchemas() {
+    Map<String, CompiledSchema> compiledSchemas = new HashMap<>();
+    for (File schemaFile : makeFileList(null, schemaRoot)) {
+      String fullName = schemaFile.getName();
+      String schemaName = fullName.substring(0, fullName.length() - JSON_SUFFIX.length());
+      ifNotNullThen(CompiledSchema.compile(schemaRoot, schemaFile),
+          compiled -> compiledSchemas.put(schemaName, compiled));
+    }
+    System.err.printf("Compiled %d of %d schemas for fast-path validation%n",
+        compiledSchemas.size(), schemaMap.size());
+    return compiledSchemas;
+  }
+
   private String getRegistryId() {
     if (config == null) {
       return null;
@@ -482,19 +516,27 @@ public class Validator {
     ScheduledFuture<?> reportSender =
         simulatedMessages ? null : executor.scheduleAtFixedRate(this::processValidationReport,
             REPORT_INTERVAL_SEC, REPORT_INTERVAL_SEC, TimeUnit.SECONDS);
+    // Simulated messages are processed strictly in trace order, since they drive a mock clock.
+    DeviceExecutor deviceExecutor =
+        new DeviceExecutor(simulatedMessages ? 0 : Runtime.getRuntime().availableProcessors());
+    outputWriter.start();
     try {
       while (client.isActive()) {
         try {
-          validateMessage(client.takeNextMessage(QuerySpeed.SHORT));
+          ifNotNullThen(client.takeNextMessage(QuerySpeed.SHORT),
+              bundle -> deviceExecutor.submit(bundle.attributes.get("deviceId"),
+                  () -> validateMessage(bundle)));
         } catch (Exception e) {
           e.printStackTrace();
         }
       }
     } finally {
+      deviceExecutor.shutdown();
       System.err.println("Message loop complete");
       if (reportSender != null) {
         reportSender.cancel(true);
       }
+      outputWriter.close();
     }
   }
 
@@ -505,7 +547,11 @@ public class Validator {
     }
   }
 
-  protected synchronized void validateMessage(MessageBundle nullable) {
+  /**
+   * Validate a single message. Messages for different devices can be validated concurrently, but
+   * those for any one device must be validated serially, in order.
+   */
+  protected void validateMessage(MessageBundle nullable) {
     ifNotNullThen(nullable, bundle -> validateMessage(bundle.message, bundle.attributes));
   }
 
@@ -530,35 +576,45 @@ public class Validator {
       mockNow = Instant.parse((String) message.get(TIMESTAMP_KEY));
       ReportingDevice.setMockNow(mockNow);
     }
-    ReportingDevice reportingDevice = validateMessageCore(message, attributes);
-    if (reportingDevice != null) {
-      Date now = simulatedMessages ? Date.from(mockNow) : new Date();
-      sendValidationResult(attributes, reportingDevice, now);
+    ReportingDevice device = reportingDevices.computeIfAbsent(deviceId, ReportingDevice::new);
+    // Only contended by the periodic report, since a device's messages are handled serially.
+    synchronized (device) {
+      if (validateMessageCore(device, message, attributes)) {
+        Date now = simulatedMessages ? Date.from(mockNow) : new Date();
+        sendValidationResult(attributes, device, now);
+      }
     }
+    dirtyDevices.add(deviceId);
     if (simulatedMessages) {
       processValidationReport();
     }
   }
 
-  private void validateMessage(JsonSchema schema, Object message) {
+  /**
+   * Validate a message against the named schema. Messages that pass the compiled fast path are
+   * done, and anything else goes through the full schema validator for a definitive report.
+   */
+  private void validateMessage(String schemaName, Object message) {
     try {
-      validateJsonNode(schema, OBJECT_MAPPER.valueToTree(message));
+      JsonNode jsonNode = OBJECT_MAPPER.valueToTree(message);
+      CompiledSchema compiled = compiledSchemas.get(schemaName);
+      if (compiled == null || !compiled.conforms(jsonNode)) {
+        validateJsonNode(schemaMap.get(schemaName), jsonNode);
+      }
     } catch (Exception e) {
       throw new RuntimeException("While converting to json node: " + e.getMessage(), e);
     }
   }
 
-  private ReportingDevice validateMessageCore(
+  private boolean validateMessageCore(ReportingDevice device,
       Map<String, Object> message,
       Map<String, String> attributes) {
 
     String deviceId = attributes.get("deviceId");
-    ReportingDevice device = reportingDevices.computeIfAbsent(deviceId, ReportingDevice::new);
-
     try {
       String schemaName = messageSchema(attributes);
       if (!device.markMessageType(schemaName, getNow())) {
-        return null;
+        return false;
       }
 
       System.err.printf(
@@ -579,7 +635,7 @@ public class Validator {
       System.err.printf("Error processing %s: %s%n", deviceId, friendlyStackTrace(e));
       device.addError(e, attributes, Category.VALIDATION_DEVICE_RECEIVE);
     }
-    return device;
+    return true;
   }
 
   /**
@@ -654,7 +710,7 @@ public class Validator {
     }
 
     try {
-      validateMessage(schemaMap.get(ENVELOPE_SCHEMA_ID), attributes);
+      validateMessage(ENVELOPE_SCHEMA_ID, attributes);
     } catch (Exception e) {
       System.err.println("Error validating attributes: " + friendlyStackTrace(e));
       device.addError(e, attributes, Category.VALIDATION_DEVICE_RECEIVE);
@@ -662,7 +718,7 @@ public class Validator {
 
     if (schemaMap.containsKey(schemaName)) {
       try {
-        validateMessage(schemaMap.get(schemaName), message);
+        validateMessage(schemaName, message);
       } catch (Exception e) {
         System.err.printf("Error validating schema %s: %s%n", schemaName,
             friendlyStackTrace(e));
@@ -737,13 +793,9 @@ public class Validator {
         key -> new AtomicInteger());
     int index = messageIndex.incrementAndGet();
     String filename = format("%03d_%s.json", index, typeFolderPairKey(type, folder));
-    File deviceDir = new File(traceDir, deviceId);
-    File messageFile = new File(deviceDir, filename);
+    File messageFile = new File(new File(traceDir, deviceId), filename);
     try {
-      deviceDir.mkdir();
-      String timestamp = (String) message.get(TIMESTAMP_KEY);
-      System.out.printf("Capture %s at %s for %s%n", filename, timestamp, deviceId);
-      OBJECT_MAPPER.writeValue(messageFile, message);
+      outputWriter.write(messageFile, OBJECT_MAPPER.writeValueAsBytes(message));
     } catch (Exception e) {
       throw new RuntimeException("While writing message file " + messageFile.getAbsolutePath(), e);
     }
@@ -784,24 +836,19 @@ public class Validator {
       String schemaName)
       throws IOException {
 
-    File deviceDir = makeDeviceDir(deviceId);
+    File deviceDir = new File(outBaseDir, format(DEVICE_FILE_FORMAT, deviceId));
 
     File messageFile = new File(deviceDir, format(MESSAGE_FILE_FORMAT, schemaName));
 
     // OBJECT_MAPPER can't handle an Exception class object, so do a swap-and-restore.
     Exception saved = (Exception) message.get(EXCEPTION_KEY);
     message.put(EXCEPTION_KEY, ifNotNullGet(saved, GeneralUtils::friendlyStackTrace));
-    OBJECT_MAPPER.writeValue(messageFile, message);
+    byte[] messageBytes = OBJECT_MAPPER.writeValueAsBytes(message);
     message.put(EXCEPTION_KEY, saved);
+    outputWriter.write(messageFile, messageBytes);
 
     File attributesFile = new File(deviceDir, format(ATTRIBUTE_FILE_FORMAT, schemaName));
-    OBJECT_MAPPER.writeValue(attributesFile, attributes);
-  }
-
-  private File makeDeviceDir(String deviceId) {
-    File deviceDir = new File(outBaseDir, format(DEVICE_FILE_FORMAT, deviceId));
-    deviceDir.mkdirs();
-    return deviceDir;
+    outputWriter.write(attributesFile, OBJECT_MAPPER.writeValueAsBytes(attributes));
   }
 
   private String messageSchema(Map<String, String> attributes) {
@@ -831,53 +878,89 @@ public class Validator {
     }
   }
 
-  private void processValidationReportRaw() {
-    ValidationSummary summary = new ValidationSummary();
-    summary.extra_devices = new ArrayList<>(extraDevices);
+  /**
+   * Generate a validation report as of the given (mock) time, without any new messages. A full
+   * report summarizes every device again, which is what the incremental report should match.
+   */
+  @TestOnly
+  synchronized void processValidationReport(Instant now, boolean full) {
+    mockNow = now;
+    ReportingDevice.setMockNow(now);
+    if (full) {
+      dirtyDevices.addAll(reportingDevices.keySet());
+    }
+    processValidationReportRaw();
+  }
 
-    summary.correct_devices = new ArrayList<>();
-    summary.error_devices = new ArrayList<>();
+  /**
+   * Generate the validation report. Only devices that have had messages since the last report, or
+   * whose status is due to change with time (as errors expire), are summarized again: everything
+   * else is carried over from the previous report.
+   */
+  private void processValidationReportRaw() {
+    long startNanos = System.nanoTime();
+    Instant now = getNow();
+    Set<String> updated = new TreeSet<>(dirtyDevices);
+    dirtyDevices.removeAll(updated);
+    while (!expiryQueue.isEmpty() && !expiryQueue.first().at().isAfter(now)) {
+      updated.add(expiryQueue.first().deviceId());
+      scheduleExpiry(expiryQueue.first().deviceId(), null);
+    }
 
-    Map<String, DeviceValidationEvent> devices = new TreeMap<>();
     Collection<String> targets = targetDevices.isEmpty() ? expectedDevices : targetDevices;
-    for (String deviceId : reportingDevices.keySet()) {
+    for (String deviceId : updated) {
       ReportingDevice deviceInfo = reportingDevices.get(deviceId);
-      deviceInfo.expireEntries(getNow());
-      boolean expected = targets.contains(deviceId);
-      if (deviceInfo.hasErrors()) {
-        DeviceValidationEvent event = getValidationEvent(devices, deviceInfo);
-        event.status = ReportingDevice.getSummaryEntry(deviceInfo.getErrors(null, null));
-        if (expected) {
-          summary.error_devices.add(deviceId);
-        } else {
-          event.status.category = Category.VALIDATION_DEVICE_EXTRA;
-          event.status.level = Level.WARNING.value();
-        }
-      } else if (deviceInfo.seenRecently(getNow())) {
-        DeviceValidationEvent event = getValidationEvent(devices, deviceInfo);
-        event.status = ReportingDevice.getSummaryEntry(deviceInfo.getErrors(null, null));
-        if (expected) {
-          summary.correct_devices.add(deviceId);
-        } else {
-          event.status.category = Category.VALIDATION_DEVICE_EXTRA;
-          event.status.level = Level.WARNING.value();
-        }
+      synchronized (deviceInfo) {
+        summarizeDevice(deviceInfo, targets.contains(deviceId), now);
       }
     }
 
-    summary.missing_devices = new ArrayList(targets);
-    summary.missing_devices.removeAll(summary.error_devices);
-    summary.missing_devices.removeAll(summary.correct_devices);
+    ValidationSummary summary = new ValidationSummary();
+    summary.extra_devices = new ArrayList<>(extraDevices);
+    summary.correct_devices = new ArrayList<>(correctDevices);
+    summary.error_devices = new ArrayList<>(errorDevices);
+    summary.missing_devices = new ArrayList<>(targets);
+    summary.missing_devices.removeAll(errorDevices);
+    summary.missing_devices.removeAll(correctDevices);
+
+    sendValidationReport(makeValidationReport(summary, deviceEvents));
+    reportLatency.recordSince(startNanos);
+    if (!simulatedMessages) {
+      System.err.printf("Validation report for %d devices (%d updated) in %dms, %s%n",
+          reportingDevices.size(), updated.size(),
+          TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos), reportLatency);
+    }
+  }
 
-    sendValidationReport(makeValidationReport(summary, devices));
+  private void summarizeDevice(ReportingDevice deviceInfo, boolean expected, Instant now) {
+    String deviceId = deviceInfo.getDeviceId();
+    deviceInfo.expireEntries(now);
+    deviceEvents.remove(deviceId);
+    correctDevices.remove(deviceId);
+    errorDevices.remove(deviceId);
+    boolean hasErrors = deviceInfo.hasErrors();
+    if (hasErrors || deviceInfo.seenRecently(now)) {
+      DeviceValidationEvent event = new DeviceValidationEvent();
+      event.last_seen = deviceInfo.getLastSeen();
+      event.status = ReportingDevice.getSummaryEntry(deviceInfo.getErrors(null, null));
+      if (expected) {
+        (hasErrors ? errorDevices : correctDevices).add(deviceId);
+      } else {
+        event.status.category = Category.VALIDATION_DEVICE_EXTRA;
+        event.status.level = Level.WARNING.value();
+      }
+      deviceEvents.put(deviceId, event);
+    }
+    scheduleExpiry(deviceId, deviceInfo.getNextExpiry(now));
   }
 
-  private DeviceValidationEvent getValidationEvent(Map<String, DeviceValidationEvent> devices,
-      ReportingDevice deviceInfo) {
-    DeviceValidationEvent deviceValidationEvent = devices.computeIfAbsent(deviceInfo.getDeviceId(),
-        key -> new DeviceValidationEvent());
-    deviceValidationEvent.last_seen = deviceInfo.getLastSeen();
-    return deviceValidationEvent;
+  private void scheduleExpiry(String deviceId, Instant expiry) {
+    ifNotNullThen(deviceExpiries.remove(deviceId),
+        previous -> expiryQueue.remove(new DeviceExpiry(previous, deviceId)));
+    if (expiry != null) {
+      deviceExpiries.put(deviceId, expiry);
+      expiryQueue.add(new DeviceExpiry(expiry, deviceId));
+    }
   }
 
   private Instant getNow() {
@@ -1101,6 +1184,9 @@ public class Validator {
     }
   }
 
+  private record DeviceExpiry(Instant at, String deviceId) {
+  }
+
   class RelativeDownloader implements URIDownloader {
 
     private static final String FILE_URL_PREFIX = "file:";
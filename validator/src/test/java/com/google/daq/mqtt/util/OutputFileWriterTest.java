@@ -0,0 +1,74 @@
+package com.google.daq.mqtt.util;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import org.junit.Test;
+
+/**
+ * Tests for the background output file writer.
+ */
+public class OutputFileWriterTest {
+
+  private static final int WRITE_COUNT = 1000;
+  private static final int FILE_COUNT = 10;
+
+  private static File makeOutDir() throws IOException {
+    return Files.createTempDirectory("out").toFile();
+  }
+
+  private static String read(File file) throws IOException {
+    return Files.readString(file.toPath());
+  }
+
+  @Test
+  public void synchronousUntilStarted() throws IOException {
+    OutputFileWriter writer = new OutputFileWriter("test", 1);
+    File outFile = new File(makeOutDir(), "devices/AHU-1/event_pointset.out");
+    writer.write(outFile, "first".getBytes(UTF_8));
+    assertEquals("written contents", "first", read(outFile));
+    assertEquals("files written", 1, writer.getFilesWritten());
+  }
+
+  @Test
+  public void lastWriteWins() throws IOException {
+    OutputFileWriter writer = new OutputFileWriter("test", FILE_COUNT);
+    writer.start();
+    File outDir = makeOutDir();
+    for (int index = 0; index < WRITE_COUNT; index++) {
+      File outFile = new File(outDir, "devices/AHU-" + index % FILE_COUNT + "/state.out");
+      writer.write(outFile, String.valueOf(index).getBytes(UTF_8));
+    }
+    writer.close();
+
+    for (int device = 0; device < FILE_COUNT; device++) {
+      File outFile = new File(outDir, "devices/AHU-" + device + "/state.out");
+      assertEquals("final contents", String.valueOf(WRITE_COUNT - FILE_COUNT + device),
+          read(outFile));
+    }
+    assertEquals("writes accounted", WRITE_COUNT,
+        writer.getFilesWritten() + writer.getWritesCoalesced());
+    assertEquals("write errors", 0, writer.getWriteErrors());
+  }
+
+  @Test
+  public void boundedBuffer() throws IOException {
+    OutputFileWriter writer = new OutputFileWriter("test", 1);
+    writer.start();
+    File outDir = makeOutDir();
+    for (int index = 0; index < WRITE_COUNT; index++) {
+      writer.write(new File(outDir, String.format("AHU-1/%04d_event.json", index)),
+          String.valueOf(index).getBytes(UTF_8));
+    }
+    writer.flush();
+
+    assertEquals("files written", WRITE_COUNT, writer.getFilesWritten());
+    assertEquals("captured files", WRITE_COUNT, new File(outDir, "AHU-1").list().length);
+    assertTrue("max latency", writer.getMaxLatencyMs() >= writer.getMeanLatencyMs());
+    writer.close();
+  }
+}
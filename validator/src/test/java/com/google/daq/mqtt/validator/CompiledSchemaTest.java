@@ -0,0 +1,109 @@
+package com.google.daq.mqtt.validator;
+
+import static com.google.udmi.util.JsonUtil.OBJECT_MAPPER;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.github.fge.jsonschema.core.load.configuration.LoadingConfiguration;
+import com.github.fge.jsonschema.main.JsonSchema;
+import com.github.fge.jsonschema.main.JsonSchemaFactory;
+import com.google.daq.mqtt.TestCommon;
+import com.google.udmi.util.JsonUtil;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.List;
+import org.junit.Test;
+
+/**
+ * Tests for the compiled schema fast path, over the schema test payloads.
+ */
+public class CompiledSchemaTest {
+
+  private static final File SCHEMA_ROOT = new File(TestCommon.SCHEMA_SPEC);
+  private static final File TEST_SCHEMAS = new File(TestCommon.TOOL_ROOT, "tests/schemas");
+  private static final List<String> CLEAN_PAYLOADS = List.of("event_pointset/example",
+      "event_pointset/fcu", "state/example", "state/gateway", "config/example",
+      "metadata/example", "envelope/example");
+  private static final List<String> ERROR_PAYLOADS = List.of("event_pointset/errors",
+      "event_pointset/empty", "state/errors", "config/errors", "metadata/errors",
+      "envelope/errors1");
+  private static final String FILE_URL_PREFIX = "file:";
+
+  private static CompiledSchema compile(String schemaName) {
+    CompiledSchema compiled =
+        CompiledSchema.compile(SCHEMA_ROOT, new File(SCHEMA_ROOT, schemaName + ".json"));
+    assertNotNull("compiled schema " + schemaName, compiled);
+    return compiled;
+  }
+
+  private static JsonSchema loadFullSchema(String schemaName) throws Exception {
+    return JsonSchemaFactory.newBuilder()
+        .setLoadingConfiguration(LoadingConfiguration.newBuilder()
+            .addScheme("file", source -> Files.newInputStream(new File(SCHEMA_ROOT,
+                source.toString().substring(FILE_URL_PREFIX.length())).toPath()))
+            .freeze())
+        .freeze()
+        .getJsonSchema(OBJECT_MAPPER.readTree(new File(SCHEMA_ROOT, schemaName + ".json")));
+  }
+
+  private static void assertSameVerdict(String schemaName, JsonNode message) throws Exception {
+    boolean full = loadFullSchema(schemaName).validInstance(message);
+    assertEquals(schemaName + " verdict", full, compile(schemaName).conforms(message));
+  }
+
+  private static JsonNode loadPayload(String payload) {
+    return OBJECT_MAPPER.valueToTree(JsonUtil.loadMap(new File(TEST_SCHEMAS, payload + ".json")));
+  }
+
+  private static String schemaOf(String payload) {
+    return payload.substring(0, payload.indexOf('/'));
+  }
+
+  @Test
+  public void cleanPayloadsConform() {
+    CLEAN_PAYLOADS.forEach(payload -> assertTrue(payload,
+        compile(schemaOf(payload)).conforms(loadPayload(payload))));
+  }
+
+  @Test
+  public void errorPayloadsRejected() {
+    ERROR_PAYLOADS.forEach(payload -> assertFalse(payload,
+        compile(schemaOf(payload)).conforms(loadPayload(payload))));
+  }
+
+  @Test
+  public void repeatShapesCached() {
+    CompiledSchema compiled = compile("event_pointset");
+    ObjectNode message = (ObjectNode) loadPayload("event_pointset/example");
+    assertTrue("first message", compiled.conforms(message));
+    message.put("timestamp", "2023-07-04T12:30:00.000Z");
+    assertTrue("same shape", compiled.conforms(message));
+    assertEquals("cached shapes", 1, compiled.getShapeCount());
+
+    message.put("timestamp", "not a timestamp");
+    assertFalse("bad value in cached shape", compiled.conforms(message));
+    assertEquals("cached shapes", 1, compiled.getShapeCount());
+
+    message.put("extra_field", true);
+    assertFalse("new shape", compiled.conforms(message));
+    assertEquals("cached shapes", 2, compiled.getShapeCount());
+  }
+
+  @Test
+  public void trailingNewlineMatchesFullValidator() throws Exception {
+    ObjectNode envelope = (ObjectNode) loadPayload("envelope/example");
+    envelope.put("deviceId", envelope.get("deviceId").asText() + "\n");
+    assertSameVerdict("envelope", envelope);
+    assertFalse("trailing newline value", compile("envelope").conforms(envelope));
+
+    ObjectNode event = (ObjectNode) loadPayload("event_pointset/example");
+    ObjectNode points = (ObjectNode) event.get("points");
+    points.set("reading_value\n", points.remove("reading_value"));
+    assertSameVerdict("event_pointset", event);
+    assertFalse("trailing newline key", compile("event_pointset").conforms(event));
+  }
+}
@@ -0,0 +1,72 @@
+package com.google.daq.mqtt.validator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.junit.Test;
+
+/**
+ * Tests for per-device serial execution.
+ */
+public class DeviceExecutorTest {
+
+  private static final int PARALLELISM = 4;
+  private static final int DEVICE_COUNT = 10;
+  private static final int TASK_COUNT = 200;
+  private static final long LATCH_TIMEOUT_SEC = 5;
+
+  @Test
+  public void serialPerDevice() {
+    DeviceExecutor executor = new DeviceExecutor(PARALLELISM);
+    Map<String, List<Integer>> results = new ConcurrentHashMap<>();
+    for (int task = 0; task < TASK_COUNT; task++) {
+      for (int device = 0; device < DEVICE_COUNT; device++) {
+        String deviceId = "AHU-" + device;
+        int index = task;
+        // Unsynchronized lists are safe, since tasks for one device never run concurrently.
+        executor.submit(deviceId,
+            () -> results.computeIfAbsent(deviceId, key -> new ArrayList<>()).add(index));
+      }
+    }
+    executor.shutdown();
+
+    List<Integer> expected = IntStream.range(0, TASK_COUNT).boxed().collect(Collectors.toList());
+    assertEquals("devices processed", DEVICE_COUNT, results.size());
+    results.forEach((deviceId, indices) -> assertEquals(deviceId, expected, indices));
+  }
+
+  @Test
+  public void parallelAcrossDevices() throws InterruptedException {
+    DeviceExecutor executor = new DeviceExecutor(PARALLELISM);
+    CountDownLatch running = new CountDownLatch(PARALLELISM);
+    // Each task waits for all the others to start, so this only completes if they run in parallel.
+    for (int device = 0; device < PARALLELISM; device++) {
+      executor.submit("AHU-" + device, () -> {
+        running.countDown();
+        try {
+          running.await(LATCH_TIMEOUT_SEC, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+          throw new RuntimeException(e);
+        }
+      });
+    }
+    assertTrue("concurrent tasks", running.await(LATCH_TIMEOUT_SEC, TimeUnit.SECONDS));
+    executor.shutdown();
+  }
+
+  @Test
+  public void synchronousWithoutParallelism() {
+    DeviceExecutor executor = new DeviceExecutor(0);
+    List<Thread> threads = new ArrayList<>();
+    executor.submit("AHU-1", () -> threads.add(Thread.currentThread()));
+    assertEquals("executing thread", List.of(Thread.currentThread()), threads);
+  }
+}
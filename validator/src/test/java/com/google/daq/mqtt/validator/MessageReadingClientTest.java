@@ -0,0 +1,99 @@
+package com.google.daq.mqtt.validator;
+
+import static com.google.daq.mqtt.validator.MessageReadingClient.MSG_SOURCE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.daq.mqtt.util.MessagePublisher.QuerySpeed;
+import com.google.daq.mqtt.validator.Validator.MessageBundle;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+
+/**
+ * Tests for merged playback of a multi-device message trace.
+ */
+public class MessageReadingClientTest {
+
+  private static final String TEST_REGISTRY = "ZZ-TRI-FECTA";
+  private static final int DEVICE_COUNT = 20;
+  private static final int MESSAGE_COUNT = 10;
+  private static final Instant BASE_TIME = Instant.parse("2023-01-01T00:00:00Z");
+
+  private static void writeMessage(File deviceDir, int index, String timestamp)
+      throws IOException {
+    String content = timestamp == null ? "{}" : "{ \"timestamp\": \"" + timestamp + "\" }";
+    File messageFile = new File(deviceDir, String.format("%03d_event_pointset.json", index));
+    Files.writeString(messageFile.toPath(), content);
+  }
+
+  private static File makeTrace() throws IOException {
+    File traceDir = Files.createTempDirectory("trace").toFile();
+    for (int device = 0; device < DEVICE_COUNT; device++) {
+      File deviceDir = new File(traceDir, "devices/AHU-" + device);
+      deviceDir.mkdirs();
+      for (int index = 1; index <= MESSAGE_COUNT; index++) {
+        // Interleave devices, with some timestamps shared across devices.
+        Instant timestamp = BASE_TIME.plusSeconds(index * DEVICE_COUNT + device % 3);
+        writeMessage(deviceDir, index, timestamp.toString());
+      }
+    }
+    return traceDir;
+  }
+
+  private static List<MessageBundle> replay(MessageReadingClient client) {
+    List<MessageBundle> bundles = new ArrayList<>();
+    while (client.isActive()) {
+      bundles.add(client.takeNextMessage(QuerySpeed.SHORT));
+    }
+    return bundles;
+  }
+
+  @Test
+  public void mergedOrder() throws IOException {
+    MessageReadingClient client = new MessageReadingClient(TEST_REGISTRY, makeTrace().getPath());
+    List<MessageBundle> bundles = replay(client);
+
+    assertEquals("replayed messages", DEVICE_COUNT * MESSAGE_COUNT, bundles.size());
+    assertEquals("message count", DEVICE_COUNT * MESSAGE_COUNT, client.messageCount);
+    Map<String, String> lastSource = new HashMap<>();
+    MessageBundle previous = null;
+    for (MessageBundle bundle : bundles) {
+      if (previous != null) {
+        int order = previous.timestamp.compareTo(bundle.timestamp);
+        assertTrue("timestamp order", order <= 0);
+        if (order == 0) {
+          assertTrue("device tie order", previous.attributes.get("deviceId")
+              .compareTo(bundle.attributes.get("deviceId")) <= 0);
+        }
+      }
+      String deviceId = bundle.attributes.get("deviceId");
+      String source = bundle.attributes.get(MSG_SOURCE);
+      assertTrue("device file order", lastSource.getOrDefault(deviceId, "").compareTo(source) < 0);
+      lastSource.put(deviceId, source);
+      previous = bundle;
+    }
+  }
+
+  @Test
+  public void missingTimestamp() throws IOException {
+    File traceDir = Files.createTempDirectory("trace").toFile();
+    File deviceDir = new File(traceDir, "devices/AHU-1");
+    deviceDir.mkdirs();
+    writeMessage(deviceDir, 1, BASE_TIME.toString());
+    writeMessage(deviceDir, 2, null);
+    MessageReadingClient client = new MessageReadingClient(TEST_REGISTRY, traceDir.getPath());
+
+    List<MessageBundle> bundles = replay(client);
+    assertEquals("replayed messages", 2, bundles.size());
+    assertEquals("inherited timestamp", BASE_TIME.toString(), bundles.get(1).timestamp);
+    assertFalse("client active", client.isActive());
+  }
+}
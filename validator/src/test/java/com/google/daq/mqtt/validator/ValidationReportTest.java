@@ -0,0 +1,116 @@
+package com.google.daq.mqtt.validator;
+
+import static com.google.udmi.util.Common.PUBLISH_TIME_KEY;
+import static com.google.udmi.util.Common.TIMESTAMP_KEY;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static udmi.schema.Level.INFO;
+
+import com.google.common.collect.ImmutableList;
+import com.google.daq.mqtt.TestCommon;
+import com.google.daq.mqtt.validator.Validator.MessageBundle;
+import com.google.udmi.util.JsonUtil;
+import com.google.udmi.util.SiteModel;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import org.junit.Test;
+import udmi.schema.PointsetEvent;
+import udmi.schema.ValidationState;
+
+/**
+ * Tests for the incrementally maintained validation report, checked against full regeneration.
+ */
+public class ValidationReportTest extends TestBase {
+
+  private static final String EVENT_SUBTYPE = "event";
+  private static final String POINTSET_SUBFOLDER = "pointset";
+  private static final String EXTRA_DEVICE = "XYZ-99";
+  private static final List<String> TEST_ARGS = ImmutableList.of(
+      "-n",
+      "-p", SiteModel.MOCK_PROJECT,
+      "-a", TestCommon.SCHEMA_SPEC,
+      "-s", TestCommon.SITE_DIR);
+  // Same as the ReportingDevice threshold for expiring errors and last seen.
+  private static final Duration EXPIRY = Duration.ofHours(1);
+  private static final Duration SECOND = Duration.ofSeconds(1);
+  private static final Duration STEP = Duration.ofMinutes(10).plus(SECOND);
+  private final Validator validator = new Validator(TEST_ARGS).prepForMock();
+  private final Instant start = Instant.now().minus(Duration.ofDays(1))
+      .truncatedTo(ChronoUnit.SECONDS);
+
+  private void validateAt(Instant at, String deviceId, Object messageObject) {
+    MessageBundle bundle = getMessageBundle(EVENT_SUBTYPE, POINTSET_SUBFOLDER, messageObject);
+    bundle.attributes.put("deviceId", deviceId);
+    bundle.attributes.put(PUBLISH_TIME_KEY, at.toString());
+    bundle.message.put(TIMESTAMP_KEY, at.toString());
+    validator.validateMessage(bundle);
+  }
+
+  private ValidationState reportAt(Instant at, boolean full) {
+    validator.processValidationReport(at, full);
+    return getValidationReport();
+  }
+
+  /**
+   * Render a report without the timestamps of when it (and each device status) was summarized,
+   * since those legitimately differ between an incremental and a full report.
+   */
+  private static String normalized(ValidationState report) {
+    report.timestamp = null;
+    if (report.devices != null) {
+      report.devices.values().forEach(device -> device.status.timestamp = null);
+    }
+    return JsonUtil.stringify(report);
+  }
+
+  private void assertMatchesFullReport(Instant at) {
+    String incremental = normalized(reportAt(at, false));
+    String full = normalized(reportAt(at, true));
+    assertEquals("incremental report at " + at, full, incremental);
+  }
+
+  @Test
+  public void errorExpiresWithoutMessages() {
+    validateAt(start, TestCommon.DEVICE_ID, new PointsetEvent());
+    validateAt(start.plus(EXPIRY.dividedBy(2)), TestCommon.DEVICE_ID, basePointsetEvent());
+
+    ValidationState before = reportAt(start.plus(EXPIRY).minus(SECOND), false);
+    assertTrue("error device before expiry",
+        before.summary.error_devices.contains(TestCommon.DEVICE_ID));
+
+    Instant expired = start.plus(EXPIRY).plus(SECOND);
+    ValidationState after = reportAt(expired, false);
+    assertFalse("error device after expiry",
+        after.summary.error_devices.contains(TestCommon.DEVICE_ID));
+    assertTrue("correct device after expiry",
+        after.summary.correct_devices.contains(TestCommon.DEVICE_ID));
+    assertEquals("status level after expiry", (Object) INFO.value(),
+        after.devices.get(TestCommon.DEVICE_ID).status.level);
+    assertMatchesFullReport(expired);
+  }
+
+  @Test
+  public void incrementalMatchesFullReport() {
+    Instant at = start;
+    validateAt(at, TestCommon.DEVICE_ID, basePointsetEvent());
+    assertMatchesFullReport(at);
+
+    at = at.plus(STEP);
+    validateAt(at, EXTRA_DEVICE, basePointsetEvent());
+    assertMatchesFullReport(at);
+
+    at = at.plus(STEP);
+    validateAt(at, TestCommon.DEVICE_ID, new PointsetEvent());
+    assertMatchesFullReport(at);
+
+    // Step past every device's status expiry, with no further messages.
+    Instant end = at.plus(EXPIRY.multipliedBy(2));
+    while (at.isBefore(end)) {
+      at = at.plus(STEP);
+      assertMatchesFullReport(at);
+    }
+  }
+}